@@ -0,0 +1,33 @@
+package de.testbirds.tech.recipe;
+
+import de.testbirds.tech.recipe.report.InvalidRecipeException;
+
+import java.util.Set;
+
+/**
+ * resolves additional constants that can be used in Recipe2s, e.g. {{MY_CONSTANT}}. implementations are found with
+ * {@link java.util.ServiceLoader}, so they are registered in
+ * META-INF/services/de.testbirds.tech.recipe.ConstantProvider. every constant is resolved at most once per startup.
+ *
+ * @author testbirds
+ */
+public interface ConstantProvider {
+
+    /**
+     * get the names of the constants this provider resolves. numbers, STD_OUT, STD_ERR and the built in constants
+     * can't be used.
+     *
+     * @return the names
+     */
+    Set<String> getNames();
+
+    /**
+     * resolve a constant.
+     *
+     * @param name    one of the names of this provider
+     * @param startup the startup the constant is resolved for
+     * @return the value
+     * @throws InvalidRecipeException the constant does not make sense for this startup
+     */
+    String resolve(String name, Startup startup) throws InvalidRecipeException;
+}
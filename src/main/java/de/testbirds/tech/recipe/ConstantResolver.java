@@ -1,14 +1,31 @@
 package de.testbirds.tech.recipe;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import de.testbirds.tech.recipe.entity.Arch;
 import de.testbirds.tech.recipe.entity.OSFamily;
 import de.testbirds.tech.recipe.report.InvalidRecipeException;
 import de.testbirds.tech.recipe.util.SystemStrings;
 import de.testbirds.tech.recipe.util.URLBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
- * resolve constants that appear in Recipe2s. At the moment only DESKTOP and DELIMITER is supported, but there will be
- * more for example: PROGRAM_FOLDER, PROGRAM_FOLDER32, ... similar to %%Program%% on Windows but working on all os'
+ * resolve constants that appear in Recipe2s, similar to %%Program%% on Windows but working on all os'. besides the
+ * built in constants, more can be added with a {@link ConstantProvider}. every constant is resolved once per startup,
+ * so the startup is not asked about the os again and again.
  *
  * @author testbirds
  */
@@ -40,23 +57,147 @@ public final class ConstantResolver {
      */
     private static final String PROGRAM_FILES_X86 = "PROGRAM_FILES_X86";
 
+    /**
+     * the program files folder on windows, the applications folder on mac, ending with a separator.
+     */
+    public static final String PROGRAM_FILES = "PROGRAM_FILES";
+
+    /**
+     * the temp folder of the installation, ending with a separator. it is the temp directory of the
+     * {@link de.testbirds.tech.recipe.base.ExecutionContext}, the one of the jvm without a context.
+     */
+    public static final String TEMP_DIR = "TEMP_DIR";
+
+    /**
+     * the home folder of the user, ending with a separator.
+     */
+    public static final String HOME = "HOME";
+
+    /**
+     * the profile folder of the user (%USERPROFILE% on windows, the home folder otherwise), ending with a separator.
+     */
+    public static final String USER_PROFILE = "USER_PROFILE";
+
     /**
      * or in regex.
      */
     private static final char OR = '|';
 
+    /**
+     * the logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConstantResolver.class);
+
+    /**
+     * names of the built in constants.
+     */
+    private static final Set<String> BUILT_IN = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(DESKTOP,
+            DELIMITER, SW_MIRROR, UUID, PROGRAM_FILES_X86, PROGRAM_FILES, TEMP_DIR, HOME, USER_PROFILE)));
+
+    /**
+     * the registered providers by the names of their constants.
+     */
+    private static final Map<String, ConstantProvider> PROVIDERS = loadProviders();
+
+    /**
+     * the resolvers of all startups.
+     */
+    private static final Cache<Startup, ConstantResolver> RESOLVERS = CacheBuilder.newBuilder().weakKeys().build();
+
     /**
      * the startup.
      */
     private final Startup startup;
 
+    /**
+     * the constants that were resolved already.
+     */
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+
+    /**
+     * the os family of the startup, null until it is needed.
+     */
+    private volatile OSFamily osFamily;
+
+    /**
+     * the resolver of the startup that resolves all other constants, null if this is it.
+     */
+    private final ConstantResolver shared;
+
+    /**
+     * the directory TEMP_DIR resolves to, null for the temp directory of the jvm.
+     */
+    private final File tempDirectory;
+
     /**
      * static helper class.
      *
      * @param startup the startup
      */
     public ConstantResolver(final Startup startup) {
+        this(startup, null, null);
+    }
+
+    /**
+     * create a resolver.
+     *
+     * @param startup       the startup
+     * @param shared        the resolver that resolves all other constants, null if this one resolves them
+     * @param tempDirectory the directory TEMP_DIR resolves to, null for the temp directory of the jvm
+     */
+    private ConstantResolver(final Startup startup, final ConstantResolver shared, final File tempDirectory) {
         this.startup = startup;
+        this.shared = shared;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * get the resolver of a startup. all installers of the same startup share it, so each constant is resolved only
+     * once.
+     *
+     * @param startup the startup
+     * @return the resolver
+     */
+    public static ConstantResolver of(final Startup startup) {
+        try {
+            return RESOLVERS.get(startup, () -> new ConstantResolver(startup));
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * get a resolver that resolves TEMP_DIR to the temp directory of an installation. all other constants are still
+     * resolved once by this resolver.
+     *
+     * @param directory the temp directory, null for the one of the jvm
+     * @return the resolver
+     */
+    public ConstantResolver withTempDirectory(final File directory) {
+        if (directory == null) {
+            return this;
+        }
+        return new ConstantResolver(startup, shared == null ? this : shared, directory);
+    }
+
+    /**
+     * load all providers that are registered.
+     *
+     * @return the providers by the names of their constants
+     */
+    private static Map<String, ConstantProvider> loadProviders() {
+        final Map<String, ConstantProvider> providers = new HashMap<>();
+        for (final ConstantProvider provider : ServiceLoader.load(ConstantProvider.class)) {
+            for (final String name : provider.getNames()) {
+                if (BUILT_IN.contains(name) || providers.containsKey(name) || !name.matches("[A-Za-z_]\\w*")
+                        || ParameterTemplate.STD_OUT.equals(name) || ParameterTemplate.STD_ERR.equals(name)) {
+                    LOGGER.warn("ignoring constant {} of {}", name, provider.getClass().getName());
+                } else {
+                    providers.put(name, provider);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(providers);
     }
 
     /**
@@ -66,7 +207,35 @@ public final class ConstantResolver {
      * @return pattern: XYZ | DESKTOP | ...
      */
     public static String getRegexPattern() {
-        return DESKTOP + OR + DELIMITER + OR + SW_MIRROR + OR + UUID + OR + PROGRAM_FILES_X86;
+        final StringBuilder pattern = new StringBuilder();
+        for (final String name : getConstants()) {
+            if (pattern.length() > 0) {
+                pattern.append(OR);
+            }
+            pattern.append(name);
+        }
+        return pattern.toString();
+    }
+
+    /**
+     * get the names of all constants, the built in ones first.
+     *
+     * @return the names
+     */
+    public static Set<String> getConstants() {
+        final Set<String> names = new LinkedHashSet<>(BUILT_IN);
+        names.addAll(new TreeSet<>(PROVIDERS.keySet()));
+        return names;
+    }
+
+    /**
+     * check if this class can resolve a constant.
+     *
+     * @param name name of the constant
+     * @return true if it is a known constant
+     */
+    public static boolean isConstant(final String name) {
+        return BUILT_IN.contains(name) || PROVIDERS.containsKey(name);
     }
 
     /**
@@ -77,14 +246,42 @@ public final class ConstantResolver {
      * @throws InvalidRecipeException trying to resolve a constant that does not make sense
      */
     public String resolve(final String constant) throws InvalidRecipeException {
+        if (shared != null) {
+            return TEMP_DIR.equals(constant) ? withSeparator(tempDirectory.getAbsolutePath())
+                    : shared.resolve(constant);
+        }
+        final String known = values.get(constant);
+        if (known != null) {
+            return known;
+        }
+        final String answer;
+        final ConstantProvider provider = PROVIDERS.get(constant);
+        if (provider != null) {
+            answer = provider.resolve(constant, startup);
+        } else {
+            answer = resolveBuiltIn(constant);
+        }
+        if (answer != null) {
+            values.putIfAbsent(constant, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * resolve a built in constant.
+     *
+     * @param constant constant name
+     * @return the resolved constant
+     * @throws InvalidRecipeException trying to resolve a constant that does not make sense
+     */
+    private String resolveBuiltIn(final String constant) throws InvalidRecipeException {
         final String answer;
-        final OSFamily osFamily = startup.determineOSFamily();
         switch (constant) {
             case SW_MIRROR:
                 answer = URLBuilder.getInst().getSoftwareMirror();
                 break;
             case DESKTOP:
-                answer = getDesktopPath(osFamily);
+                answer = getDesktopPath(getOSFamily());
                 break;
             case DELIMITER:
                 answer = SystemStrings.fileSeparator();
@@ -93,7 +290,7 @@ public final class ConstantResolver {
                 answer = startup.getUUID().toString();
                 break;
             case PROGRAM_FILES_X86:
-                if (osFamily == OSFamily.WIN) {
+                if (getOSFamily() == OSFamily.WIN) {
                     if (startup.determineOSArch() == Arch.X86_64) {
                         answer = "C:\\Program Files (x86)\\";
                     } else {
@@ -103,6 +300,25 @@ public final class ConstantResolver {
                     answer = "";
                 }
                 break;
+            case PROGRAM_FILES:
+                if (getOSFamily() == OSFamily.WIN) {
+                    answer = "C:\\Program Files\\";
+                } else if (getOSFamily() == OSFamily.MAC) {
+                    answer = "/Applications/";
+                } else {
+                    answer = "";
+                }
+                break;
+            case TEMP_DIR:
+                answer = withSeparator(System.getProperty("java.io.tmpdir"));
+                break;
+            case HOME:
+                answer = withSeparator(System.getProperty("user.home"));
+                break;
+            case USER_PROFILE:
+                final String profile = getOSFamily() == OSFamily.WIN ? System.getenv("USERPROFILE") : null;
+                answer = withSeparator(profile == null ? System.getProperty("user.home") : profile);
+                break;
             default:
                 throw new InvalidRecipeException("unknown constant: " + constant);
         }
@@ -110,6 +326,28 @@ public final class ConstantResolver {
 
     }
 
+    /**
+     * get the os family of the startup. it is only determined once.
+     *
+     * @return the os family
+     */
+    private OSFamily getOSFamily() {
+        if (osFamily == null) {
+            osFamily = startup.determineOSFamily();
+        }
+        return osFamily;
+    }
+
+    /**
+     * append a separator to a path if it does not end with one.
+     *
+     * @param path the path
+     * @return the path ending with a separator
+     */
+    private static String withSeparator(final String path) {
+        return path.endsWith(File.separator) ? path : path + File.separator;
+    }
+
     /**
      * Returns the desktop path for this os family.
      *
@@ -0,0 +1,299 @@
+package de.testbirds.tech.recipe;
+
+import de.testbirds.tech.recipe.base.ExecutionContext;
+import de.testbirds.tech.recipe.base.SoftwareTracker;
+import de.testbirds.tech.recipe.entity.RecipeMethod;
+import de.testbirds.tech.recipe.entity.RecipeStep;
+import de.testbirds.tech.recipe.entity.SoftwareVersion;
+import de.testbirds.tech.recipe.handler.WaitHandler;
+import de.testbirds.tech.recipe.report.InvalidRecipeException;
+import de.testbirds.tech.recipe.report.LocalReporter;
+import de.testbirds.tech.recipe.report.Reporter;
+import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import de.testbirds.tech.recipe.util.ThreadFactories;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * installs all softwares of an order. Softwares are installed concurrently, a WAIT step blocks the steps deeper than
+ * it until the software it waits for is installed. While a software waits, it does not count as running installation,
+ * so the bounded amount of parallel installations can't deadlock.
+ */
+public class OrderInstaller implements SoftwareTracker {
+
+    /**
+     * the logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderInstaller.class);
+
+    /**
+     * default amount of softwares that are installed at the same time.
+     */
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * all softwares of the order, softwares that are waited for come first.
+     */
+    private final List<SoftwareVersion> softwares;
+
+    /**
+     * completed as soon as the software with this slug is installed.
+     */
+    private final Map<String, CompletableFuture<Void>> installed;
+
+    /**
+     * one permit for each installation that may run at the same time.
+     */
+    private final Semaphore permits;
+
+    /**
+     * context of all installers of the order. its dispatcher knows how to WAIT for softwares of this order.
+     */
+    private final ExecutionContext context;
+
+    /**
+     * the reporter all steps are reported to, or null to use a tagged local reporter for each software.
+     */
+    private final Reporter reporter;
+
+    /**
+     * installer for a whole order.
+     *
+     * @param startup   the startup
+     * @param softwares all ordered softwares
+     * @throws InvalidRecipeException the softwares wait for each other in a cycle or slugs are not unique
+     */
+    public OrderInstaller(final Startup startup, final List<SoftwareVersion> softwares)
+            throws InvalidRecipeException {
+        this(startup, softwares, DEFAULT_PARALLELISM, null);
+    }
+
+    /**
+     * installer for a whole order.
+     *
+     * @param startup     the startup
+     * @param softwares   all ordered softwares
+     * @param parallelism the maximum amount of softwares that are installed at the same time
+     * @param reporter    the callback all steps are reported to. has to be thread safe. if null, every software reports
+     *                    to its own local reporter
+     * @throws InvalidRecipeException the softwares wait for each other in a cycle or slugs are not unique
+     */
+    public OrderInstaller(final Startup startup, final List<SoftwareVersion> softwares, final int parallelism,
+                          final Reporter reporter) throws InvalidRecipeException {
+        this(new ExecutionContext(startup), softwares, parallelism, reporter);
+    }
+
+    /**
+     * installer for a whole order in an execution context. orders with separate contexts don't share handlers, http
+     * client or temporary files.
+     *
+     * @param context     handlers, http client, temporary files and constants of the installers
+     * @param softwares   all ordered softwares
+     * @param parallelism the maximum amount of softwares that are installed at the same time
+     * @param reporter    the callback all steps are reported to. has to be thread safe. if null, every software reports
+     *                    to its own local reporter
+     * @throws InvalidRecipeException the softwares wait for each other in a cycle or slugs are not unique
+     */
+    public OrderInstaller(final ExecutionContext context, final List<SoftwareVersion> softwares,
+                          final int parallelism, final Reporter reporter) throws InvalidRecipeException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism has to be positive, but is " + parallelism);
+        }
+        this.reporter = reporter;
+        this.permits = new Semaphore(parallelism, true);
+        this.installed = new HashMap<>();
+        for (final SoftwareVersion software : softwares) {
+            if (software.getSlug() != null
+                    && installed.put(software.getSlug(), new CompletableFuture<>()) != null) {
+                throw new InvalidRecipeException("software " + software.getSlug() + " is ordered twice");
+            }
+        }
+        this.softwares = sortByDependencies(softwares);
+        this.context = context.withDispatcher(context.getDispatcher()
+                .withHandler(RecipeMethod.WAIT, new WaitHandler(this)));
+    }
+
+    /**
+     * collect the slugs a software waits for. only WAIT steps with a constant parameter can be known in advance.
+     *
+     * @param software the software
+     * @return slugs of the softwares it waits for
+     */
+    private static Set<String> getDependencies(final SoftwareVersion software) {
+        final Set<String> dependencies = new LinkedHashSet<>();
+        for (final RecipeStep step : software.getSteps()) {
+            if (step.getMethod() == RecipeMethod.WAIT && !step.getParameter().contains("{{")) {
+                dependencies.add(step.getParameter());
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * sort the softwares so that every software comes after the softwares it waits for. the order of independent
+     * softwares is kept.
+     *
+     * @param softwares the ordered softwares
+     * @return the sorted softwares
+     * @throws InvalidRecipeException there is a cycle of softwares waiting for each other
+     */
+    private static List<SoftwareVersion> sortByDependencies(final List<SoftwareVersion> softwares)
+            throws InvalidRecipeException {
+        final Map<String, SoftwareVersion> bySlug = new HashMap<>();
+        for (final SoftwareVersion software : softwares) {
+            if (software.getSlug() != null) {
+                bySlug.put(software.getSlug(), software);
+            }
+        }
+        final List<SoftwareVersion> sorted = new ArrayList<>(softwares.size());
+        final Set<SoftwareVersion> visited = new HashSet<>();
+        final Set<SoftwareVersion> visiting = new HashSet<>();
+        for (final SoftwareVersion software : softwares) {
+            visit(software, bySlug, visited, visiting, sorted);
+        }
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * depth first search for the topological sort.
+     *
+     * @param software the software that is visited
+     * @param bySlug   all ordered softwares
+     * @param visited  softwares that are already sorted
+     * @param visiting softwares on the current path
+     * @param sorted   the result
+     * @throws InvalidRecipeException there is a cycle of softwares waiting for each other
+     */
+    private static void visit(final SoftwareVersion software, final Map<String, SoftwareVersion> bySlug,
+                              final Set<SoftwareVersion> visited, final Set<SoftwareVersion> visiting,
+                              final List<SoftwareVersion> sorted) throws InvalidRecipeException {
+        if (visited.contains(software)) {
+            return;
+        }
+        if (!visiting.add(software)) {
+            throw new InvalidRecipeException("software " + software.getSlug() + " is part of a cycle of WAITs");
+        }
+        for (final String dependency : getDependencies(software)) {
+            final SoftwareVersion other = bySlug.get(dependency);
+            if (other != null) {
+                visit(other, bySlug, visited, visiting, sorted);
+            }
+        }
+        visiting.remove(software);
+        visited.add(software);
+        sorted.add(software);
+    }
+
+    /**
+     * install all softwares of the order. returns after all installations are finished.
+     *
+     * @throws SoftwareInstallException at least one software failed to install
+     */
+    public final void execute() throws SoftwareInstallException {
+        LOGGER.debug("OrderInstaller start installing {} softwares", softwares.size());
+        final ExecutorService executor = Executors.newCachedThreadPool(
+                ThreadFactories.newThreadFactory("recipe-installer-%d"));
+        final Map<SoftwareVersion, Future<Void>> results = new LinkedHashMap<>();
+        try {
+            for (final SoftwareVersion software : softwares) {
+                results.put(software, executor.submit(() -> {
+                    install(software);
+                    return null;
+                }));
+            }
+            SoftwareInstallException failure = null;
+            for (final Map.Entry<SoftwareVersion, Future<Void>> result : results.entrySet()) {
+                try {
+                    result.getValue().get();
+                } catch (final ExecutionException e) {
+                    final SoftwareInstallException cause = new SoftwareInstallException(
+                            "installing " + result.getKey().getSlug() + " failed", e.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SoftwareInstallException("interrupted while installing the order", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.debug("OrderInstaller finished installing");
+    }
+
+    /**
+     * install a single software. blocks until a permit is available.
+     *
+     * @param software the software
+     * @throws SoftwareInstallException installing the software failed
+     * @throws InterruptedException     interrupted while waiting for a permit
+     */
+    private void install(final SoftwareVersion software) throws SoftwareInstallException, InterruptedException {
+        final CompletableFuture<Void> done = software.getSlug() == null ? null : installed.get(software.getSlug());
+        permits.acquire();
+        try {
+            final Reporter softwareReporter = reporter == null ? new LocalReporter(software.getSlug()) : reporter;
+            new RecipeInstaller(context, software, softwareReporter).execute();
+            if (done != null) {
+                done.complete(null);
+            }
+        } catch (final SoftwareInstallException | RuntimeException e) {
+            if (done != null) {
+                done.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public final boolean isOrdered(final String slug) {
+        return installed.containsKey(slug);
+    }
+
+    @Override
+    public final void awaitInstalled(final String slug) throws SoftwareInstallException {
+        final CompletableFuture<Void> done = installed.get(slug);
+        if (done == null) {
+            throw new InvalidRecipeException("software " + slug + " was not ordered");
+        }
+        if (done.isDone() && !done.isCompletedExceptionally()) {
+            return;
+        }
+        // let another software run while this one is parked
+        permits.release();
+        try {
+            done.get();
+        } catch (final ExecutionException e) {
+            throw new SoftwareInstallException("software " + slug + " failed to install", e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SoftwareInstallException("interrupted while waiting for " + slug, e);
+        } finally {
+            permits.acquireUninterruptibly();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package de.testbirds.tech.recipe;
+
+import de.testbirds.tech.recipe.report.InvalidRecipeException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a step parameter that is split once into literal text and variables ({{0}}, {{STD_OUT}}, {{DESKTOP}}, ...). rendering
+ * it only looks up the variables and joins the parts, without scanning the parameter again. text between {{ and }}
+ * that is no known variable stays as it is.
+ */
+public final class ParameterTemplate {
+
+    /**
+     * std out variable name.
+     */
+    static final String STD_OUT = "STD_OUT";
+
+    /**
+     * std err variable name.
+     */
+    static final String STD_ERR = "STD_ERR";
+
+    /**
+     * kind of a literal part.
+     */
+    private static final int LITERAL = -1;
+
+    /**
+     * kind of a {{STD_OUT}} part.
+     */
+    private static final int STD_OUT_REF = -2;
+
+    /**
+     * kind of a {{STD_ERR}} part.
+     */
+    private static final int STD_ERR_REF = -3;
+
+    /**
+     * kind of a constant part.
+     */
+    private static final int CONSTANT = -4;
+
+    /**
+     * start of a variable.
+     */
+    private static final String OPEN = "{{";
+
+    /**
+     * end of a variable.
+     */
+    private static final String CLOSE = "}}";
+
+    /**
+     * the parameter.
+     */
+    private final String parameter;
+
+    /**
+     * the text of literal parts and the names of constants, null for other parts.
+     */
+    private final String[] texts;
+
+    /**
+     * the kind of each part. the index of the stack element for stack references.
+     */
+    private final int[] kinds;
+
+    /**
+     * the highest stack index that is referenced, -1 if none.
+     */
+    private final int maxStackIndex;
+
+    /**
+     * the values of variables while a template is rendered.
+     */
+    public interface Variables {
+
+        /**
+         * get an element of the stack.
+         *
+         * @param index the index counted from the top, 0 is the top
+         * @return the element or null if it is not known
+         * @throws InvalidRecipeException the stack does not have this element
+         */
+        String getStackElement(int index) throws InvalidRecipeException;
+
+        /**
+         * get the output of the step on top of the stack.
+         *
+         * @param stdErr true for std err, false for std out
+         * @return the output or null if it is not known
+         */
+        String getOutput(boolean stdErr);
+
+        /**
+         * get a constant.
+         *
+         * @param name name of the constant
+         * @return the value or null if it is not known
+         * @throws InvalidRecipeException the constant can't be resolved
+         */
+        String getConstant(String name) throws InvalidRecipeException;
+    }
+
+    /**
+     * constructor.
+     *
+     * @param parameter     the parameter
+     * @param texts         the text of literal parts and the names of constants
+     * @param kinds         the kind of each part
+     * @param maxStackIndex the highest stack index that is referenced
+     */
+    private ParameterTemplate(final String parameter, final String[] texts, final int[] kinds,
+                              final int maxStackIndex) {
+        this.parameter = parameter;
+        this.texts = texts;
+        this.kinds = kinds;
+        this.maxStackIndex = maxStackIndex;
+    }
+
+    /**
+     * split a parameter into its parts.
+     *
+     * @param parameter the parameter
+     * @return the template
+     */
+    public static ParameterTemplate compile(final String parameter) {
+        final List<String> texts = new ArrayList<>();
+        final List<Integer> kinds = new ArrayList<>();
+        int maxStackIndex = -1;
+        int literalStart = 0;
+        int start = parameter.indexOf(OPEN);
+        while (start >= 0) {
+            final int end = parameter.indexOf(CLOSE, start + OPEN.length());
+            if (end < 0) {
+                break;
+            }
+            final String name = parameter.substring(start + OPEN.length(), end);
+            final int kind = getKind(name);
+            if (kind == LITERAL) {
+                // like a regex, the next variable may start within the braces
+                start = parameter.indexOf(OPEN, start + 1);
+                continue;
+            }
+            if (start > literalStart) {
+                texts.add(parameter.substring(literalStart, start));
+                kinds.add(LITERAL);
+            }
+            texts.add(kind == CONSTANT ? name : null);
+            kinds.add(kind);
+            maxStackIndex = Math.max(maxStackIndex, kind);
+            literalStart = end + CLOSE.length();
+            start = parameter.indexOf(OPEN, literalStart);
+        }
+        if (literalStart < parameter.length()) {
+            texts.add(parameter.substring(literalStart));
+            kinds.add(LITERAL);
+        }
+        final int[] kindArray = new int[kinds.size()];
+        for (int i = 0; i < kindArray.length; i++) {
+            kindArray[i] = kinds.get(i);
+        }
+        return new ParameterTemplate(parameter, texts.toArray(new String[0]), kindArray, maxStackIndex);
+    }
+
+    /**
+     * get the kind of the text between {{ and }}.
+     *
+     * @param name the text
+     * @return the index of a stack reference, or the kind of the part. {@link #LITERAL} if it is no variable
+     */
+    private static int getKind(final String name) {
+        if (name.isEmpty()) {
+            return LITERAL;
+        }
+        if (STD_OUT.equals(name)) {
+            return STD_OUT_REF;
+        }
+        if (STD_ERR.equals(name)) {
+            return STD_ERR_REF;
+        }
+        if (ConstantResolver.isConstant(name)) {
+            return CONSTANT;
+        }
+        long index = 0;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return LITERAL;
+            }
+            index = index * 10 + c - '0';
+            if (index > Integer.MAX_VALUE) {
+                // such a stack can't exist, so it can't be resolved later on
+                return Integer.MAX_VALUE / 2;
+            }
+        }
+        return (int) index;
+    }
+
+    /**
+     * getter.
+     *
+     * @return the parameter the template was compiled from
+     */
+    public String getParameter() {
+        return parameter;
+    }
+
+    /**
+     * get the amount of elements the stack needs to render this template.
+     *
+     * @return the highest referenced stack index plus one. at least one if the output of the top element is used
+     */
+    public int getRequiredStackSize() {
+        int required = maxStackIndex + 1;
+        for (final int kind : kinds) {
+            if (kind == STD_OUT_REF || kind == STD_ERR_REF) {
+                required = Math.max(required, 1);
+            }
+        }
+        return required;
+    }
+
+    /**
+     * check if the template references a stack element.
+     *
+     * @param index the index counted from the top
+     * @return true if {{index}} is used
+     */
+    public boolean references(final int index) {
+        for (final int kind : kinds) {
+            if (kind == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * replace the variables by their values.
+     *
+     * @param variables the values of the variables
+     * @return the rendered parameter or null if the value of a variable is not known
+     * @throws InvalidRecipeException a variable can't be resolved
+     */
+    public String render(final Variables variables) throws InvalidRecipeException {
+        if (kinds.length == 1 && kinds[0] == LITERAL) {
+            return texts[0];
+        }
+        final String[] values = new String[kinds.length];
+        int length = 0;
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+                case LITERAL:
+                    values[i] = texts[i];
+                    break;
+                case STD_OUT_REF:
+                    values[i] = variables.getOutput(false);
+                    break;
+                case STD_ERR_REF:
+                    values[i] = variables.getOutput(true);
+                    break;
+                case CONSTANT:
+                    values[i] = variables.getConstant(texts[i]);
+                    break;
+                default:
+                    values[i] = variables.getStackElement(kinds[i]);
+            }
+            if (values[i] == null) {
+                return null;
+            }
+            length += values[i].length();
+        }
+        final StringBuilder sb = new StringBuilder(length);
+        for (final String value : values) {
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return parameter;
+    }
+}
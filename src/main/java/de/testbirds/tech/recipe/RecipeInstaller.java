@@ -1,25 +1,42 @@
 package de.testbirds.tech.recipe;
 
 import de.testbirds.tech.recipe.base.AbstractRecipeMethodHandler;
+import de.testbirds.tech.recipe.base.CheckpointStore;
+import de.testbirds.tech.recipe.base.CleanUpReaper;
+import de.testbirds.tech.recipe.base.DownloadPrefetcher;
+import de.testbirds.tech.recipe.base.ExecutionContext;
+import de.testbirds.tech.recipe.base.FrameStack;
 import de.testbirds.tech.recipe.base.Installer;
 import de.testbirds.tech.recipe.base.RecipeMethodDispatcher;
 import de.testbirds.tech.recipe.base.StackElement;
+import de.testbirds.tech.recipe.entity.OSFamily;
 import de.testbirds.tech.recipe.entity.RecipeMethod;
 import de.testbirds.tech.recipe.entity.RecipeStep;
 import de.testbirds.tech.recipe.entity.SoftwareVersion;
+import de.testbirds.tech.recipe.handler.DownloadHandler;
+import de.testbirds.tech.recipe.handler.UnzipHandler;
 import de.testbirds.tech.recipe.report.InvalidRecipeException;
 import de.testbirds.tech.recipe.report.LocalReporter;
 import de.testbirds.tech.recipe.report.Reporter;
 import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import de.testbirds.tech.recipe.util.FileUtils;
+import de.testbirds.tech.recipe.util.ShellSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * the new recipe2 installer.
@@ -32,39 +49,34 @@ public class RecipeInstaller implements Installer {
     private static final Logger LOGGER = LoggerFactory.getLogger(RecipeInstaller.class);
 
     /**
-     * std out variable name.
+     * default amount of downloads that are started before their step is reached.
      */
-    private static final String STD_OUT = "STD_OUT";
+    private static final int DEFAULT_PREFETCHES = 2;
 
     /**
-     * std err variable name.
+     * the parameter of an UNZIP step that extracts the element on top of the stack.
      */
-    private static final String STD_ERR = "STD_ERR";
+    private static final String TOP_OF_STACK = "{{0}}";
 
     /**
-     * number of local resolved variables. STD_OUT, STD_ERR and numbers
+     * handlers, http client, temporary files and constants of this installer.
      */
-    private static final String[] PATTERNS = new String[]{"\\d+", STD_OUT, STD_ERR};
+    private final ExecutionContext context;
 
     /**
-     * regex pattern to replace parameters in strings.
-     */
-    private static Pattern pattern;
-
-    /**
-     * handlers for the recipe steps.
+     * the stack.
      */
-    private final RecipeMethodDispatcher recipeMethodDispatcher;
+    private final FrameStack stack;
 
     /**
-     * the stack.
+     * the recipe2 steps. they are executed from top to bottom.
      */
-    private final Stack<StackElement> stack;
+    private final RecipePlan plan;
 
     /**
-     * the recipe2 steps. they are executed from top to bottom.
+     * index of the next step of the plan.
      */
-    private final Queue<RecipeStep> steps;
+    private int next;
 
     /**
      * the callback all steps are reported to.
@@ -72,17 +84,82 @@ public class RecipeInstaller implements Installer {
     private final Reporter reporter;
 
     private final SoftwareVersion software;
+
+    /**
+     * downloads that are started before their step is reached.
+     */
+    private DownloadPrefetcher downloadPrefetcher;
+
+    /**
+     * the parameters of the DOWNLOAD steps of the plan the look ahead took care of already, by the index of the step.
+     */
+    private final Map<Integer, String> lookedAhead = new HashMap<>();
+
     /**
-     * the constant resolver.
+     * index of the step a look ahead stopped at after it took care of all DOWNLOAD steps before, -1 if there is none.
+     * until that step is executed, looking ahead again finds nothing new.
      */
-    private final ConstantResolver constantResolver;
+    private int lookAheadEnd = -1;
+
+    /**
+     * runs the clean ups of popped elements, deletions in the background.
+     */
+    private final CleanUpReaper reaper;
+
+    /**
+     * true if a DOWNLOAD directly followed by an UNZIP of it is extracted while it is downloaded.
+     */
+    private boolean streamingUnzip;
+
+    /**
+     * the shell that runs the COMMAND steps, null if every command starts its own shell.
+     */
+    private ShellSession shellSession;
+
+    /**
+     * the values of the variables of step parameters.
+     */
+    private final ParameterTemplate.Variables stackVariables = new StackVariables();
+
     /**
-     * the startup.
+     * the step whose handler is running, null if none is running.
      */
-    private Startup startup;
+    private RecipeStep currentStep;
+
+    /**
+     * elements on the stack whose files are owned by the checkpoint store. they are kept if the installation fails.
+     */
+    private final Set<StackElement> checkpointed = Collections.newSetFromMap(new IdentityHashMap<>());
 
     public RecipeInstaller(final Startup startup, final SoftwareVersion software) throws InvalidRecipeException {
-        this(startup, software, new LocalReporter(), RecipeMethodDispatcher.getInst(), new LinkedList<>(software.getSteps()), new Stack<>());
+        this(new ExecutionContext(startup), software, new LocalReporter());
+    }
+
+    /**
+     * Installer for software, starting with the parameter of the software on the stack.
+     *
+     * @param startup                the startup
+     * @param software               the software
+     * @param reporter               the callback. all steps are reported
+     * @param recipeMethodDispatcher dispatcher handlers for recipe steps
+     * @throws InvalidRecipeException the parameter of the software can't be resolved
+     */
+    public RecipeInstaller(final Startup startup, final SoftwareVersion software, final Reporter reporter,
+                           final RecipeMethodDispatcher recipeMethodDispatcher) throws InvalidRecipeException {
+        this(new ExecutionContext(startup).withDispatcher(recipeMethodDispatcher), software, reporter);
+    }
+
+    /**
+     * Installer for software in an execution context, starting with the parameter of the software on the stack.
+     *
+     * @param context  handlers, http client, temporary files and constants of the installer
+     * @param software the software
+     * @param reporter the callback. all steps are reported
+     * @throws InvalidRecipeException the parameter of the software can't be resolved
+     */
+    public RecipeInstaller(final ExecutionContext context, final SoftwareVersion software, final Reporter reporter)
+            throws InvalidRecipeException {
+        this(context, software, reporter, RecipePlan.of(software.getSteps()), new FrameStack());
         this.stack.push(new StackElement(resolve(software.getParameter())));
     }
 
@@ -95,38 +172,70 @@ public class RecipeInstaller implements Installer {
      * @param recipeMethodDispatcher dispatcher handlers for recipe steps
      * @param recipe                 the list of recipe steps
      * @param stack                  the starting stack
+     * @throws InvalidRecipeException the recipe is not consistent
      */
     public RecipeInstaller(final Startup startup, final SoftwareVersion software, final Reporter reporter,
                            final RecipeMethodDispatcher recipeMethodDispatcher, final Queue<RecipeStep> recipe,
-                           final Stack<StackElement> stack) {
-        this.startup = startup;
+                           final Stack<StackElement> stack) throws InvalidRecipeException {
+        this(new ExecutionContext(startup).withDispatcher(recipeMethodDispatcher), software, reporter,
+                RecipePlan.compile(new ArrayList<>(recipe)), new FrameStack(stack));
+    }
+
+    /**
+     * Installer for software that executes a compiled recipe. the plan may be shared with other installers.
+     *
+     * @param context  handlers, http client, temporary files and constants of the installer
+     * @param software the software
+     * @param reporter the callback. all steps are reported
+     * @param plan     the compiled recipe
+     * @param stack    the starting stack
+     */
+    public RecipeInstaller(final ExecutionContext context, final SoftwareVersion software, final Reporter reporter,
+                           final RecipePlan plan, final FrameStack stack) {
+        this.context = context;
         this.software = software;
-        this.recipeMethodDispatcher = recipeMethodDispatcher;
         this.stack = stack;
-        this.steps = recipe;
+        this.plan = plan;
         this.reporter = reporter;
-        this.constantResolver = new ConstantResolver(startup);
+        this.downloadPrefetcher = new DownloadPrefetcher(DEFAULT_PREFETCHES);
+        this.reaper = new CleanUpReaper(context.getCleanUpJournal());
     }
 
     /**
-     * compile the pattern that is used to resolve the step parameters.
+     * set how many downloads may be started before their DOWNLOAD step is reached.
+     *
+     * @param maxPrefetches maximum amount of prefetched downloads, 0 disables prefetching
      */
-    private static void compilePattern() {
-        final String[] subpatterns = new String[PATTERNS.length + 1];
-        System.arraycopy(PATTERNS, 0, subpatterns, 0, PATTERNS.length);
-        subpatterns[PATTERNS.length] = ConstantResolver.getRegexPattern();
-        // compile the pattern only once
-        final StringBuilder patternSb = new StringBuilder();
-        patternSb.append("\\{\\{(");
-        for (int i = 0; i < subpatterns.length; i++) {
-            patternSb.append(subpatterns[i]);
-            if (i != subpatterns.length - 1) {
-                patternSb.append('|');
-            }
+    public final void setMaxPrefetchedDownloads(final int maxPrefetches) {
+        downloadPrefetcher.close();
+        downloadPrefetcher = new DownloadPrefetcher(maxPrefetches);
+        lookedAhead.clear();
+        lookAheadEnd = -1;
+    }
+
+    /**
+     * extract an archive while it is downloaded if a DOWNLOAD step is directly followed by an UNZIP of {{0}} and
+     * no other step reads the downloaded file. the archive is never written to disk, but both steps still push their
+     * stack elements. the element of the DOWNLOAD step is an empty file then. disabled by default.
+     *
+     * @param streamingUnzip true to fuse DOWNLOAD and UNZIP
+     */
+    public final void setStreamingUnzip(final boolean streamingUnzip) {
+        this.streamingUnzip = streamingUnzip;
+    }
+
+    /**
+     * run all COMMAND steps in one long-lived shell instead of starting a shell per step. each step still gets its own
+     * exit code, STD_OUT and STD_ERR. on Windows the commands share the environment and working directory of the
+     * shell. disabled by default.
+     *
+     * @param enabled true to use a shell session
+     */
+    public final void setShellSession(final boolean enabled) {
+        if (shellSession != null) {
+            shellSession.close();
         }
-        patternSb.append(")\\}\\}");
-        LOGGER.debug("pattern: {}", patternSb);
-        pattern = Pattern.compile(patternSb.toString());
+        shellSession = enabled ? new ShellSession(context.getStartup().determineOSFamily() == OSFamily.WIN) : null;
     }
 
     /**
@@ -136,82 +245,375 @@ public class RecipeInstaller implements Installer {
      */
     public final void execute() throws SoftwareInstallException {
         LOGGER.debug("RecipeInstaller start installing");
-        while (!steps.isEmpty()) {
-            final RecipeStep step = steps.poll();
-            executeStep(step);
+        if (stack.size() < plan.getRequiredStackSize()) {
+            throw new InvalidRecipeException("Recipe needs " + plan.getRequiredStackSize()
+                    + " stack elements at the start but stack has size " + stack.size());
+        }
+        try {
+            try {
+                while (next < plan.size()) {
+                    prefetchDownloads();
+                    final int index = next;
+                    final RecipeStep step = plan.getStep(next);
+                    final ParameterTemplate parameter = plan.getTemplate(next++);
+                    if (!executeStreamedUnzip(step)) {
+                        executeStep(step, parameter, index);
+                    }
+                }
+            } catch (final SoftwareInstallException | RuntimeException e) {
+                unwind(e);
+                throw e;
+            } finally {
+                downloadPrefetcher.close();
+                if (shellSession != null) {
+                    shellSession.close();
+                }
+            }
+            LOGGER.debug("RecipeInstaller finished installing");
+            cleanUpStack();
+            if (context.getCheckpointStore() != null) {
+                context.getCheckpointStore().clear(software);
+            }
+        } finally {
+            // deletions of popped elements run in the background until here
+            reaper.flush();
         }
-        LOGGER.debug("RecipeInstaller finished installing");
-        cleanUpStack();
     }
 
     /**
-     * execute a single step.
+     * look ahead in the queue of steps and start DOWNLOAD steps whose parameter can already be resolved. the stack is
+     * simulated for that, elements that are only known at runtime are null. the look ahead stops at steps whose
+     * children may not be executed now. it is skipped while it can't find anything new, and steps it took care of
+     * before are not checked again.
+     */
+    private void prefetchDownloads() {
+        if (next <= lookAheadEnd || downloadPrefetcher.isFull()) {
+            return;
+        }
+        final AbstractRecipeMethodHandler handler;
+        try {
+            handler = context.getDispatcher().getHandler(RecipeMethod.DOWNLOAD);
+        } catch (final SoftwareInstallException e) {
+            // the DOWNLOAD step itself will report that
+            return;
+        }
+        if (!(handler instanceof DownloadHandler)) {
+            return;
+        }
+        final DownloadHandler downloadHandler = (DownloadHandler) handler;
+        final List<String> values = new ArrayList<>(stack.size() + plan.size() - next);
+        for (final StackElement element : stack.view()) {
+            values.add(element == null ? null : element.getElem());
+        }
+        final List<RecipeStep> pending = plan.getSteps().subList(next, plan.size());
+        // false once a DOWNLOAD is found whose parameter is only known later
+        boolean complete = true;
+        for (int i = 0; i < pending.size(); i++) {
+            final RecipeStep step = pending.get(i);
+            switch (step.getMethod()) {
+                case POP:
+                    if (values.isEmpty()) {
+                        return;
+                    }
+                    values.remove(values.size() - 1);
+                    break;
+                case SET:
+                    values.add(predict(plan.getTemplate(next + i), values));
+                    break;
+                case DOWNLOAD:
+                    final String parameter = predict(plan.getTemplate(next + i), values);
+                    if (parameter == null) {
+                        complete = false;
+                    } else if (!parameter.equals(lookedAhead.get(next + i))
+                            && !downloadPrefetcher.contains(parameter)) {
+                        // a streamed archive is extracted by its own step, a restored one is not downloaded at all
+                        if (!(streamingUnzip && isStreamable(pending.subList(i + 1, pending.size())))
+                                && restore(next + i, step, handler, parameter) == null) {
+                            downloadPrefetcher.prefetch(parameter,
+                                    () -> downloadHandler.fetchAsync(parameter, context));
+                        }
+                        lookedAhead.put(next + i, parameter);
+                        if (downloadPrefetcher.isFull()) {
+                            return;
+                        }
+                    }
+                    values.add(null);
+                    break;
+                case WAIT:
+                case REBOOT:
+                case REBOOT_NOW:
+                case AFTER_INSTALL:
+                    if (complete) {
+                        lookAheadEnd = next + i;
+                    }
+                    return;
+                default:
+                    values.add(null);
+            }
+        }
+        if (complete) {
+            lookAheadEnd = plan.size();
+        }
+    }
+
+    /**
+     * execute a DOWNLOAD step together with the following UNZIP step if the archive can be extracted while it is
+     * downloaded.
      *
-     * @param step the single step
+     * @param step the step that was just taken from the queue
+     * @return false if the step was not executed
      * @throws SoftwareInstallException installing failed
      */
-    private void executeStep(final RecipeStep step) throws SoftwareInstallException {
+    private boolean executeStreamedUnzip(final RecipeStep step) throws SoftwareInstallException {
+        if (!streamingUnzip || step.getMethod() != RecipeMethod.DOWNLOAD
+                || !isStreamable(plan.getSteps().subList(next, plan.size()))) {
+            return false;
+        }
+        final AbstractRecipeMethodHandler download = context.getDispatcher().getHandler(RecipeMethod.DOWNLOAD);
+        final AbstractRecipeMethodHandler unzip = context.getDispatcher().getHandler(RecipeMethod.UNZIP);
+        if (!(download instanceof DownloadHandler) || ((DownloadHandler) download).isCached()
+                || !(unzip instanceof UnzipHandler)) {
+            return false;
+        }
+        final String resolved = resolve(plan.getTemplate(next - 1));
+        if (downloadPrefetcher.contains(resolved)) {
+            return false;
+        }
+        LOGGER.debug("Executing {} as streamed UNZIP.", step);
+        final RecipeStep unzipStep = plan.getStep(next++);
+        final UnzipHandler unzipHandler = (UnzipHandler) unzip;
+        final File targetDir = unzipHandler.createTargetDirectory(context);
+        final StackElement archive;
+        try {
+            archive = ((DownloadHandler) download).fetchExtracted(resolved, targetDir, context);
+        } catch (final SoftwareInstallException e) {
+            FileUtils.deleteRecursive(targetDir);
+            throw e;
+        }
+        push(archive);
+        reporter.report(step, archive);
+        final StackElement extracted = unzipHandler.createStackElement(targetDir);
+        push(extracted);
+        reporter.report(unzipStep, extracted);
+        return true;
+    }
+
+    /**
+     * check if a DOWNLOAD can be extracted while it is downloaded: the next step is an UNZIP of it and no later step
+     * reads the downloaded file while it is on the stack.
+     *
+     * @param following the steps after the DOWNLOAD step
+     * @return true if DOWNLOAD and UNZIP can be fused
+     */
+    private static boolean isStreamable(final Collection<RecipeStep> following) {
+        final Iterator<RecipeStep> pending = following.iterator();
+        if (!pending.hasNext()) {
+            return false;
+        }
+        final RecipeStep unzip = pending.next();
+        if (unzip.getMethod() != RecipeMethod.UNZIP || !TOP_OF_STACK.equals(unzip.getParameter())) {
+            return false;
+        }
+        // position of the downloaded file on the stack, counted from the top
+        int depth = 1;
+        while (depth >= 0 && pending.hasNext()) {
+            final RecipeStep step = pending.next();
+            if (step.getMethod() == RecipeMethod.POP) {
+                depth--;
+            } else if (step.getParameter().contains("{{" + depth + "}}")
+                    || depth == 0 && RecipePlan.READS_TOP.contains(step.getMethod())) {
+                return false;
+            } else {
+                depth++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * resolve a parameter against a simulated stack without side effects.
+     *
+     * @param parameter the parameter template
+     * @param values    the simulated stack, the last element is the top. null for unknown elements
+     * @return the resolved parameter or null if it depends on something only known at runtime
+     */
+    private String predict(final ParameterTemplate parameter, final List<String> values) {
+        try {
+            return parameter.render(new ParameterTemplate.Variables() {
+                @Override
+                public String getStackElement(final int index) {
+                    final int stackIndex = values.size() - index - 1;
+                    return stackIndex < 0 ? null : values.get(stackIndex);
+                }
+
+                @Override
+                public String getOutput(final boolean stdErr) {
+                    return null;
+                }
+
+                @Override
+                public String getConstant(final String name) {
+                    try {
+                        return context.getConstants().resolve(name);
+                    } catch (final InvalidRecipeException | RuntimeException e) {
+                        return null;
+                    }
+                }
+            });
+        } catch (final InvalidRecipeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * execute a single step that is not part of the plan.
+     *
+     * @param step      the single step
+     * @param parameter the template of its parameter, null for a POP
+     * @throws SoftwareInstallException installing failed
+     */
+    private void executeStep(final RecipeStep step, final ParameterTemplate parameter)
+            throws SoftwareInstallException {
+        // it changes the stack in a way the look ahead did not simulate
+        lookAheadEnd = -1;
+        executeStep(step, parameter, -1);
+    }
+
+    /**
+     * execute a single step. steps of the plan may be restored from their checkpoint.
+     *
+     * @param step      the single step
+     * @param parameter the template of its parameter, null for a POP
+     * @param index     index of the step in the plan, -1 if it is not part of it
+     * @throws SoftwareInstallException installing failed
+     */
+    private void executeStep(final RecipeStep step, final ParameterTemplate parameter, final int index)
+            throws SoftwareInstallException {
         LOGGER.debug("Executing {}.", step);
         if (step.getMethod() == RecipeMethod.POP) {
             // handle a POP
             final StackElement top = stack.pop();
+            checkpointed.remove(top);
             if (top.getCleanUp() != null) {
-                top.getCleanUp().cleanUp();
+                reaper.cleanUp(top.getCleanUp());
             }
         } else {
-            final AbstractRecipeMethodHandler handler = recipeMethodDispatcher.getHandler(step.getMethod());
-            final String resolved = resolve(step.getParameter());
-            final StackElement result = handler.handle(resolved, this);
+            final AbstractRecipeMethodHandler handler = context.getDispatcher().getHandler(step.getMethod());
+            final String resolved = resolve(parameter);
+            final StackElement restored = restore(index, step, handler, resolved);
+            if (restored != null) {
+                LOGGER.debug("Restored {} from its checkpoint.", step);
+                stack.push(restored);
+                checkpointed.add(restored);
+                reporter.report(step, restored);
+                return;
+            }
+            // inserted steps run within the handler of their parent step
+            final RecipeStep parent = currentStep;
+            currentStep = step;
+            final StackElement result;
+            try {
+                // the handler is done with the installer when handleAsync returns, only the result may be pending
+                result = AbstractRecipeMethodHandler.await(handler.handleAsync(resolved, this));
+            } finally {
+                currentStep = parent;
+            }
+            if (result != null && isCheckpointed(index, step, handler) && context.getCheckpointStore()
+                    .record(software, index, CheckpointStore.fingerprint(step.getMethod(), resolved), result)) {
+                // the store owns the files of the result now, they are not journaled
+                stack.push(result);
+                checkpointed.add(result);
+            } else {
+                // pushed first, so the result is cleaned up even if reporting fails
+                push(result);
+            }
             reporter.report(step, result);
-            stack.push(result);
         }
     }
 
+    /**
+     * check if the result of a step is kept in the checkpoint store: SET, UNZIP and DOWNLOAD through the persistent
+     * cache only depend on their resolved parameter.
+     *
+     * @param index   index of the step in the plan, -1 if it is not part of it
+     * @param step    the step
+     * @param handler the handler of the step
+     * @return true if its result is restored and recorded
+     */
+    private boolean isCheckpointed(final int index, final RecipeStep step,
+                                   final AbstractRecipeMethodHandler handler) {
+        if (index < 0 || context.getCheckpointStore() == null) {
+            return false;
+        }
+        switch (step.getMethod()) {
+            case SET:
+                return true;
+            case UNZIP:
+                return handler instanceof UnzipHandler;
+            case DOWNLOAD:
+                return handler instanceof DownloadHandler && ((DownloadHandler) handler).isCached();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * get the result of a step from its checkpoint.
+     *
+     * @param index    index of the step in the plan, -1 if it is not part of it
+     * @param step     the step
+     * @param handler  the handler of the step
+     * @param resolved the resolved parameter
+     * @return the result, null if the step has to be executed
+     */
+    private StackElement restore(final int index, final RecipeStep step, final AbstractRecipeMethodHandler handler,
+                                 final String resolved) {
+        if (!isCheckpointed(index, step, handler)) {
+            return null;
+        }
+        return context.getCheckpointStore().restore(software, index,
+                CheckpointStore.fingerprint(step.getMethod(), resolved));
+    }
+
     @Override
     public final String getAdditionalParameter() {
-        return stack.get(stack.size() - 1).getElem();
+        return stack.peek().getElem();
     }
 
     @Override
     public final String[] getAdditionalParameters(final int number) {
         final String[] additionalArguments = new String[number];
         for (int i = 0; i < number; i++) {
-            additionalArguments[i] = stack.get(stack.size() - 1 - i).getElem();
+            additionalArguments[i] = stack.peek(i).getElem();
         }
         return additionalArguments;
     }
 
     @Override
+    @Deprecated
     public final Stack<StackElement> getStack() {
-        final Stack<StackElement> newStack = new Stack<>();
-        newStack.addAll(stack);
-        return newStack;
+        final Stack<StackElement> copy = new Stack<>();
+        copy.addAll(stack.view());
+        return copy;
+    }
+
+    @Override
+    public final List<StackElement> getFrames() {
+        return stack.view();
     }
 
     @Override
     public final Queue<RecipeStep> getChildren() {
-        final LinkedList<RecipeStep> children = new LinkedList<>();
-        int level = 0;
-        while (level >= 0) {
-            if (level == 0 && steps.peek().getMethod() == RecipeMethod.POP) {
-                // we reached the step that closes the list of children
-                // it is important, that this element is not removed
-                level--;
-            } else {
-                final RecipeStep step = steps.poll();
-                children.add(step);
-                if (step.getMethod() == RecipeMethod.POP) {
-                    level--;
-                } else {
-                    level++;
-                }
-            }
-        }
+        // the POP that closes the list of children is not removed
+        final int end = plan.getChildrenEnd(next - 1);
+        final Queue<RecipeStep> children = new LinkedList<>(plan.getSteps().subList(next, end));
+        next = end;
         return children;
     }
 
     /**
-     * clean up the whole given stack. is equal to executing n=stack.size() times POP
+     * clean up the whole given stack. is equal to executing n=stack.size() times POP and waiting until the deleted
+     * files are gone
      *
      * @throws SoftwareInstallException error while undoing some step
      */
@@ -219,7 +621,42 @@ public class RecipeInstaller implements Installer {
         // clean up afterwards. Usually the last POP should not left any undo operations, but for internal use cases it
         // may be necessary
         while (!stack.isEmpty()) {
-            executeStep(new RecipeStep(RecipeMethod.POP, ""));
+            executeStep(new RecipeStep(RecipeMethod.POP, ""), null);
+        }
+        reaper.flush();
+    }
+
+    /**
+     * push the result of a step. its clean up is recorded in the journal first.
+     *
+     * @param element the result
+     */
+    private void push(final StackElement element) {
+        if (element != null && element.getCleanUp() != null) {
+            context.getCleanUpJournal().record(element.getCleanUp());
+        }
+        stack.push(element);
+    }
+
+    /**
+     * clean up the whole stack after a failed step, the top first. clean ups that fail are added to the failure, the
+     * others are still done. failed ones stay in the journal and are retried at the next start. files of checkpoints
+     * are kept for the next attempt.
+     *
+     * @param failure the failure of the step
+     */
+    private void unwind(final Exception failure) {
+        LOGGER.debug("unwinding stack after failure: {}", stack);
+        while (!stack.isEmpty()) {
+            final StackElement top = stack.pop();
+            if (top == null || top.getCleanUp() == null || checkpointed.remove(top)) {
+                continue;
+            }
+            try {
+                reaper.cleanUp(top.getCleanUp());
+            } catch (final SoftwareInstallException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
         }
     }
 
@@ -231,61 +668,51 @@ public class RecipeInstaller implements Installer {
      * @throws InvalidRecipeException there was an error related to how the recipe is defined.
      */
     public final String resolve(final String parameter) throws InvalidRecipeException {
+        return resolve(ParameterTemplate.compile(parameter));
+    }
+
+    /**
+     * replaces variables inside a parameter template.
+     *
+     * @param parameter the parameter template
+     * @return parameter string with variables replaced
+     * @throws InvalidRecipeException there was an error related to how the recipe is defined.
+     */
+    private String resolve(final ParameterTemplate parameter) throws InvalidRecipeException {
         LOGGER.debug("resolve: {} with stack: {}", parameter, stack);
-        if (pattern == null) {
-            compilePattern();
-        }
-        final Matcher matcher = pattern.matcher(parameter);
-
-        final StringBuffer sb = new StringBuffer();
-        while (matcher.find()) {
-            final String group = matcher.group(1);
-            String replacement = null;
-            switch (group) {
-                case STD_OUT:
-                    replacement = stack.peek().getStdOut();
-                    if (replacement == null) {
-                        replacement = "";
-                    }
-                    break;
-                case STD_ERR:
-                    replacement = stack.peek().getStdErr();
-                    if (replacement == null) {
-                        replacement = "";
-                    }
-                    break;
-                default:
-                    try {
-                        final int index = Integer.parseInt(matcher.group(1));
-                        final int stackIndex = stack.size() - index - 1;
-                        // content is a number, so it refers to an element on the stack
-                        if (stackIndex < 0) {
-                            throw new InvalidRecipeException(
-                                    "Requested stack elem " + index + " but stack has size " + stack.size());
-                        }
-                        replacement = stack.get(stackIndex).getElem();
-                    } catch (final NumberFormatException nfe) {
-                        // no number, it may be a special constant. let the Startup resolve this constant if possible:
-                        replacement = constantResolver.resolve(matcher.group(1));
-                    }
-            }
-            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
-        }
-        matcher.appendTail(sb);
-        LOGGER.debug("resolved: {}", sb.toString());
-        return sb.toString();
+        final String resolved = parameter.render(stackVariables);
+        LOGGER.debug("resolved: {}", resolved);
+        return resolved;
     }
 
     @Override
     public final Startup getStartup() {
-        return startup;
+        return context.getStartup();
+    }
+
+    @Override
+    public final ExecutionContext getContext() {
+        return context;
     }
 
     @Override
     public final void insert(final List<RecipeStep> theseSteps) throws SoftwareInstallException {
         LOGGER.debug("Will insert these steps into the normal pipeline: {}", theseSteps);
+        final int snapshot = stack.snapshot();
         for (final RecipeStep step : theseSteps) {
-            executeStep(step);
+            executeStep(step, step.getMethod() == RecipeMethod.POP ? null
+                    : ParameterTemplate.compile(step.getParameter()));
+        }
+        if (stack.size() < snapshot) {
+            throw new InvalidRecipeException("Inserted steps popped " + (snapshot - stack.size())
+                    + " elements of the original stack");
+        }
+        // elements the inserted steps left on the stack are cleaned up like a POP
+        for (final StackElement element : stack.restore(snapshot)) {
+            LOGGER.warn("Inserted steps did not pop {}", element);
+            if (element.getCleanUp() != null) {
+                reaper.cleanUp(element.getCleanUp());
+            }
         }
     }
 
@@ -299,4 +726,50 @@ public class RecipeInstaller implements Installer {
         return software;
     }
 
+    @Override
+    public final DownloadPrefetcher getDownloadPrefetcher() {
+        return downloadPrefetcher;
+    }
+
+    @Override
+    public final ShellSession getShellSession() {
+        return shellSession;
+    }
+
+    @Override
+    public final RecipeStep getCurrentStep() {
+        return currentStep;
+    }
+
+    /**
+     * resolves variables against the stack and the constants.
+     */
+    private final class StackVariables implements ParameterTemplate.Variables {
+
+        @Override
+        public String getStackElement(final int index) throws InvalidRecipeException {
+            // content is a number, so it refers to an element on the stack
+            if (index >= stack.size()) {
+                throw new InvalidRecipeException(
+                        "Requested stack elem " + index + " but stack has size " + stack.size());
+            }
+            final String element = stack.peek(index).getElem();
+            if (element == null) {
+                throw new InvalidRecipeException("Requested stack elem " + index + " has no value");
+            }
+            return element;
+        }
+
+        @Override
+        public String getOutput(final boolean stdErr) {
+            final String output = stdErr ? stack.peek().getStdErr() : stack.peek().getStdOut();
+            return output == null ? "" : output;
+        }
+
+        @Override
+        public String getConstant(final String name) throws InvalidRecipeException {
+            // let the Startup resolve this constant if possible
+            return context.getConstants().resolve(name);
+        }
+    }
 }
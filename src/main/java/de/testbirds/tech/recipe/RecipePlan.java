@@ -0,0 +1,208 @@
+package de.testbirds.tech.recipe;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import de.testbirds.tech.recipe.entity.RecipeMethod;
+import de.testbirds.tech.recipe.entity.RecipeStep;
+import de.testbirds.tech.recipe.report.InvalidRecipeException;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * an immutable, validated recipe. the structure of the recipe is derived once: where the children of each step end,
+ * how deep the stack is before each step and how many elements it needs at the start. a plan can be shared by any
+ * number of installers.
+ */
+public final class RecipePlan {
+
+    /**
+     * methods whose handlers read the element on top of the stack besides their parameter.
+     */
+    static final Set<RecipeMethod> READS_TOP = EnumSet.of(RecipeMethod.COPY, RecipeMethod.MOVE,
+            RecipeMethod.MOVE_FF);
+
+    /**
+     * plans of recipes that were compiled already, by identity of the list of steps.
+     */
+    private static final Cache<List<RecipeStep>, RecipePlan> PLANS = CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * the steps. they are executed from top to bottom.
+     */
+    private final List<RecipeStep> steps;
+
+    /**
+     * the parameter template of each step, null for POPs.
+     */
+    private final ParameterTemplate[] templates;
+
+    /**
+     * index of the POP that closes the children of each step. the amount of steps if the recipe ends before.
+     */
+    private final int[] ends;
+
+    /**
+     * amount of elements each step finds on the stack, relative to the start of the recipe.
+     */
+    private final int[] depths;
+
+    /**
+     * amount of elements that must be on the stack when the recipe starts.
+     */
+    private final int requiredStackSize;
+
+    /**
+     * constructor.
+     *
+     * @param steps             the steps
+     * @param templates         the parameter template of each step
+     * @param ends              index of the POP that closes the children of each step
+     * @param depths            relative depth of the stack before each step
+     * @param requiredStackSize amount of elements that must be on the stack at the start
+     */
+    private RecipePlan(final List<RecipeStep> steps, final ParameterTemplate[] templates, final int[] ends,
+                       final int[] depths, final int requiredStackSize) {
+        this.steps = steps;
+        this.templates = templates;
+        this.ends = ends;
+        this.depths = depths;
+        this.requiredStackSize = requiredStackSize;
+    }
+
+    /**
+     * get the plan of a recipe. the plan is compiled once per list of steps and shared afterwards, so the list must
+     * not be changed any more.
+     *
+     * @param steps the steps of the recipe
+     * @return the plan
+     * @throws InvalidRecipeException the recipe is not consistent
+     */
+    public static RecipePlan of(final List<RecipeStep> steps) throws InvalidRecipeException {
+        try {
+            return PLANS.get(steps, () -> compile(steps));
+        } catch (final ExecutionException e) {
+            throw (InvalidRecipeException) e.getCause();
+        }
+    }
+
+    /**
+     * compile a recipe into a plan without caching it.
+     *
+     * @param steps the steps of the recipe
+     * @return the plan
+     * @throws InvalidRecipeException the recipe is not consistent
+     */
+    public static RecipePlan compile(final List<RecipeStep> steps) throws InvalidRecipeException {
+        final List<RecipeStep> copy = Collections.unmodifiableList(new ArrayList<>(steps));
+        final ParameterTemplate[] templates = new ParameterTemplate[copy.size()];
+        final int[] ends = new int[copy.size()];
+        final int[] depths = new int[copy.size()];
+        // indexes of the steps whose children are not closed yet
+        final Deque<Integer> open = new ArrayDeque<>();
+        int depth = 0;
+        int required = 0;
+        for (int i = 0; i < copy.size(); i++) {
+            final RecipeStep step = copy.get(i);
+            if (step == null || step.getMethod() == null) {
+                throw new InvalidRecipeException("step " + i + " has no method");
+            }
+            depths[i] = depth;
+            ends[i] = i;
+            if (step.getMethod() == RecipeMethod.POP) {
+                required = Math.max(required, 1 - depth);
+                if (!open.isEmpty()) {
+                    ends[open.pop()] = i;
+                }
+                depth--;
+            } else {
+                if (step.getParameter() == null) {
+                    throw new InvalidRecipeException("step " + i + " (" + step.getMethod() + ") has no parameter");
+                }
+                templates[i] = ParameterTemplate.compile(step.getParameter());
+                final int stepRequires = READS_TOP.contains(step.getMethod()) ? 1 : 0;
+                required = Math.max(required, Math.max(stepRequires, templates[i].getRequiredStackSize()) - depth);
+                open.push(i);
+                depth++;
+            }
+        }
+        while (!open.isEmpty()) {
+            ends[open.pop()] = copy.size();
+        }
+        return new RecipePlan(copy, templates, ends, depths, required);
+    }
+
+    /**
+     * getter.
+     *
+     * @return the amount of steps
+     */
+    public int size() {
+        return steps.size();
+    }
+
+    /**
+     * getter.
+     *
+     * @param index index of the step
+     * @return the step
+     */
+    public RecipeStep getStep(final int index) {
+        return steps.get(index);
+    }
+
+    /**
+     * getter.
+     *
+     * @return all steps, unmodifiable
+     */
+    public List<RecipeStep> getSteps() {
+        return steps;
+    }
+
+    /**
+     * getter.
+     *
+     * @param index index of the step
+     * @return the parameter template of the step, null for a POP
+     */
+    public ParameterTemplate getTemplate(final int index) {
+        return templates[index];
+    }
+
+    /**
+     * get the end of the children of a step.
+     *
+     * @param index index of the step
+     * @return index of the POP that closes the children of the step, the amount of steps if there is none. the index of
+     * the step itself for a POP
+     */
+    public int getChildrenEnd(final int index) {
+        return ends[index];
+    }
+
+    /**
+     * get the depth of the stack before a step.
+     *
+     * @param index index of the step
+     * @return the amount of elements the steps before pushed (negative if they popped more than they pushed)
+     */
+    public int getDepth(final int index) {
+        return depths[index];
+    }
+
+    /**
+     * getter.
+     *
+     * @return the amount of elements that must be on the stack when the recipe starts
+     */
+    public int getRequiredStackSize() {
+        return requiredStackSize;
+    }
+}
@@ -2,10 +2,16 @@ package de.testbirds.tech.recipe.base;
 
 import de.testbirds.tech.recipe.report.SoftwareInstallException;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
 /**
  * extract this class to handle a RecipeStep with a specific RecipeMethod.
  */
-public abstract class AbstractRecipeMethodHandler {
+public abstract class AbstractRecipeMethodHandler implements AsyncRecipeMethodHandler {
     /**
      * will be called with the one resolved parameter and additionally some other arguments from the stack if told so by
      * requiresAdditionalArguments().
@@ -16,4 +22,96 @@ public abstract class AbstractRecipeMethodHandler {
      * @throws SoftwareInstallException executing this step failed
      */
     public abstract StackElement handle(String parameter, Installer callback) throws SoftwareInstallException;
+
+    /**
+     * adapter for handlers that only work synchronously: the step is handled by the calling thread and the returned
+     * stage is already completed. handlers that wait for I/O override this.
+     *
+     * @param parameter the resolved parameter that was given to this step
+     * @param callback  the installer that allows to execute some special actions
+     * @return the completed stage
+     */
+    @Override
+    public CompletionStage<StackElement> handleAsync(final String parameter, final Installer callback) {
+        final CompletableFuture<StackElement> result = new CompletableFuture<>();
+        try {
+            result.complete(handle(parameter, callback));
+        } catch (final SoftwareInstallException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * adapter for handlers that only work asynchronously, so they can be registered at the dispatcher. handle waits
+     * for the stage.
+     *
+     * @param handler the handler
+     * @return the adapted handler
+     */
+    public static AbstractRecipeMethodHandler of(final AsyncRecipeMethodHandler handler) {
+        if (handler instanceof AbstractRecipeMethodHandler) {
+            return (AbstractRecipeMethodHandler) handler;
+        }
+        return new AbstractRecipeMethodHandler() {
+            @Override
+            public StackElement handle(final String parameter, final Installer callback)
+                    throws SoftwareInstallException {
+                return await(handleAsync(parameter, callback));
+            }
+
+            @Override
+            public CompletionStage<StackElement> handleAsync(final String parameter, final Installer callback) {
+                return handler.handleAsync(parameter, callback);
+            }
+        };
+    }
+
+    /**
+     * wait until a step is handled. if the thread is interrupted, the stage is cancelled.
+     *
+     * @param stage the stage returned by handleAsync
+     * @param <T>   type of the result
+     * @return the result of the stage
+     * @throws SoftwareInstallException the stage was completed exceptionally or the thread was interrupted. runtime
+     *                                  exceptions and errors the stage was completed with are thrown as they are
+     */
+    public static <T> T await(final CompletionStage<T> stage) throws SoftwareInstallException {
+        final CompletableFuture<T> future = stage.toCompletableFuture();
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException && !(cause instanceof CompletionException)) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw toSoftwareInstallException(cause);
+        } catch (final CancellationException e) {
+            throw new SoftwareInstallException("step was cancelled", e);
+        } catch (final InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SoftwareInstallException("interrupted while waiting for step", e);
+        }
+    }
+
+    /**
+     * get the exception a stage was completed with.
+     *
+     * @param failure the exception
+     * @return the exception itself or one wrapping it
+     */
+    public static SoftwareInstallException toSoftwareInstallException(final Throwable failure) {
+        Throwable cause = failure;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof SoftwareInstallException) {
+            return (SoftwareInstallException) cause;
+        }
+        return new SoftwareInstallException("step failed", cause);
+    }
 }
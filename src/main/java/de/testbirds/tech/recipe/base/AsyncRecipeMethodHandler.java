@@ -0,0 +1,23 @@
+package de.testbirds.tech.recipe.base;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * handles a RecipeStep with a specific RecipeMethod without blocking the installer. a handler that waits for the
+ * network or another process returns a stage that is completed later, so the waiting does not hold a thread.
+ * {@link AbstractRecipeMethodHandler#of(AsyncRecipeMethodHandler)} makes such a handler usable by the dispatcher.
+ */
+@FunctionalInterface
+public interface AsyncRecipeMethodHandler {
+
+    /**
+     * start handling a step. the handler may only use the installer until the method returns, the installer goes on
+     * with the next step when the stage is completed.
+     *
+     * @param parameter the resolved parameter that was given to this step
+     * @param callback  the installer that allows to execute some special actions
+     * @return completed with the stack element that is pushed to the stack. completed exceptionally with a
+     * SoftwareInstallException if executing this step failed
+     */
+    CompletionStage<StackElement> handleAsync(String parameter, Installer callback);
+}
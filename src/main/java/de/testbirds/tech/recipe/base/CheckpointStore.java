@@ -0,0 +1,370 @@
+package de.testbirds.tech.recipe.base;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import de.testbirds.tech.recipe.entity.RecipeMethod;
+import de.testbirds.tech.recipe.entity.SoftwareVersion;
+import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import de.testbirds.tech.recipe.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * remembers the results of steps whose result only depends on their resolved parameter, per software and step index,
+ * so an installation that is repeated after a reboot or a failure restores them instead of executing the steps again.
+ * a result is only restored if the step has the same fingerprint and its file still exists. the store owns the files
+ * of the results it holds until they are popped: they are not journaled and not deleted when a failed installation
+ * unwinds its stack. the checkpoints of a software are dropped when it or another version of it was installed. an
+ * installation that fails and is never repeated would leave its files behind, so checkpoints that were not touched
+ * for longer than the maximum age are dropped when the store is created.
+ */
+public final class CheckpointStore {
+
+    /**
+     * default milliseconds after which checkpoints that were not touched are dropped.
+     */
+    public static final long DEFAULT_MAX_AGE = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * the logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointStore.class);
+
+    /**
+     * checkpoint property of the fingerprint, prefixed by the step index.
+     */
+    private static final String FINGERPRINT_KEY = ".fingerprint";
+
+    /**
+     * checkpoint property of the element, prefixed by the step index.
+     */
+    private static final String ELEM_KEY = ".elem";
+
+    /**
+     * checkpoint property of the file that is deleted on POP, prefixed by the step index.
+     */
+    private static final String DELETE_KEY = ".delete";
+
+    /**
+     * checkpoint property of the slug of the software.
+     */
+    private static final String SLUG_KEY = "slug";
+
+    /**
+     * checkpoint property of the version of the software.
+     */
+    private static final String VERSION_KEY = "version";
+
+    /**
+     * checkpoint property of the architecture of the software.
+     */
+    private static final String ARCH_KEY = "arch";
+
+    /**
+     * suffix of the checkpoint files.
+     */
+    private static final String SUFFIX = ".properties";
+
+    /**
+     * the directory with one file per software.
+     */
+    private final Path directory;
+
+    /**
+     * create a store that drops checkpoints after {@link #DEFAULT_MAX_AGE}. the directory has to survive a reboot, so
+     * it should not be the temp directory.
+     *
+     * @param directory the directory, it is created if necessary
+     * @throws IOException the directory can't be created
+     */
+    public CheckpointStore(final File directory) throws IOException {
+        this(directory, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * create a store. checkpoints that were not touched for longer than the maximum age are dropped right away.
+     *
+     * @param directory the directory, it is created if necessary
+     * @param maxAge    milliseconds after which checkpoints that were not touched are dropped
+     * @throws IOException the directory can't be created
+     */
+    public CheckpointStore(final File directory, final long maxAge) throws IOException {
+        this.directory = Files.createDirectories(directory.toPath());
+        expire(maxAge);
+    }
+
+    /**
+     * create the fingerprint of a step. if the parameter is a file, its size and modification time are part of it.
+     *
+     * @param method   the method of the step
+     * @param resolved the resolved parameter
+     * @return the fingerprint
+     */
+    public static String fingerprint(final RecipeMethod method, final String resolved) {
+        final Hasher hasher = Hashing.sha256().newHasher()
+                .putString(method.name(), StandardCharsets.UTF_8)
+                .putChar('\n')
+                .putString(resolved, StandardCharsets.UTF_8);
+        final File file = new File(resolved);
+        if (resolved.indexOf('\0') < 0 && file.isFile()) {
+            hasher.putLong(file.length()).putLong(file.lastModified());
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * get the result of a step if it was recorded with the same fingerprint and its file still exists.
+     *
+     * @param software    the software
+     * @param index       index of the step in the recipe
+     * @param fingerprint fingerprint of the step
+     * @return the result, null if the step has to be executed
+     */
+    public synchronized StackElement restore(final SoftwareVersion software, final int index,
+                                             final String fingerprint) {
+        final Properties checkpoints = load(software);
+        if (!fingerprint.equals(checkpoints.getProperty(index + FINGERPRINT_KEY))) {
+            return null;
+        }
+        final StackElement element = toElement(checkpoints, index);
+        if (element.getCleanUp() != null && !Files.exists(Paths.get(element.getCleanUp().getResource()))) {
+            LOG.debug("checkpoint of step {} of {} is gone", index, software.getSlug());
+            return null;
+        }
+        return element;
+    }
+
+    /**
+     * record the result of a step. a previous result of the step is cleaned up if it differs. results with other
+     * clean ups than DELETE are not recorded.
+     *
+     * @param software    the software
+     * @param index       index of the step in the recipe
+     * @param fingerprint fingerprint of the step
+     * @param element     the result
+     * @return true if it was recorded, the store owns its file then
+     */
+    public synchronized boolean record(final SoftwareVersion software, final int index, final String fingerprint,
+                                       final StackElement element) {
+        final CleanUpOperation cleanUp = element.getCleanUp();
+        if (element.getElem() == null || cleanUp != null && cleanUp.getType() != CleanUpOperation.Type.DELETE) {
+            return false;
+        }
+        final Properties checkpoints = load(software);
+        if (checkpoints.getProperty(index + FINGERPRINT_KEY) != null) {
+            final CleanUpOperation previous = toElement(checkpoints, index).getCleanUp();
+            if (previous != null && (cleanUp == null || !previous.getResource().equals(cleanUp.getResource()))) {
+                cleanUp(previous);
+            }
+        }
+        checkpoints.setProperty(index + FINGERPRINT_KEY, fingerprint);
+        checkpoints.setProperty(index + ELEM_KEY, element.getElem());
+        if (cleanUp == null) {
+            checkpoints.remove(index + DELETE_KEY);
+        } else {
+            checkpoints.setProperty(index + DELETE_KEY, cleanUp.getResource());
+        }
+        try {
+            save(software, checkpoints);
+            return true;
+        } catch (final IOException e) {
+            LOG.warn("can't record checkpoint of step {} of {}", new Object[]{index, software.getSlug(), e});
+            return false;
+        }
+    }
+
+    /**
+     * drop all checkpoints of a software and of its other versions, and clean up the files that are still left.
+     *
+     * @param software the software
+     */
+    public synchronized void clear(final SoftwareVersion software) {
+        clear(getFile(software), load(software));
+        if (software.getSlug() == null) {
+            // the other versions can't be told apart from versions of other softwares
+            return;
+        }
+        for (final Path file : list()) {
+            final Properties checkpoints = load(file);
+            if (software.getSlug().equals(checkpoints.getProperty(SLUG_KEY))
+                    && String.valueOf(software.getArch()).equals(checkpoints.getProperty(ARCH_KEY))) {
+                LOG.debug("dropping checkpoints of version {} of {}", checkpoints.getProperty(VERSION_KEY),
+                        software.getSlug());
+                clear(file, checkpoints);
+            }
+        }
+    }
+
+    /**
+     * drop the checkpoints that were not touched for longer than the maximum age, e.g. of installations that failed
+     * and were never repeated.
+     *
+     * @param maxAge milliseconds after which checkpoints are dropped
+     */
+    private synchronized void expire(final long maxAge) {
+        final long oldest = System.currentTimeMillis() - maxAge;
+        for (final Path file : list()) {
+            try {
+                if (Files.getLastModifiedTime(file).toMillis() < oldest) {
+                    LOG.debug("dropping expired checkpoints {}", file);
+                    clear(file, load(file));
+                }
+            } catch (final IOException e) {
+                LOG.warn("can't expire checkpoints {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * drop the checkpoints of a file and clean up the files that are still left.
+     *
+     * @param file        the checkpoint file
+     * @param checkpoints its checkpoints
+     */
+    private static void clear(final Path file, final Properties checkpoints) {
+        for (final String key : checkpoints.stringPropertyNames()) {
+            if (key.endsWith(DELETE_KEY)) {
+                cleanUp(new CleanUpOperation(CleanUpOperation.Type.DELETE, checkpoints.getProperty(key)));
+            }
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            LOG.warn("can't delete checkpoints {}", file, e);
+        }
+    }
+
+    /**
+     * list the checkpoint files.
+     *
+     * @return the files
+     */
+    private List<Path> list() {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (final Path file : stream) {
+                files.add(file);
+            }
+        } catch (final IOException e) {
+            LOG.warn("can't list checkpoints in {}", directory, e);
+        }
+        return files;
+    }
+
+    /**
+     * create the element of a checkpoint.
+     *
+     * @param checkpoints the checkpoints of a software
+     * @param index       index of the step
+     * @return the element
+     */
+    private static StackElement toElement(final Properties checkpoints, final int index) {
+        final String delete = checkpoints.getProperty(index + DELETE_KEY);
+        return new StackElement(checkpoints.getProperty(index + ELEM_KEY),
+                delete == null ? null : new CleanUpOperation(CleanUpOperation.Type.DELETE, delete));
+    }
+
+    /**
+     * run a clean up of a checkpoint that is not needed any more.
+     *
+     * @param cleanUp the clean up
+     */
+    private static void cleanUp(final CleanUpOperation cleanUp) {
+        try {
+            cleanUp.cleanUp();
+        } catch (final SoftwareInstallException | RuntimeException e) {
+            LOG.warn("can't clean up checkpoint {}", cleanUp.getResource(), e);
+        }
+    }
+
+    /**
+     * get the checkpoint file of a software.
+     *
+     * @param software the software
+     * @return the file, it may not exist
+     */
+    private Path getFile(final SoftwareVersion software) {
+        final String key = software.getSlug() + '\n' + software.getVersion() + '\n' + software.getArch();
+        return directory.resolve(Hashing.sha256().hashString(key, StandardCharsets.UTF_8) + SUFFIX);
+    }
+
+    /**
+     * load the checkpoints of a software.
+     *
+     * @param software the software
+     * @return the checkpoints, empty if there are none
+     */
+    private Properties load(final SoftwareVersion software) {
+        return load(getFile(software));
+    }
+
+    /**
+     * load a checkpoint file.
+     *
+     * @param file the file
+     * @return the checkpoints, empty if there are none
+     */
+    private static Properties load(final Path file) {
+        if (!Files.exists(file)) {
+            return new Properties();
+        }
+        try {
+            return FileUtils.loadPropertyFile(file.toFile());
+        } catch (final IOException e) {
+            LOG.warn("can't read checkpoints {}, ignoring them", file, e);
+            return new Properties();
+        }
+    }
+
+    /**
+     * set a checkpoint property, or remove it if the value is null.
+     *
+     * @param checkpoints the checkpoints
+     * @param key         the key of the property
+     * @param value       the value, may be null
+     */
+    private static void setOrRemove(final Properties checkpoints, final String key, final String value) {
+        if (value == null) {
+            checkpoints.remove(key);
+        } else {
+            checkpoints.setProperty(key, value);
+        }
+    }
+
+    /**
+     * write the checkpoints of a software atomically.
+     *
+     * @param software    the software
+     * @param checkpoints the checkpoints
+     * @throws IOException the checkpoints can't be written
+     */
+    private void save(final SoftwareVersion software, final Properties checkpoints) throws IOException {
+        // versions that are not part of a software have no slug
+        setOrRemove(checkpoints, SLUG_KEY, software.getSlug());
+        setOrRemove(checkpoints, VERSION_KEY, software.getVersion());
+        checkpoints.setProperty(ARCH_KEY, String.valueOf(software.getArch()));
+        final Path tmp = Files.createTempFile(directory, "checkpoints", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                checkpoints.store(out, null);
+            }
+            Files.move(tmp, getFile(software), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package de.testbirds.tech.recipe.base;
+
+import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * a durable log of the clean up operations that are still pending. an operation is recorded when its element is pushed
+ * and completed when it is cleaned up, so the operations of an installation that was killed are known at the next
+ * start and replayed when the journal is opened. a journal file belongs to one process, it is locked while the process
+ * runs. if another process holds it, nothing is journaled.
+ */
+public final class CleanUpJournal {
+
+    /**
+     * name of the default journal in the temp directory of the jvm.
+     */
+    public static final String DEFAULT_NAME = "recipe-cleanup.journal";
+
+    /**
+     * the logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CleanUpJournal.class);
+
+    /**
+     * the journals that are open in this jvm, by absolute file.
+     */
+    private static final ConcurrentMap<File, CleanUpJournal> JOURNALS = new ConcurrentHashMap<>();
+
+    /**
+     * prefix of a line that records an operation.
+     */
+    private static final String RECORD = "+";
+
+    /**
+     * prefix of a line that completes an operation.
+     */
+    private static final String COMPLETE = "-";
+
+    /**
+     * encoding of the resources.
+     */
+    private static final String ENCODING = StandardCharsets.UTF_8.name();
+
+    /**
+     * the journal file.
+     */
+    private final File file;
+
+    /**
+     * ids of the operations that are recorded and not completed yet.
+     */
+    private final Map<CleanUpOperation, Long> pending = new IdentityHashMap<>();
+
+    /**
+     * the locked journal file, null if nothing is journaled.
+     */
+    private FileChannel channel;
+
+    /**
+     * id of the next recorded operation.
+     */
+    private long nextId;
+
+    /**
+     * constructor.
+     *
+     * @param file the journal file
+     */
+    private CleanUpJournal(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * get the default journal. it is opened on first use.
+     *
+     * @return the journal in the temp directory of the jvm
+     */
+    public static CleanUpJournal getDefault() {
+        return of(new File(System.getProperty("java.io.tmpdir"), DEFAULT_NAME));
+    }
+
+    /**
+     * get a journal. it is opened once per jvm, operations that were left in it are cleaned up then.
+     *
+     * @param file the journal file, it is created if necessary
+     * @return the journal
+     */
+    public static CleanUpJournal of(final File file) {
+        return JOURNALS.computeIfAbsent(file.getAbsoluteFile(), absolute -> {
+            final CleanUpJournal journal = new CleanUpJournal(absolute);
+            journal.open();
+            return journal;
+        });
+    }
+
+    /**
+     * getter.
+     *
+     * @return the journal file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * record an operation, before the element it belongs to is pushed. the record is written to disk before the method
+     * returns.
+     *
+     * @param operation the operation
+     */
+    public synchronized void record(final CleanUpOperation operation) {
+        if (channel == null || pending.containsKey(operation)) {
+            return;
+        }
+        final long id = nextId++;
+        final String line = RECORD + " " + id + " " + operation.getType() + " " + encode(operation.getResource());
+        if (append(line, true)) {
+            pending.put(operation, id);
+        }
+    }
+
+    /**
+     * mark an operation as done. operations that were not recorded are ignored.
+     *
+     * @param operation the operation
+     */
+    public synchronized void complete(final CleanUpOperation operation) {
+        final Long id = pending.remove(operation);
+        if (id == null || channel == null) {
+            return;
+        }
+        if (pending.isEmpty()) {
+            try {
+                // nothing is pending, so the journal does not grow with every installation
+                channel.truncate(0);
+            } catch (final IOException e) {
+                LOG.warn("can't truncate clean up journal {}", file, e);
+            }
+        } else {
+            // losing this line only means the operation is repeated at the next start, so it is not forced
+            append(COMPLETE + " " + id, false);
+        }
+    }
+
+    /**
+     * lock the journal file and clean up everything that was left in it.
+     */
+    private synchronized void open() {
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.tryLock() == null) {
+                LOG.info("clean up journal {} is used by another process, not journaling", file);
+                closeChannel();
+                return;
+            }
+            final List<CleanUpOperation> leftovers = read();
+            // undo them like the stack they came from, the newest first
+            for (int i = leftovers.size() - 1; i >= 0; i--) {
+                final CleanUpOperation leftover = leftovers.get(i);
+                try {
+                    leftover.cleanUp();
+                    LOG.info("cleaned up {} {} left by a previous installation", leftover.getType(),
+                            leftover.getResource());
+                } catch (final SoftwareInstallException | RuntimeException e) {
+                    LOG.warn("can't clean up {} {} left by a previous installation",
+                            new Object[]{leftover.getType(), leftover.getResource(), e});
+                }
+            }
+            channel.truncate(0);
+        } catch (final IOException | OverlappingFileLockException e) {
+            LOG.warn("can't open clean up journal {}, not journaling", file, e);
+            closeChannel();
+        }
+    }
+
+    /**
+     * read the operations that were recorded and not completed.
+     *
+     * @return the operations in the order they were recorded
+     * @throws IOException the journal can't be read
+     */
+    private List<CleanUpOperation> read() throws IOException {
+        final Map<String, CleanUpOperation> recorded = new LinkedHashMap<>();
+        channel.position(0);
+        // the reader is not closed, that would close the channel
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            final String[] fields = line.split(" ");
+            try {
+                if (fields.length == 4 && RECORD.equals(fields[0])) {
+                    recorded.put(fields[1], new CleanUpOperation(CleanUpOperation.Type.valueOf(fields[2]),
+                            URLDecoder.decode(fields[3], ENCODING)));
+                } else if (fields.length == 2 && COMPLETE.equals(fields[0])) {
+                    recorded.remove(fields[1]);
+                } else {
+                    LOG.warn("ignoring line of clean up journal {}: {}", file, line);
+                }
+            } catch (final IllegalArgumentException e) {
+                // e.g. the last line was written partially
+                LOG.warn("ignoring line of clean up journal {}: {}", file, line);
+            }
+        }
+        return new ArrayList<>(recorded.values());
+    }
+
+    /**
+     * append a line to the journal.
+     *
+     * @param line  the line
+     * @param force true if it must be on disk when the method returns
+     * @return false if it could not be written
+     */
+    private boolean append(final String line, final boolean force) {
+        try {
+            final ByteBuffer bytes = StandardCharsets.UTF_8.encode(line + "\n");
+            channel.position(channel.size());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            if (force) {
+                channel.force(false);
+            }
+            return true;
+        } catch (final IOException e) {
+            LOG.warn("can't write clean up journal {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * close the journal file, nothing is journaled afterwards.
+     */
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                LOG.debug("closing clean up journal {} failed", file, e);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * encode a resource, so it does not contain spaces or line breaks.
+     *
+     * @param resource the resource
+     * @return the encoded resource
+     */
+    private static String encode(final String resource) {
+        try {
+            return URLEncoder.encode(resource, ENCODING);
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(ENCODING + " is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package de.testbirds.tech.recipe.base;
+
+import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import de.testbirds.tech.recipe.util.ThreadFactories;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * runs the clean up operations of an installer. a DELETE renames its file or directory next to itself at once, so the
+ * path is free for the next step, and deletes it in the background. the subtrees of a directory are deleted in
+ * parallel. {@link #flush()} waits until everything is deleted. other operations run right away.
+ */
+public final class CleanUpReaper {
+
+    /**
+     * the logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(CleanUpReaper.class);
+
+    /**
+     * added to the name of a renamed file, followed by a random id.
+     */
+    private static final String TRASH_SUFFIX = ".recipe-trash-";
+
+    /**
+     * deletes the renamed files, shared by all installers. deleting is mostly waiting for the file system, so there
+     * are more threads than cores.
+     */
+    private static final ExecutorService DELETERS = Executors.newFixedThreadPool(
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors()),
+            ThreadFactories.newThreadFactory("cleanup-reaper-%d"));
+
+    /**
+     * the journal of pending clean ups.
+     */
+    private final CleanUpJournal journal;
+
+    /**
+     * deletions that are running in the background.
+     */
+    private final Queue<CompletableFuture<Void>> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * create a reaper.
+     *
+     * @param journal the journal of pending clean ups. operations are completed in it when they are done
+     */
+    public CleanUpReaper(final CleanUpJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * run a clean up operation. a DELETE only renames its file before the method returns.
+     *
+     * @param operation the operation
+     * @throws SoftwareInstallException the operation failed
+     */
+    public void cleanUp(final CleanUpOperation operation) throws SoftwareInstallException {
+        if (operation.getType() != CleanUpOperation.Type.DELETE) {
+            operation.cleanUp();
+            journal.complete(operation);
+            return;
+        }
+        final Path target = Paths.get(operation.getResource()).toAbsolutePath();
+        if (!Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            journal.complete(operation);
+            return;
+        }
+        final Path trash = target.resolveSibling(target.getFileName() + TRASH_SUFFIX + UUID.randomUUID());
+        // recorded before the rename, so a killed installation does not leave the renamed file behind
+        final CleanUpOperation trashed = new CleanUpOperation(CleanUpOperation.Type.DELETE, trash.toString());
+        journal.record(trashed);
+        try {
+            Files.move(target, trash, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException | UnsupportedOperationException e) {
+            LOG.debug("can't rename {}, deleting it right away", target, e);
+            journal.complete(trashed);
+            operation.cleanUp();
+            journal.complete(operation);
+            return;
+        }
+        journal.complete(operation);
+        pending.add(deleteTree(trash).whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                journal.complete(trashed);
+            } else {
+                LOG.warn("can't delete {} completely", trash, failure);
+            }
+        }));
+    }
+
+    /**
+     * wait until all files of DELETE operations are deleted. failed deletions were logged already, they stay in the
+     * journal and are retried at the next start.
+     *
+     * @throws SoftwareInstallException interrupted while waiting
+     */
+    public void flush() throws SoftwareInstallException {
+        for (CompletableFuture<Void> deletion = pending.poll(); deletion != null; deletion = pending.poll()) {
+            try {
+                deletion.get();
+            } catch (final ExecutionException e) {
+                LOG.debug("deletion failed", e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SoftwareInstallException("interrupted while waiting for clean up", e);
+            }
+        }
+    }
+
+    /**
+     * delete a file or a directory in the background. each entry of a directory is deleted by a task of its own.
+     *
+     * @param root the file or directory
+     * @return completed when it is deleted
+     */
+    private static CompletableFuture<Void> deleteTree(final Path root) {
+        return CompletableFuture.supplyAsync(() -> listChildren(root), DELETERS).thenCompose(children -> {
+            final List<CompletableFuture<Void>> subtrees = new ArrayList<>(children.size());
+            for (final Path child : children) {
+                subtrees.add(CompletableFuture.runAsync(() -> walkAndDelete(child), DELETERS));
+            }
+            return CompletableFuture.allOf(subtrees.toArray(new CompletableFuture<?>[0]));
+        }).thenRunAsync(() -> {
+            try {
+                Files.deleteIfExists(root);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, DELETERS);
+    }
+
+    /**
+     * list the entries of a directory.
+     *
+     * @param directory the directory
+     * @return the entries, none if it is no directory
+     */
+    private static List<Path> listChildren(final Path directory) {
+        final List<Path> children = new ArrayList<>();
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            return children;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (final Path child : stream) {
+                children.add(child);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return children;
+    }
+
+    /**
+     * delete a file or a directory with everything in it. symbolic links are deleted, not followed.
+     *
+     * @param root the file or directory
+     */
+    private static void walkAndDelete(final Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+                    if (exc != null) {
+                        throw exc;
+                    }
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package de.testbirds.tech.recipe.base;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * downloads that are started before their DOWNLOAD step is reached. the step claims the download by its resolved
+ * parameter and either gets the finished file or joins the running transfer. the downloads are asynchronous, so a
+ * prefetch does not occupy a thread while it waits for the network.
+ */
+public final class DownloadPrefetcher {
+
+    /**
+     * the logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DownloadPrefetcher.class);
+
+    /**
+     * maximum amount of downloads that are prefetched at the same time.
+     */
+    private final int limit;
+
+    /**
+     * downloads that are not claimed yet, by resolved parameter.
+     */
+    private final Map<String, CompletableFuture<File>> downloads;
+
+    /**
+     * create a prefetcher.
+     *
+     * @param limit maximum amount of unclaimed downloads. 0 disables prefetching
+     */
+    public DownloadPrefetcher(final int limit) {
+        this.limit = limit;
+        this.downloads = new HashMap<>();
+    }
+
+    /**
+     * check if there is room for another download.
+     *
+     * @return true if no more downloads are accepted
+     */
+    public boolean isFull() {
+        return downloads.size() >= limit;
+    }
+
+    /**
+     * check if a download for this parameter was started and not claimed yet.
+     *
+     * @param parameter the resolved parameter of the DOWNLOAD step
+     * @return true if it is prefetched
+     */
+    public boolean contains(final String parameter) {
+        return downloads.containsKey(parameter);
+    }
+
+    /**
+     * start a download in the background. does nothing if it is already running or there is no room left.
+     *
+     * @param parameter the resolved parameter of the DOWNLOAD step
+     * @param download  starts the download. the future is completed with the file, cancelling it stops the download
+     *                  and deletes the file
+     */
+    public void prefetch(final String parameter, final Supplier<CompletableFuture<File>> download) {
+        if (isFull() || contains(parameter)) {
+            return;
+        }
+        LOG.debug("prefetching {}", parameter);
+        downloads.put(parameter, download.get());
+    }
+
+    /**
+     * take over a prefetched download. the caller is responsible for the file afterwards.
+     *
+     * @param parameter the resolved parameter of the DOWNLOAD step
+     * @return the download or null if it was not prefetched
+     */
+    public CompletableFuture<File> claim(final String parameter) {
+        return downloads.remove(parameter);
+    }
+
+    /**
+     * cancel all unclaimed downloads and delete their files.
+     */
+    public void close() {
+        for (final Map.Entry<String, CompletableFuture<File>> download : downloads.entrySet()) {
+            // a cancelled download deletes its file itself
+            if (!download.getValue().cancel(true)) {
+                try {
+                    final File file = download.getValue().get();
+                    if (!file.delete()) {
+                        LOG.warn("can't delete unclaimed download {}", file);
+                    }
+                } catch (final ExecutionException e) {
+                    LOG.debug("unclaimed download of {} failed", download.getKey(), e);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        downloads.clear();
+    }
+}
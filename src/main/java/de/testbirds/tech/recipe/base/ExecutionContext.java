@@ -0,0 +1,217 @@
+package de.testbirds.tech.recipe.base;
+
+import de.testbirds.tech.recipe.ConstantResolver;
+import de.testbirds.tech.recipe.Startup;
+import de.testbirds.tech.recipe.util.FileUtils;
+import org.eclipse.jetty.client.HttpClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * everything an installer shares with the handlers it calls: the handlers themselves, the http client, the place for
+ * temporary files, the journal of pending clean ups, the checkpoints of steps and the constants. installers only change
+ * state through their context, so installers with separate contexts can run in the same jvm at the same time. a
+ * context is immutable and thread safe, installers of the same order may share it.
+ */
+public final class ExecutionContext {
+
+    /**
+     * the startup.
+     */
+    private final Startup startup;
+
+    /**
+     * handlers for the recipe steps.
+     */
+    private final RecipeMethodDispatcher dispatcher;
+
+    /**
+     * the http client, null for the shared one.
+     */
+    private final HttpClient httpClient;
+
+    /**
+     * the directory temporary files are created in.
+     */
+    private final File tempDirectory;
+
+    /**
+     * the clean up journal, null for the default one.
+     */
+    private final CleanUpJournal cleanUpJournal;
+
+    /**
+     * the results of steps that are restored when an installation is repeated, null if steps are always executed.
+     */
+    private final CheckpointStore checkpointStore;
+
+    /**
+     * the constants of the startup.
+     */
+    private final ConstantResolver constants;
+
+    /**
+     * create a context with the default handlers, the shared http client and the temp directory of the jvm.
+     *
+     * @param startup the startup
+     */
+    public ExecutionContext(final Startup startup) {
+        this(startup, RecipeMethodDispatcher.getInst(), null, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * create a context.
+     *
+     * @param startup       the startup
+     * @param dispatcher    handlers for the recipe steps
+     * @param httpClient    the http client, null for the shared one. it has to be started already
+     * @param tempDirectory the directory temporary files are created in, it is created if necessary
+     */
+    public ExecutionContext(final Startup startup, final RecipeMethodDispatcher dispatcher,
+                            final HttpClient httpClient, final File tempDirectory) {
+        this(startup, dispatcher, httpClient, tempDirectory, null, null);
+    }
+
+    /**
+     * create a context.
+     *
+     * @param startup         the startup
+     * @param dispatcher      handlers for the recipe steps
+     * @param httpClient      the http client, null for the shared one
+     * @param tempDirectory   the directory temporary files are created in
+     * @param cleanUpJournal   the clean up journal, null for the default one
+     * @param checkpointStore the checkpoints of steps, null to always execute them
+     */
+    private ExecutionContext(final Startup startup, final RecipeMethodDispatcher dispatcher,
+                             final HttpClient httpClient, final File tempDirectory,
+                             final CleanUpJournal cleanUpJournal, final CheckpointStore checkpointStore) {
+        this.startup = startup;
+        this.dispatcher = dispatcher;
+        this.httpClient = httpClient;
+        this.tempDirectory = tempDirectory;
+        this.cleanUpJournal = cleanUpJournal;
+        this.checkpointStore = checkpointStore;
+        this.constants = ConstantResolver.of(startup).withTempDirectory(tempDirectory);
+    }
+
+    /**
+     * create a copy of this context that uses other handlers.
+     *
+     * @param otherDispatcher the handlers
+     * @return the new context
+     */
+    public ExecutionContext withDispatcher(final RecipeMethodDispatcher otherDispatcher) {
+        return new ExecutionContext(startup, otherDispatcher, httpClient, tempDirectory, cleanUpJournal,
+                checkpointStore);
+    }
+
+    /**
+     * create a copy of this context that records pending clean ups in another journal.
+     *
+     * @param otherJournal the journal
+     * @return the new context
+     */
+    public ExecutionContext withCleanUpJournal(final CleanUpJournal otherJournal) {
+        return new ExecutionContext(startup, dispatcher, httpClient, tempDirectory, otherJournal, checkpointStore);
+    }
+
+    /**
+     * create a copy of this context that restores the results of SET, UNZIP and cached DOWNLOAD steps from a
+     * checkpoint store when an installation is repeated.
+     *
+     * @param otherStore the store, null to always execute the steps
+     * @return the new context
+     */
+    public ExecutionContext withCheckpointStore(final CheckpointStore otherStore) {
+        return new ExecutionContext(startup, dispatcher, httpClient, tempDirectory, cleanUpJournal, otherStore);
+    }
+
+    /**
+     * getter.
+     *
+     * @return the startup
+     */
+    public Startup getStartup() {
+        return startup;
+    }
+
+    /**
+     * getter.
+     *
+     * @return handlers for the recipe steps
+     */
+    public RecipeMethodDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * getter.
+     *
+     * @return the constants of the startup
+     */
+    public ConstantResolver getConstants() {
+        return constants;
+    }
+
+    /**
+     * get the http client.
+     *
+     * @return the client of this context or the shared one
+     * @throws IOException the shared client can't be started
+     */
+    public HttpClient getHttpClient() throws IOException {
+        return httpClient == null ? FileUtils.getJettyClient() : httpClient;
+    }
+
+    /**
+     * get the clean up journal.
+     *
+     * @return the journal of this context or the default one
+     */
+    public CleanUpJournal getCleanUpJournal() {
+        return cleanUpJournal == null ? CleanUpJournal.getDefault() : cleanUpJournal;
+    }
+
+    /**
+     * getter.
+     *
+     * @return the checkpoints of steps, null if steps are always executed
+     */
+    public CheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    /**
+     * getter.
+     *
+     * @return the directory temporary files are created in
+     */
+    public File getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * create a new, empty temporary file with a unique name.
+     *
+     * @param prefix prefix of the name
+     * @param suffix suffix of the name
+     * @return the file
+     * @throws IOException the file can't be created
+     */
+    public File createTempFile(final String prefix, final String suffix) throws IOException {
+        return Files.createTempFile(Files.createDirectories(tempDirectory.toPath()), prefix, suffix).toFile();
+    }
+
+    /**
+     * create a new, empty temporary directory with a unique name.
+     *
+     * @param prefix prefix of the name
+     * @return the directory
+     * @throws IOException the directory can't be created
+     */
+    public File createTempDirectory(final String prefix) throws IOException {
+        return Files.createTempDirectory(Files.createDirectories(tempDirectory.toPath()), prefix).toFile();
+    }
+}
@@ -0,0 +1,172 @@
+package de.testbirds.tech.recipe.base;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EmptyStackException;
+import java.util.List;
+
+/**
+ * the stack of an installer. unlike {@link java.util.Stack} it is not synchronized, because an installer is only used
+ * by one thread at a time, and elements are addressed from the top like the {{N}} variables of a recipe.
+ */
+public final class FrameStack {
+
+    /**
+     * initial capacity. most recipes are not deeper than this.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * the elements, the top is at size - 1.
+     */
+    private StackElement[] elements;
+
+    /**
+     * the amount of elements.
+     */
+    private int size;
+
+    /**
+     * read only view of the elements.
+     */
+    private final List<StackElement> view = new AbstractList<StackElement>() {
+        @Override
+        public StackElement get(final int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    /**
+     * create an empty stack.
+     */
+    public FrameStack() {
+        elements = new StackElement[INITIAL_CAPACITY];
+    }
+
+    /**
+     * create a stack with elements.
+     *
+     * @param initial the elements, the last one is the top
+     */
+    public FrameStack(final Collection<StackElement> initial) {
+        elements = initial.toArray(new StackElement[Math.max(INITIAL_CAPACITY, initial.size())]);
+        size = initial.size();
+    }
+
+    /**
+     * push an element.
+     *
+     * @param element the element
+     */
+    public void push(final StackElement element) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        elements[size++] = element;
+    }
+
+    /**
+     * remove the top element.
+     *
+     * @return the element that was on top
+     */
+    public StackElement pop() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+        final StackElement top = elements[--size];
+        elements[size] = null;
+        return top;
+    }
+
+    /**
+     * getter.
+     *
+     * @return the top element
+     */
+    public StackElement peek() {
+        return peek(0);
+    }
+
+    /**
+     * get an element counted from the top.
+     *
+     * @param depth 0 for the top element, 1 for the one below, ...
+     * @return the element
+     */
+    public StackElement peek(final int depth) {
+        if (depth < 0 || depth >= size) {
+            throw new EmptyStackException();
+        }
+        return elements[size - 1 - depth];
+    }
+
+    /**
+     * getter.
+     *
+     * @return the amount of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * getter.
+     *
+     * @return true if there are no elements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * get a read only view of the stack. it is not copied, so it changes with the stack.
+     *
+     * @return the elements, the last one is the top
+     */
+    public List<StackElement> view() {
+        return view;
+    }
+
+    /**
+     * remember the current state of the stack, e.g. before steps are inserted.
+     *
+     * @return the snapshot
+     */
+    public int snapshot() {
+        return size;
+    }
+
+    /**
+     * remove all elements that were pushed since a snapshot. their clean up is up to the caller.
+     *
+     * @param snapshot the snapshot
+     * @return the removed elements, the former top first
+     * @throws IllegalStateException elements that were on the stack at the snapshot were popped already
+     */
+    public List<StackElement> restore(final int snapshot) {
+        if (snapshot > size) {
+            throw new IllegalStateException((snapshot - size) + " elements of the snapshot were popped already");
+        }
+        final List<StackElement> removed = new ArrayList<>(size - snapshot);
+        while (size > snapshot) {
+            removed.add(pop());
+        }
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return view.toString();
+    }
+}
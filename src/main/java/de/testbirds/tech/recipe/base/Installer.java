@@ -5,7 +5,9 @@ import de.testbirds.tech.recipe.entity.RecipeStep;
 import de.testbirds.tech.recipe.entity.SoftwareVersion;
 import de.testbirds.tech.recipe.report.Reporter;
 import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import de.testbirds.tech.recipe.util.ShellSession;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
 import java.util.Stack;
@@ -43,9 +45,32 @@ public interface Installer {
      * returns a copy of the current stack.
      *
      * @return stack
+     * @deprecated copies the whole stack, use {@link #getFrames()}
      */
+    @Deprecated
     Stack<StackElement> getStack();
 
+    /**
+     * returns a read only view of the current stack. installers that keep their stack in a list should return a view,
+     * it is not copied then and changes while steps are executed. by default it is a copy of {@link #getStack()}.
+     *
+     * @return stack, the last element is the top
+     */
+    default List<StackElement> getFrames() {
+        return Collections.unmodifiableList(getStack());
+    }
+
+    /**
+     * getter for the handlers, http client, temporary files and constants of this installer. handlers should take
+     * everything they share with other installers from here. by default it is a new context with the default handlers,
+     * the shared http client and the temp directory of the jvm.
+     *
+     * @return the execution context
+     */
+    default ExecutionContext getContext() {
+        return new ExecutionContext(getStartup());
+    }
+
     /**
      * gives back the startup.
      *
@@ -76,4 +101,31 @@ public interface Installer {
      * @return software
      */
     SoftwareVersion getSoftware();
+
+    /**
+     * getter for the downloads that were started before their DOWNLOAD step was reached.
+     *
+     * @return prefetcher of this installer, null if nothing is prefetched
+     */
+    default DownloadPrefetcher getDownloadPrefetcher() {
+        return null;
+    }
+
+    /**
+     * getter for the shell that runs the COMMAND steps of this installer.
+     *
+     * @return the shell session or null if every command starts its own shell
+     */
+    default ShellSession getShellSession() {
+        return null;
+    }
+
+    /**
+     * getter for the step whose handler is running right now.
+     *
+     * @return the current step or null if no handler is running or it is not known
+     */
+    default RecipeStep getCurrentStep() {
+        return null;
+    }
 }
@@ -12,8 +12,6 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class RecipeMethodDispatcher {
 
-    private static RecipeMethodDispatcher INSTANCE;
-
     /**
      * The map of event types to their handlers.
      */
@@ -26,12 +24,25 @@ public class RecipeMethodDispatcher {
         handlers = new ConcurrentHashMap<>();
     }
 
+    /**
+     * get the shared dispatcher with the default handlers. it is created on first use, thread safe.
+     *
+     * @return the dispatcher
+     */
     public static RecipeMethodDispatcher getInst() {
-        if (INSTANCE == null) {
-            INSTANCE = new RecipeMethodDispatcher();
-            addHandlers(INSTANCE);
-        }
-        return INSTANCE;
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * create a new dispatcher with the default handlers, e.g. for an installation that must not share handlers with
+     * others.
+     *
+     * @return the dispatcher
+     */
+    public static RecipeMethodDispatcher create() {
+        final RecipeMethodDispatcher dispatcher = new RecipeMethodDispatcher();
+        addHandlers(dispatcher);
+        return dispatcher;
     }
 
     /**
@@ -76,6 +87,35 @@ public class RecipeMethodDispatcher {
         handlers.put(recipeMethod, handler);
     }
 
+    /**
+     * create a copy of this dispatcher that uses another handler for the given recipeMethod. this dispatcher is not
+     * changed.
+     *
+     * @param recipeMethod recipeMethod
+     * @param handler      handler used by the copy
+     * @return the new dispatcher
+     */
+    public final RecipeMethodDispatcher withHandler(final RecipeMethod recipeMethod,
+                                                    final AbstractRecipeMethodHandler handler) {
+        final RecipeMethodDispatcher copy = new RecipeMethodDispatcher();
+        copy.handlers.putAll(handlers);
+        copy.setHandler(recipeMethod, handler);
+        return copy;
+    }
+
+    /**
+     * create a copy of this dispatcher that uses an asynchronous handler for the given recipeMethod. this dispatcher is
+     * not changed.
+     *
+     * @param recipeMethod recipeMethod
+     * @param handler      handler used by the copy
+     * @return the new dispatcher
+     */
+    public final RecipeMethodDispatcher withHandler(final RecipeMethod recipeMethod,
+                                                    final AsyncRecipeMethodHandler handler) {
+        return withHandler(recipeMethod, AbstractRecipeMethodHandler.of(handler));
+    }
+
     /**
      * get the handler for some recipeMethod.
      *
@@ -92,4 +132,14 @@ public class RecipeMethodDispatcher {
         return rmh;
     }
 
+    /**
+     * holds the shared dispatcher. the jvm initializes it once on first access.
+     */
+    private static final class Holder {
+
+        /**
+         * the shared dispatcher.
+         */
+        private static final RecipeMethodDispatcher INSTANCE = create();
+    }
 }
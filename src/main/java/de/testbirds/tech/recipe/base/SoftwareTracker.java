@@ -0,0 +1,25 @@
+package de.testbirds.tech.recipe.base;
+
+import de.testbirds.tech.recipe.report.SoftwareInstallException;
+
+/**
+ * keeps track of all softwares of one order, so that a WAIT step can wait for another software to be installed.
+ */
+public interface SoftwareTracker {
+
+    /**
+     * check whether a software is part of the order and thus will be installed at some point.
+     *
+     * @param slug slug of the software
+     * @return true if the software was ordered
+     */
+    boolean isOrdered(String slug);
+
+    /**
+     * block until the software is installed. the caller does not count as running installation while it waits.
+     *
+     * @param slug slug of an ordered software
+     * @throws SoftwareInstallException the software failed to install or it was not ordered at all
+     */
+    void awaitInstalled(String slug) throws SoftwareInstallException;
+}
@@ -1,5 +1,7 @@
 package de.testbirds.tech.recipe.base;
 
+import de.testbirds.tech.recipe.util.OutputCapture;
+
 /**
  * represents a element on the stack. contains a string, and maybe stdout + stdin (not necessary)
  */
@@ -12,12 +14,12 @@ public final class StackElement {
     /**
      * stdOut.
      */
-    private final String stdOut;
+    private final OutputCapture stdOut;
 
     /**
      * stdErr.
      */
-    private final String stdErr;
+    private final OutputCapture stdErr;
 
     /**
      * element.
@@ -40,7 +42,7 @@ public final class StackElement {
      * @param cleanUp the clean up operation
      */
     public StackElement(final String str, final CleanUpOperation cleanUp) {
-        this(str, cleanUp, null, null);
+        this(str, cleanUp, (OutputCapture) null, null);
     }
 
     /**
@@ -54,6 +56,20 @@ public final class StackElement {
     public StackElement(final String elem,
                         final CleanUpOperation cleanUp, final String stdOut,
                         final String stdErr) {
+        this(elem, cleanUp, OutputCapture.of(stdOut), OutputCapture.of(stdErr));
+    }
+
+    /**
+     * create a stack element with captured output. large output may be spilled to disk, the clean up operation has
+     * to remove it.
+     *
+     * @param elem    content of this element
+     * @param cleanUp clean up operation
+     * @param stdOut  std out, may be null
+     * @param stdErr  std err, may be null
+     */
+    public StackElement(final String elem, final CleanUpOperation cleanUp, final OutputCapture stdOut,
+                        final OutputCapture stdErr) {
         this.elem = elem;
         this.cleanUp = cleanUp;
         this.stdOut = stdOut;
@@ -61,20 +77,38 @@ public final class StackElement {
     }
 
     /**
-     * getter.
+     * getter. spilled output is read from disk.
      *
      * @return stdOut
      */
     public String getStdOut() {
-        return stdOut;
+        return stdOut == null ? null : stdOut.toString();
     }
 
     /**
-     * getter.
+     * getter. spilled output is read from disk.
      *
      * @return stdErr
      */
     public String getStdErr() {
+        return stdErr == null ? null : stdErr.toString();
+    }
+
+    /**
+     * getter.
+     *
+     * @return capture of stdOut, may be null
+     */
+    public OutputCapture getStdOutCapture() {
+        return stdOut;
+    }
+
+    /**
+     * getter.
+     *
+     * @return capture of stdErr, may be null
+     */
+    public OutputCapture getStdErrCapture() {
         return stdErr;
     }
 
@@ -110,7 +144,8 @@ public final class StackElement {
         final StringBuilder msg = new StringBuilder(30);
         msg.append(elem);
         if (stdOut != null || stdErr != null) {
-            msg.append(" [").append(stdOut).append('|').append(stdErr).append(']');
+            msg.append(" [").append(stdOut == null ? null : stdOut.getSummary()).append('|')
+                    .append(stdErr == null ? null : stdErr.getSummary()).append(']');
         }
         return msg.toString();
     }
@@ -132,9 +132,9 @@ public enum RecipeMethod {
     PKG,
 
     /**
-     * Unzip a *.zip file.
+     * Extract a .zip, .tar, .tar.gz, .tar.xz or .tar.zst file. The format is detected by the content of the file.
      * <p>
-     * input: .zip file path
+     * input: archive file path
      * </p>
      * <p>
      * output: path of extracted folder
@@ -11,7 +11,17 @@ public class SoftwareVersion {
 
     private final Arch arch;
 
+    /**
+     * the slug of the software this version belongs to. WAIT steps of other softwares refer to it. may be null.
+     */
+    private final String slug;
+
     public SoftwareVersion(String version, Arch arch, List<RecipeStep> steps, String parameter) {
+        this(null, version, arch, steps, parameter);
+    }
+
+    public SoftwareVersion(String slug, String version, Arch arch, List<RecipeStep> steps, String parameter) {
+        this.slug = slug;
         this.version = version;
         this.arch = arch;
         this.steps = steps;
@@ -33,4 +43,8 @@ public class SoftwareVersion {
     public Arch getArch() {
         return arch;
     }
+
+    public String getSlug() {
+        return slug;
+    }
 }
@@ -5,8 +5,10 @@ import de.testbirds.tech.recipe.base.CleanUpOperation;
 import de.testbirds.tech.recipe.base.Installer;
 import de.testbirds.tech.recipe.base.StackElement;
 import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import de.testbirds.tech.recipe.util.FileUtils;
 import de.testbirds.tech.recipe.util.ProcessRunner;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -16,13 +18,21 @@ public class DmgEulaHandler extends AbstractRecipeMethodHandler {
 
     @Override
     public final StackElement handle(final String parameter, final Installer exe) throws SoftwareInstallException {
-        final String cdrFile = System.getProperty("java.io.tmpdir") + "tech.cdr";
+        // hdiutil refuses to replace an existing file, so every conversion gets its own directory
+        final File cdrDirectory;
+        try {
+            cdrDirectory = exe.getContext().createTempDirectory("techcdr");
+        } catch (final IOException e) {
+            throw new SoftwareInstallException("can't create tmp directory", e);
+        }
+        final String cdrFile = new File(cdrDirectory, "tech.cdr").getPath();
         try {
             ProcessRunner.runCommand(new String[]{"hdiutil", "convert", parameter, "-format", "UDTO", "-o", cdrFile},
                     null);
         } catch (final IOException | InterruptedException e) {
+            FileUtils.deleteRecursive(cdrDirectory);
             throw new SoftwareInstallException("error while converting dmg file", e);
         }
-        return new StackElement(cdrFile, new CleanUpOperation(CleanUpOperation.Type.DELETE, cdrFile));
+        return new StackElement(cdrFile, new CleanUpOperation(CleanUpOperation.Type.DELETE, cdrDirectory.getPath()));
     }
 }
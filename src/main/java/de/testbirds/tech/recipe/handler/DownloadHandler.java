@@ -2,18 +2,33 @@ package de.testbirds.tech.recipe.handler;
 
 import de.testbirds.tech.recipe.base.AbstractRecipeMethodHandler;
 import de.testbirds.tech.recipe.base.CleanUpOperation;
+import de.testbirds.tech.recipe.base.DownloadPrefetcher;
+import de.testbirds.tech.recipe.base.ExecutionContext;
 import de.testbirds.tech.recipe.base.Installer;
 import de.testbirds.tech.recipe.base.StackElement;
 import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import de.testbirds.tech.recipe.util.ArchiveExtractor;
+import de.testbirds.tech.recipe.util.DownloadCache;
 import de.testbirds.tech.recipe.util.FileUtils;
+import de.testbirds.tech.recipe.util.ResumableDownload;
+import de.testbirds.tech.recipe.util.ThreadFactories;
 import de.testbirds.tech.recipe.util.URLBuilder;
+import org.eclipse.jetty.client.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * download handler.
@@ -25,42 +40,312 @@ public final class DownloadHandler extends AbstractRecipeMethodHandler {
      */
     private static final Logger LOG = LoggerFactory.getLogger(DownloadHandler.class);
 
+    /**
+     * maximum amount of connections used to download a single file.
+     */
+    private static final int CONNECTIONS = 4;
+
+    /**
+     * how often a download is attempted before it fails.
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * milliseconds to wait before the first retry. doubled for each further retry.
+     */
+    private static final long INITIAL_BACKOFF = 1000L;
+
+    /**
+     * maximum milliseconds to wait between two attempts.
+     */
+    private static final long MAX_BACKOFF = 30000L;
+
+    /**
+     * protocol of URLs that are read from the local file system.
+     */
+    private static final String LOCAL_PROTOCOL = "file";
+
+    /**
+     * only waits for the backoff of asynchronous downloads, the attempts themselves run on {@link #IO}.
+     */
+    private static final ScheduledExecutorService RETRIES = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactories.newThreadFactory("download-retry-%d"));
+
+    /**
+     * starts the attempts of asynchronous downloads and finishes them. asking and filling the cache blocks and hashes
+     * whole files, so this is a bounded pool and not a thread of jetty or the scheduler.
+     */
+    private static final ExecutorService IO = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            ThreadFactories.newThreadFactory("download-io-%d"));
+
     /**
      * the download will start after this timestamp.
      */
     private final long waitUntil;
 
+    /**
+     * the persistent download cache, null if downloads are not cached.
+     */
+    private final DownloadCache cache;
+
     /**
      * create a download handler.
      *
      * @param waitTill specify a timestamp. the download will wait until this timestamp is gone
      */
     public DownloadHandler(final long waitTill) {
+        this(waitTill, null);
+    }
+
+    /**
+     * create a download handler that uses a persistent cache.
+     *
+     * @param waitTill specify a timestamp. the download will wait until this timestamp is gone
+     * @param cache    the download cache, may be null
+     */
+    public DownloadHandler(final long waitTill, final DownloadCache cache) {
         this.waitUntil = waitTill;
+        this.cache = cache;
     }
 
     /**
      * create a downloader without timestamp it should wait for.
      */
     public DownloadHandler() {
-        this.waitUntil = 0;
+        this(0);
     }
 
     @Override
     public StackElement handle(final String parameter, final Installer exe) throws SoftwareInstallException {
+        return await(handleAsync(parameter, exe));
+    }
+
+    @Override
+    public CompletionStage<StackElement> handleAsync(final String parameter, final Installer exe) {
+        final DownloadPrefetcher prefetcher = exe.getDownloadPrefetcher();
+        CompletableFuture<File> download = prefetcher == null ? null : prefetcher.claim(parameter);
+        if (download == null) {
+            download = fetchAsync(parameter, exe.getContext());
+        } else {
+            LOG.debug("using prefetched download of {}", parameter);
+        }
+        final CompletableFuture<File> targetFile = download;
+        final CompletableFuture<StackElement> result = targetFile.thenApply(file -> {
+            try {
+                return createStackElement(file);
+            } catch (final SoftwareInstallException e) {
+                throw new CompletionException(e);
+            }
+        });
+        result.whenComplete((element, failure) -> {
+            if (result.isCancelled()) {
+                targetFile.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * download the file to a temporary location. the file is deleted again if the download fails.
+     *
+     * @param parameter the resolved parameter of the DOWNLOAD step
+     * @param context   the context of the installer
+     * @return the downloaded file
+     * @throws SoftwareInstallException the download failed
+     */
+    public File fetch(final String parameter, final ExecutionContext context) throws SoftwareInstallException {
+        return await(fetchAsync(parameter, context));
+    }
+
+    /**
+     * start to download the file to a temporary location. the transfer uses jetty's non-blocking api, retries are
+     * scheduled, so no thread waits for the download. the file is deleted again if the download fails or is
+     * cancelled.
+     *
+     * @param parameter the resolved parameter of the DOWNLOAD step
+     * @param context   the context of the installer
+     * @return completed with the downloaded file, exceptionally with a SoftwareInstallException if the download failed.
+     * cancelling it stops the download
+     */
+    public CompletableFuture<File> fetchAsync(final String parameter, final ExecutionContext context) {
+        final CompletableFuture<File> result = new CompletableFuture<>();
         final URL url;
+        final HttpClient client;
+        final File targetFile;
         try {
-            // FIXME: did we ever use FTP?!! (that would be highly dangerous with some firewall issues)
-            if (parameter.startsWith("http://") || parameter.startsWith("https://") || parameter.startsWith("ftp://")) {
-                url = new URL(parameter);
+            url = toURL(parameter);
+            client = getHttpClient(context);
+            targetFile = createTempFile(context, parameter.substring(parameter.lastIndexOf('/') + 1));
+        } catch (final SoftwareInstallException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        final ResumableDownload download = new ResumableDownload(url, targetFile, CONNECTIONS, client);
+        result.whenComplete((file, failure) -> {
+            if (result.isCancelled()) {
+                // the running attempt fails and discards the download
+                download.abort(failure);
+            }
+        });
+        schedule(() -> attemptAsync(url, client, download, targetFile, result, 0),
+                waitUntil - System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * make an attempt of an asynchronous download. another one is scheduled if it fails.
+     *
+     * @param url        the URL
+     * @param client     the http client
+     * @param download   the download
+     * @param targetFile the target file
+     * @param result     completed with the target file after the last attempt
+     * @param attempt    number of the attempt, starting at 0
+     */
+    private void attemptAsync(final URL url, final HttpClient client, final ResumableDownload download,
+                              final File targetFile, final CompletableFuture<File> result, final int attempt) {
+        if (result.isDone()) {
+            // cancelled while waiting for this attempt
+            discard(download, targetFile);
+            return;
+        }
+        final boolean cacheable = cache != null && !LOCAL_PROTOCOL.equals(url.getProtocol());
+        boolean cached = false;
+        CompletableFuture<Void> transfer;
+        try {
+            cached = attempt == 0 && cacheable && cache.lookup(client, url, targetFile);
+            if (cached) {
+                transfer = CompletableFuture.completedFuture(null);
+            } else {
+                LOG.debug("Starting download of {}", url);
+                transfer = download.attemptAsync();
+            }
+        } catch (final IOException e) {
+            transfer = new CompletableFuture<>();
+            transfer.completeExceptionally(e);
+        }
+        final boolean store = cacheable && !cached;
+        // continue on the io pool, so the cache and the file system are not used by jetty's threads
+        transfer.whenCompleteAsync((ignored, failure) -> {
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause == null) {
+                try {
+                    if (store) {
+                        cache.store(url, targetFile, download.getETag(), download.getLastModified());
+                    }
+                    // for Mac and Linux
+                    targetFile.setExecutable(true);
+                    if (!result.complete(targetFile)) {
+                        discard(download, targetFile);
+                    }
+                    return;
+                } catch (final IOException e) {
+                    cause = e;
+                }
+            }
+            LOG.warn("Exception during download", cause);
+            if (attempt >= MAX_ATTEMPTS - 1 || result.isDone()) {
+                discard(download, targetFile);
+                result.completeExceptionally(new SoftwareInstallException("exception during download of " + url,
+                        cause));
+                return;
+            }
+            final long backoff = Math.max(Math.min(MAX_BACKOFF, INITIAL_BACKOFF << attempt),
+                    waitUntil - System.currentTimeMillis());
+            LOG.debug("continuing download of {} in {}ms", url, backoff);
+            schedule(() -> attemptAsync(url, client, download, targetFile, result, attempt + 1), backoff);
+        }, IO);
+    }
+
+    /**
+     * run an attempt of an asynchronous download on the io pool.
+     *
+     * @param attempt the attempt
+     * @param delay   milliseconds to wait before, not positive to start right away
+     */
+    private static void schedule(final Runnable attempt, final long delay) {
+        if (delay <= 0) {
+            IO.execute(attempt);
+        } else {
+            RETRIES.schedule(() -> IO.execute(attempt), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * download an archive and extract it while it is transferred. the archive is not written to disk, a failed
+     * attempt extracts everything again.
+     *
+     * @param parameter the resolved parameter of the DOWNLOAD step
+     * @param targetDir the directory the archive is extracted to
+     * @param context   the context of the installer
+     * @return the stack element of the DOWNLOAD step. its file exists, but it is empty
+     * @throws SoftwareInstallException the download or the extraction failed
+     */
+    public StackElement fetchExtracted(final String parameter, final File targetDir, final ExecutionContext context)
+            throws SoftwareInstallException {
+        final URL url = toURL(parameter);
+        final HttpClient client = getHttpClient(context);
+        final File targetFile = createTempFile(context, parameter.substring(parameter.lastIndexOf('/') + 1));
+        retry(url, attempt -> {
+            if (attempt > 0 && FileUtils.deleteRecursive(targetDir)) {
+                LOG.debug("removed partially extracted {}", targetDir);
+            }
+            LOG.debug("Starting streamed extraction of {}", url);
+            final InputStream archive;
+            if (LOCAL_PROTOCOL.equals(url.getProtocol())) {
+                archive = url.openStream();
             } else {
-                url = URLBuilder.getInst().buildSoftwareDownload(parameter);
+                archive = FileUtils.download(client, url);
+            }
+            UnzipHandler.extract(context, errorLog -> ArchiveExtractor.extract(archive, targetDir.getPath(), errorLog));
+        }, () -> {
+            if (!targetFile.delete()) {
+                LOG.warn("can't delete {}", targetFile);
+            }
+        });
+        return createStackElement(targetFile);
+    }
+
+    /**
+     * getter.
+     *
+     * @return true if downloads go through the persistent cache
+     */
+    public boolean isCached() {
+        return cache != null;
+    }
+
+    /**
+     * build the URL of a DOWNLOAD parameter.
+     *
+     * @param parameter the resolved parameter of the DOWNLOAD step
+     * @return the URL
+     * @throws SoftwareInstallException the parameter is no valid URL
+     */
+    private static URL toURL(final String parameter) throws SoftwareInstallException {
+        try {
+            // FIXME: did we ever use FTP?!! (that would be highly dangerous with some firewall issues)
+            if (parameter.startsWith("http://") || parameter.startsWith("https://") || parameter.startsWith("ftp://")
+                    || parameter.startsWith("file:")) {
+                return new URL(parameter);
             }
+            return URLBuilder.getInst().buildSoftwareDownload(parameter);
         } catch (final MalformedURLException e) {
             throw new SoftwareInstallException("Download URL " + parameter + " cannot be handled.", e);
         }
+    }
 
-        final File targetFile = createTempFile("tech", parameter.substring(parameter.lastIndexOf('/') + 1));
+    /**
+     * run attempts of a download with exponential backoff until one succeeds.
+     *
+     * @param url       the URL, for logging
+     * @param download  a single attempt
+     * @param onFailure called if no further attempt is made
+     * @throws SoftwareInstallException all attempts failed or the thread was interrupted
+     */
+    private void retry(final URL url, final Attempt download, final Runnable onFailure)
+            throws SoftwareInstallException {
         for (int i = 0; true; i++) {
             try {
                 final long timeToWait = waitUntil - System.currentTimeMillis();
@@ -68,21 +353,40 @@ public final class DownloadHandler extends AbstractRecipeMethodHandler {
                     LOG.debug("waiting {}ms until starting download", timeToWait);
                     Thread.sleep(timeToWait);
                 }
-                LOG.debug("Starting download of {}", url);
-                FileUtils.writeInputStreamToFile(FileUtils.download(url), targetFile);
-                break;
+                download.run(i);
+                return;
             } catch (final IOException | InterruptedException e) {
                 LOG.warn("Exception during download", e);
-                if (i >= 2) {
+                // a cancelled prefetch must not be retried
+                if (i >= MAX_ATTEMPTS - 1 || Thread.currentThread().isInterrupted()
+                        || e instanceof InterruptedException) {
+                    onFailure.run();
                     throw new SoftwareInstallException("exception during download of " + url, e);
                 }
             }
+            try {
+                final long backoff = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << i);
+                LOG.debug("continuing download of {} in {}ms", url, backoff);
+                Thread.sleep(backoff);
+            } catch (final InterruptedException e) {
+                onFailure.run();
+                Thread.currentThread().interrupt();
+                throw new SoftwareInstallException("interrupted while downloading " + url, e);
+            }
         }
+    }
 
-        // for Mac and Linux
-        targetFile.setExecutable(true);
-
-        return createStackElement(targetFile);
+    /**
+     * delete everything of a failed download.
+     *
+     * @param download   the download
+     * @param targetFile the target file
+     */
+    private void discard(final ResumableDownload download, final File targetFile) {
+        download.discard();
+        if (!targetFile.delete()) {
+            LOG.warn("can't delete failed download {}", targetFile);
+        }
     }
 
     /**
@@ -103,18 +407,49 @@ public final class DownloadHandler extends AbstractRecipeMethodHandler {
     }
 
     /**
-     * creates a temp file.
+     * creates a temp file in the temp directory of the context.
      *
-     * @param prefix prefix
-     * @param suffix suffix
+     * @param context the context of the installer
+     * @param suffix  suffix
      * @return location of temp file
      * @throws SoftwareInstallException creating file went wrong
      */
-    private File createTempFile(final String prefix, final String suffix) throws SoftwareInstallException {
+    private static File createTempFile(final ExecutionContext context, final String suffix)
+            throws SoftwareInstallException {
         try {
-            return File.createTempFile(prefix, suffix);
-        } catch (final IOException e) {
+            return context.createTempFile("tech", suffix);
+        } catch (final IOException | IllegalArgumentException e) {
             throw new SoftwareInstallException("can't create tmp file", e);
         }
     }
+
+    /**
+     * get the http client of the context.
+     *
+     * @param context the context of the installer
+     * @return the client
+     * @throws SoftwareInstallException the client can't be started
+     */
+    private static HttpClient getHttpClient(final ExecutionContext context) throws SoftwareInstallException {
+        try {
+            return context.getHttpClient();
+        } catch (final IOException e) {
+            throw new SoftwareInstallException("can't start http client", e);
+        }
+    }
+
+    /**
+     * a single attempt of a download.
+     */
+    @FunctionalInterface
+    private interface Attempt {
+
+        /**
+         * try to download.
+         *
+         * @param attempt number of the attempt, starting at 0
+         * @throws IOException the attempt failed, another one may be made
+         */
+        void run(int attempt) throws IOException;
+    }
 }
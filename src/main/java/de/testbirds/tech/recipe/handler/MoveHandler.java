@@ -5,6 +5,7 @@ import de.testbirds.tech.recipe.base.AbstractRecipeMethodHandler;
 import de.testbirds.tech.recipe.base.Installer;
 import de.testbirds.tech.recipe.base.StackElement;
 import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import de.testbirds.tech.recipe.util.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,7 +13,7 @@ import java.io.File;
 import java.io.IOException;
 
 /**
- * handle MOVE.
+ * handle MOVE. a move on the same file system is a rename, other moves copy the files in parallel.
  */
 public class MoveHandler extends AbstractRecipeMethodHandler {
 
@@ -33,7 +34,7 @@ public class MoveHandler extends AbstractRecipeMethodHandler {
                 target = new File(target, source.getName());
             }
 
-            Files.move(source, target);
+            FileUtils.move(source, target);
             LOGGER.debug("finished moving file/folder");
         } catch (final IOException e) {
             throw new SoftwareInstallException("problem while moving files", e);
@@ -1,41 +1,100 @@
 package de.testbirds.tech.recipe.handler;
 
 import de.testbirds.tech.recipe.base.AbstractRecipeMethodHandler;
+import de.testbirds.tech.recipe.base.CleanUpOperation;
 import de.testbirds.tech.recipe.base.Installer;
 import de.testbirds.tech.recipe.base.StackElement;
 import de.testbirds.tech.recipe.entity.OSFamily;
+import de.testbirds.tech.recipe.report.OutputBatcher;
 import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import de.testbirds.tech.recipe.report.StreamingReporter;
+import de.testbirds.tech.recipe.util.FileUtils;
+import de.testbirds.tech.recipe.util.OutputCapture;
 import de.testbirds.tech.recipe.util.ProcessRunner;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
 
 /**
  * handle the RUN recipe method.
  */
 public class RunHandler extends AbstractRecipeMethodHandler {
 
+    /**
+     * the maximum run time of a command in milliseconds.
+     */
+    private final long timeout;
+
+    /**
+     * the amount of characters of STD_OUT and STD_ERR that are kept in memory. the rest is spilled to disk.
+     */
+    private final int memoryLimit;
+
     /**
      * create a new run handler.
      */
     public RunHandler() {
+        this(ProcessRunner.NO_TIMEOUT);
+    }
+
+    /**
+     * create a run handler that kills commands which run too long. commands in a shell session are not limited.
+     *
+     * @param timeout the maximum run time of a command in milliseconds or {@link ProcessRunner#NO_TIMEOUT}
+     */
+    public RunHandler(final long timeout) {
+        this(timeout, OutputCapture.DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * create a run handler with a limit for the output kept in memory.
+     *
+     * @param timeout     the maximum run time of a command in milliseconds or {@link ProcessRunner#NO_TIMEOUT}
+     * @param memoryLimit the amount of characters of STD_OUT and STD_ERR each that are kept in memory
+     */
+    public RunHandler(final long timeout, final int memoryLimit) {
+        this.timeout = timeout;
+        this.memoryLimit = memoryLimit;
     }
 
     @Override
     public final StackElement handle(final String parameter, final Installer exe) throws SoftwareInstallException {
-        final String[] output = new String[2];
+        // large output is spilled into this directory, it is deleted on POP
+        final Path spillDirectory = exe.getContext().getTempDirectory().toPath().resolve("techout" + UUID.randomUUID());
+        final OutputCapture stdOut = new OutputCapture(memoryLimit, spillDirectory);
+        final OutputCapture stdErr = new OutputCapture(memoryLimit, spillDirectory);
+        // a streaming reporter gets the output while the command is running
+        OutputBatcher batcher = null;
+        if (exe.getReporter() instanceof StreamingReporter) {
+            batcher = new OutputBatcher((StreamingReporter) exe.getReporter(), exe.getCurrentStep());
+            stdOut.setListener(batcher.getStdOut());
+            stdErr.setListener(batcher.getStdErr());
+        }
         final int exitCode;
         try {
             // the desktop case. if you want another behavior, set another handler
             final String[] script = new String[]{parameter};
-            if (exe.getStartup().determineOSFamily() == OSFamily.WIN) {
-                exitCode = ProcessRunner.runBatchScript(script, output);
+            if (exe.getShellSession() != null) {
+                exitCode = exe.getShellSession().run(script, stdOut, stdErr);
+            } else if (exe.getStartup().determineOSFamily() == OSFamily.WIN) {
+                exitCode = ProcessRunner.runBatchScript(script, stdOut, stdErr, timeout);
             } else {
-                exitCode = ProcessRunner.runBashScript(script, output);
+                exitCode = ProcessRunner.runBashScript(script, stdOut, stdErr, timeout);
             }
-        } catch (final IOException | InterruptedException e) {
+        } catch (final IOException | InterruptedException | UncheckedIOException e) {
+            FileUtils.deleteRecursive(spillDirectory.toFile());
             throw new SoftwareInstallException("error executing the command", e);
+        } finally {
+            if (batcher != null) {
+                batcher.close();
+            }
         }
 
-        return new StackElement(Integer.toString(exitCode), null, output[0], output[1]);
+        final CleanUpOperation cleanUp = Files.exists(spillDirectory)
+                ? new CleanUpOperation(CleanUpOperation.Type.DELETE, spillDirectory.toString()) : null;
+        return new StackElement(Integer.toString(exitCode), cleanUp, stdOut, stdErr);
     }
 }
@@ -2,10 +2,11 @@ package de.testbirds.tech.recipe.handler;
 
 import de.testbirds.tech.recipe.base.AbstractRecipeMethodHandler;
 import de.testbirds.tech.recipe.base.CleanUpOperation;
+import de.testbirds.tech.recipe.base.ExecutionContext;
 import de.testbirds.tech.recipe.base.Installer;
 import de.testbirds.tech.recipe.base.StackElement;
 import de.testbirds.tech.recipe.report.SoftwareInstallException;
-import de.testbirds.tech.recipe.util.FileUtils;
+import de.testbirds.tech.recipe.util.ArchiveExtractor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,7 +14,7 @@ import java.io.File;
 import java.io.IOException;
 
 /**
- * handles the UNZIP Recipe Method.
+ * handles the UNZIP Recipe Method. zip and tar archives are supported, see {@link ArchiveExtractor}.
  */
 public class UnzipHandler extends AbstractRecipeMethodHandler {
 
@@ -22,30 +23,79 @@ public class UnzipHandler extends AbstractRecipeMethodHandler {
      */
     private static final Logger LOG = LoggerFactory.getLogger(UnzipHandler.class);
 
+    /**
+     * an extraction whose command line tools write their errors to a file.
+     */
+    @FunctionalInterface
+    public interface Extraction {
+        /**
+         * extract the archive.
+         *
+         * @param errorLog the file the errors are written to
+         * @throws IOException the extraction failed
+         */
+        void extract(File errorLog) throws IOException;
+    }
+
     @Override
     public final StackElement handle(final String parameter, final Installer exe) throws SoftwareInstallException {
-        // create a tmp folder
-        final File targetDir;
+        final File targetDir = createTargetDirectory(exe.getContext());
         try {
-            targetDir = File.createTempFile("techzip", "");
+            extract(exe.getContext(), errorLog -> ArchiveExtractor.extract(new File(parameter), targetDir.getPath(),
+                    errorLog));
+            return createStackElement(targetDir);
         } catch (final IOException e) {
-            throw new SoftwareInstallException("can't create tmp file", e);
-        }
-        // not sure why this was necessary?
-        if (!targetDir.delete()) {
-            LOG.error("Couldn't delete file before unzipping");
-        }
-        if (!targetDir.mkdirs()) {
-            LOG.error("Couldn't create file before unzipping");
+            throw new SoftwareInstallException("exception while unzipping", e);
         }
+
+    }
+
+    /**
+     * run an extraction. its error log is a temporary file of the context that is journaled until it is deleted, so it
+     * does not stay behind after a crash.
+     *
+     * @param context    the context of the installer
+     * @param extraction the extraction
+     * @throws IOException the extraction failed or the error log can't be created
+     */
+    public static void extract(final ExecutionContext context, final Extraction extraction) throws IOException {
+        final File errorLog = context.createTempFile("tech", ".err");
+        final CleanUpOperation cleanUp = new CleanUpOperation(CleanUpOperation.Type.DELETE, errorLog.getPath());
+        context.getCleanUpJournal().record(cleanUp);
         try {
-            final String dirName = targetDir.getCanonicalPath();
-            FileUtils.unzip(new File(parameter), dirName);
+            extraction.extract(errorLog);
+        } finally {
+            if (errorLog.delete() || !errorLog.exists()) {
+                context.getCleanUpJournal().complete(cleanUp);
+            } else {
+                LOG.warn("can't delete {}", errorLog);
+            }
+        }
+    }
 
-            return new StackElement(dirName, new CleanUpOperation(CleanUpOperation.Type.DELETE, dirName));
+    /**
+     * create an empty temporary directory the archive is extracted to.
+     *
+     * @param context the context of the installer
+     * @return the directory
+     * @throws SoftwareInstallException the directory can't be created
+     */
+    public final File createTargetDirectory(final ExecutionContext context) throws SoftwareInstallException {
+        try {
+            return context.createTempDirectory("techzip").getCanonicalFile();
         } catch (final IOException e) {
-            throw new SoftwareInstallException("exception while unzipping", e);
+            throw new SoftwareInstallException("can't create tmp directory", e);
         }
+    }
 
+    /**
+     * creates the stack element for the directory the archive was extracted to.
+     *
+     * @param targetDir the directory
+     * @return stack element, the directory is deleted on POP
+     */
+    public final StackElement createStackElement(final File targetDir) {
+        final String dirName = targetDir.getPath();
+        return new StackElement(dirName, new CleanUpOperation(CleanUpOperation.Type.DELETE, dirName));
     }
 }
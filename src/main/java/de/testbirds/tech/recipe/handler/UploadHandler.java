@@ -4,21 +4,21 @@ import de.testbirds.tech.recipe.base.AbstractRecipeMethodHandler;
 import de.testbirds.tech.recipe.base.Installer;
 import de.testbirds.tech.recipe.base.StackElement;
 import de.testbirds.tech.recipe.report.SoftwareInstallException;
-import de.testbirds.tech.recipe.util.FileUtils;
 import de.testbirds.tech.recipe.util.URLBuilder;
-import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.client.util.MultiPartContentProvider;
 import org.eclipse.jetty.client.util.PathContentProvider;
 import org.eclipse.jetty.http.HttpMethod;
 
 import java.io.IOException;
 import java.nio.file.Paths;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
- * The upload handler.
+ * The upload handler. The file is sent with Jetty's non-blocking API, no thread waits for the upload.
  *
  * @author testbirds
  */
@@ -26,19 +26,41 @@ public final class UploadHandler extends AbstractRecipeMethodHandler {
 
     @Override
     public StackElement handle(final String parameter, final Installer exe) throws SoftwareInstallException {
+        return await(handleAsync(parameter, exe));
+    }
+
+    @Override
+    public CompletionStage<StackElement> handleAsync(final String parameter, final Installer exe) {
+        final CompletableFuture<StackElement> result = new CompletableFuture<>();
+        final Request request;
         try {
             MultiPartContentProvider multiPart = new MultiPartContentProvider();
             multiPart.addFilePart("icon", "img.png", new PathContentProvider(Paths.get(parameter)), null);
             multiPart.close();
 
-            final Request request = FileUtils.getJettyClient().newRequest(
+            request = exe.getContext().getHttpClient().newRequest(
                     URLBuilder.getInst().buildLocalVMHost("/file/upload/" + exe.getStartup().getUUID()).toString())
                     .method(HttpMethod.POST).content(multiPart);
-            final ContentResponse response = request.send();
-
-            return new StackElement(response.getContentAsString());
-        } catch (final IOException | InterruptedException | TimeoutException | ExecutionException e) {
-            throw new SoftwareInstallException("Cannot upload file", e);
+        } catch (final IOException e) {
+            result.completeExceptionally(new SoftwareInstallException("Cannot upload file", e));
+            return result;
         }
+        result.whenComplete((element, failure) -> {
+            if (result.isCancelled()) {
+                request.abort(failure);
+            }
+        });
+        request.send(new BufferingResponseListener() {
+            @Override
+            public void onComplete(final Result exchange) {
+                if (exchange.isFailed()) {
+                    result.completeExceptionally(new SoftwareInstallException("Cannot upload file",
+                            exchange.getFailure()));
+                } else {
+                    result.complete(new StackElement(getContentAsString()));
+                }
+            }
+        });
+        return result;
     }
 }
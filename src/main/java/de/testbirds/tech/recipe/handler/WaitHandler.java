@@ -0,0 +1,51 @@
+package de.testbirds.tech.recipe.handler;
+
+import de.testbirds.tech.recipe.base.AbstractRecipeMethodHandler;
+import de.testbirds.tech.recipe.base.Installer;
+import de.testbirds.tech.recipe.base.SoftwareTracker;
+import de.testbirds.tech.recipe.base.StackElement;
+import de.testbirds.tech.recipe.report.InvalidRecipeException;
+import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * handle WAIT. only available if the software is installed as part of a whole order.
+ */
+public final class WaitHandler extends AbstractRecipeMethodHandler {
+
+    /**
+     * the logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(WaitHandler.class);
+
+    /**
+     * knows about the other softwares of the order.
+     */
+    private final SoftwareTracker tracker;
+
+    /**
+     * create a wait handler.
+     *
+     * @param tracker the tracker of the order the software belongs to
+     */
+    public WaitHandler(final SoftwareTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @Override
+    public StackElement handle(final String parameter, final Installer exe) throws SoftwareInstallException {
+        if (parameter.equals(exe.getSoftware().getSlug())) {
+            throw new InvalidRecipeException("software " + parameter + " can't wait for itself");
+        }
+        if (!tracker.isOrdered(parameter)) {
+            // the software will never be installed, so all steps deeper than this WAIT are skipped
+            LOG.info("{} was not ordered, skipping the steps that wait for it", parameter);
+            exe.getChildren();
+            return new StackElement("0");
+        }
+        LOG.debug("waiting until {} is installed", parameter);
+        tracker.awaitInstalled(parameter);
+        return new StackElement("1");
+    }
+}
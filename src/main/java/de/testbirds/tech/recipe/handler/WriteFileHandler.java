@@ -18,7 +18,7 @@ public class WriteFileHandler extends AbstractRecipeMethodHandler {
     @Override
     public final StackElement handle(final String parameter, final Installer exe) throws SoftwareInstallException {
         try {
-            final File target = File.createTempFile("techw", "");
+            final File target = exe.getContext().createTempFile("techw", "");
             FileUtils.writeStringToFile(parameter, target);
             target.setExecutable(true);
             return new StackElement(target.getCanonicalPath(),
@@ -0,0 +1,230 @@
+package de.testbirds.tech.recipe.report;
+
+import de.testbirds.tech.recipe.entity.RecipeStep;
+import de.testbirds.tech.recipe.util.ThreadFactories;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * collects the output of a running step and forwards it in batches to a {@link StreamingReporter}. a shared timer
+ * hands the deliveries to a shared pool, each batcher has at most one delivery there at a time. so a slow reporter
+ * never blocks the threads reading the output of the process, and it only delays its own batcher, not the others. if
+ * more output is pending than allowed, the oldest pending output is dropped.
+ */
+public final class OutputBatcher implements Closeable {
+
+    /**
+     * the logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutputBatcher.class);
+
+    /**
+     * default milliseconds between two batches.
+     */
+    private static final long DEFAULT_INTERVAL = 500L;
+
+    /**
+     * default maximum amount of pending characters per stream.
+     */
+    private static final int DEFAULT_MAX_PENDING = 65536;
+
+    /**
+     * triggers the deliveries of all steps, it never calls a reporter.
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactories.newThreadFactory("output-timer-%d"));
+
+    /**
+     * delivers the batches, at most one thread per batcher.
+     */
+    private static final ExecutorService DELIVERY = Executors.newCachedThreadPool(
+            ThreadFactories.newThreadFactory("output-reporter-%d"));
+
+    /**
+     * the reporter.
+     */
+    private final StreamingReporter reporter;
+
+    /**
+     * the running step.
+     */
+    private final RecipeStep step;
+
+    /**
+     * maximum amount of pending characters per stream.
+     */
+    private final int maxPending;
+
+    /**
+     * pending std out.
+     */
+    private final Batch stdOut = new Batch(false);
+
+    /**
+     * pending std err.
+     */
+    private final Batch stdErr = new Batch(true);
+
+    /**
+     * true while a delivery of this batcher is queued or running.
+     */
+    private final AtomicBoolean delivering = new AtomicBoolean();
+
+    /**
+     * the scheduled trigger of the deliveries.
+     */
+    private final ScheduledFuture<?> delivery;
+
+    /**
+     * start forwarding the output of a step.
+     *
+     * @param reporter the reporter
+     * @param step     the running step
+     */
+    public OutputBatcher(final StreamingReporter reporter, final RecipeStep step) {
+        this(reporter, step, DEFAULT_INTERVAL, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * start forwarding the output of a step.
+     *
+     * @param reporter   the reporter
+     * @param step       the running step
+     * @param interval   milliseconds between two batches
+     * @param maxPending maximum amount of pending characters per stream
+     */
+    public OutputBatcher(final StreamingReporter reporter, final RecipeStep step, final long interval,
+                         final int maxPending) {
+        this.reporter = reporter;
+        this.step = step;
+        this.maxPending = maxPending;
+        this.delivery = TIMER.scheduleWithFixedDelay(this::trigger, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * getter.
+     *
+     * @return receives std out, never blocks
+     */
+    public Consumer<CharSequence> getStdOut() {
+        return stdOut::add;
+    }
+
+    /**
+     * getter.
+     *
+     * @return receives std err, never blocks
+     */
+    public Consumer<CharSequence> getStdErr() {
+        return stdErr::add;
+    }
+
+    /**
+     * hand a delivery to the pool, unless the previous one is still queued or running. its output stays pending then.
+     */
+    private void trigger() {
+        if (delivering.compareAndSet(false, true)) {
+            DELIVERY.execute(() -> {
+                try {
+                    deliver();
+                } finally {
+                    delivering.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * deliver the pending output of both streams. synchronized, so the output is delivered in order and close waits
+     * for a running delivery.
+     */
+    private synchronized void deliver() {
+        stdOut.deliver();
+        stdErr.deliver();
+    }
+
+    /**
+     * stop the scheduled delivery and deliver the remaining output.
+     */
+    @Override
+    public void close() {
+        delivery.cancel(false);
+        deliver();
+    }
+
+    /**
+     * pending output of a stream.
+     */
+    private final class Batch {
+
+        /**
+         * true for std err.
+         */
+        private final boolean isStdErr;
+
+        /**
+         * the pending output.
+         */
+        private StringBuilder pending = new StringBuilder();
+
+        /**
+         * amount of characters dropped since the last delivery.
+         */
+        private long dropped;
+
+        /**
+         * constructor.
+         *
+         * @param isStdErr true for std err
+         */
+        Batch(final boolean isStdErr) {
+            this.isStdErr = isStdErr;
+        }
+
+        /**
+         * add output.
+         *
+         * @param output the output
+         */
+        synchronized void add(final CharSequence output) {
+            pending.append(output);
+            if (pending.length() > maxPending) {
+                final int overflow = pending.length() - maxPending;
+                pending.delete(0, overflow);
+                dropped += overflow;
+            }
+        }
+
+        /**
+         * deliver the pending output, if there is any.
+         */
+        void deliver() {
+            final StringBuilder output;
+            synchronized (this) {
+                if (pending.length() == 0) {
+                    return;
+                }
+                output = pending;
+                if (dropped > 0) {
+                    output.insert(0, "[... " + dropped + " characters dropped ...]\n");
+                    dropped = 0;
+                }
+                pending = new StringBuilder();
+            }
+            try {
+                reporter.reportOutput(step, isStdErr, output.toString());
+            } catch (final RuntimeException e) {
+                LOGGER.warn("reporting output of {} failed", step, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package de.testbirds.tech.recipe.report;
+
+import de.testbirds.tech.recipe.entity.RecipeStep;
+
+/**
+ * a reporter that also gets the output of commands while they are running, e.g. to detect hanging installers early.
+ */
+public interface StreamingReporter extends Reporter {
+
+    /**
+     * report output of a running step. output is collected and reported in batches from a separate thread. if the
+     * reporter can't keep up, older output of the batch is dropped instead of blocking the command.
+     *
+     * @param step   the running step
+     * @param stdErr true if the output was written to std err, false for std out
+     * @param output the output since the last report of this stream
+     */
+    void reportOutput(RecipeStep step, boolean stdErr, String output);
+}
@@ -0,0 +1,617 @@
+package de.testbirds.tech.recipe.util;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Extracts zip and tar archives. The format is detected by the first bytes of the archive, tar archives may be
+ * compressed with gzip, xz or zstd. Tar entries are written to disk while the archive is read, it is never held in
+ * memory. Everything is decompressed in process; the command line tools are a fast path where they are installed: xz
+ * decompresses independent blocks on all cores and pigz decompresses gzip in a thread of its own. zstd is decompressed
+ * by the native library of zstd-jni, the zstd tool is only used if that library can't be loaded on this platform.
+ *
+ * @author testbirds
+ */
+public final class ArchiveExtractor {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveExtractor.class);
+
+    /**
+     * The size of a tar block in bytes.
+     */
+    private static final int TAR_BLOCK = 512;
+
+    /**
+     * The size in bytes of the buffers used for decompression.
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * The permission bits of a unix mode.
+     */
+    private static final int UNIX_PERMISSION_BITS = 0777;
+
+    /**
+     * Offset of the magic of a ustar header.
+     */
+    private static final int USTAR_MAGIC_OFFSET = 257;
+
+    /**
+     * The magic of a ustar header.
+     */
+    private static final byte[] USTAR_MAGIC = "ustar".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Supported archive formats.
+     */
+    private enum Format {
+        /**
+         * Zip archive.
+         */
+        ZIP(new byte[]{'P', 'K', 3, 4}),
+        /**
+         * Tar archive compressed with gzip.
+         */
+        GZIP(new byte[]{0x1F, (byte) 0x8B}),
+        /**
+         * Tar archive compressed with xz.
+         */
+        XZ(new byte[]{(byte) 0xFD, '7', 'z', 'X', 'Z', 0}),
+        /**
+         * Tar archive compressed with zstd.
+         */
+        ZSTD(new byte[]{0x28, (byte) 0xB5, 0x2F, (byte) 0xFD}),
+        /**
+         * Uncompressed tar archive.
+         */
+        TAR(null);
+
+        /**
+         * The first bytes of the format, null if it is not recognized by them.
+         */
+        private final byte[] magic;
+
+        /**
+         * Constructor.
+         *
+         * @param magic the first bytes of the format
+         */
+        Format(final byte[] magic) {
+            this.magic = magic;
+        }
+
+        /**
+         * Detect the format of an archive.
+         *
+         * @param head   the first bytes of the archive
+         * @param length the amount of bytes in head
+         * @return the format or null if it is unknown
+         */
+        static Format detect(final byte[] head, final int length) {
+            for (final Format format : values()) {
+                if (format.magic != null && startsWith(head, length, 0, format.magic)) {
+                    return format;
+                }
+            }
+            if (startsWith(head, length, USTAR_MAGIC_OFFSET, USTAR_MAGIC)) {
+                return TAR;
+            }
+            return null;
+        }
+
+        /**
+         * Compare bytes.
+         *
+         * @param head   the first bytes of the archive
+         * @param length the amount of bytes in head
+         * @param offset offset of the expected bytes
+         * @param bytes  the expected bytes
+         * @return true if head contains the bytes at the offset
+         */
+        private static boolean startsWith(final byte[] head, final int length, final int offset, final byte[] bytes) {
+            if (length < offset + bytes.length) {
+                return false;
+            }
+            for (int i = 0; i < bytes.length; i++) {
+                if (head[offset + i] != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Utility class.
+     */
+    private ArchiveExtractor() {
+    }
+
+    /**
+     * Extract an archive file. Zip archives are extracted in parallel.
+     *
+     * @param archive         the archive
+     * @param targetDirectory the target directory, created if it does not exist
+     * @param errorLog        an existing file the errors of command line tools are written to, it is overwritten and
+     *                        not deleted
+     * @throws IOException If an I/O error occurs, the format is not supported or an entry would be extracted outside
+     *                     of the target directory
+     */
+    public static void extract(final File archive, final String targetDirectory, final File errorLog)
+            throws IOException {
+        final byte[] head = new byte[TAR_BLOCK];
+        final int length;
+        try (InputStream input = Files.newInputStream(archive.toPath())) {
+            length = ByteStreams.read(input, head, 0, head.length);
+        }
+        if (Format.detect(head, length) == Format.ZIP) {
+            FileUtils.unzip(archive, targetDirectory);
+        } else {
+            extract(Files.newInputStream(archive.toPath()), targetDirectory, errorLog);
+        }
+    }
+
+    /**
+     * Extract an archive while it is read from a stream, e.g. while it is downloaded.
+     *
+     * @param input           the archive (will be closed)
+     * @param targetDirectory the target directory, created if it does not exist
+     * @param errorLog        an existing file the errors of command line tools are written to, it is overwritten and
+     *                        not deleted
+     * @throws IOException If an I/O error occurs, the format is not supported or an entry would be extracted outside
+     *                     of the target directory
+     */
+    public static void extract(final InputStream input, final String targetDirectory, final File errorLog)
+            throws IOException {
+        final Path target = Files.createDirectories(Paths.get(targetDirectory)).toAbsolutePath().normalize();
+        try (BufferedInputStream in = new BufferedInputStream(input, BUFFER_SIZE)) {
+            final byte[] head = new byte[TAR_BLOCK];
+            in.mark(head.length);
+            final Format format = Format.detect(head, ByteStreams.read(in, head, 0, head.length));
+            in.reset();
+            if (format == null) {
+                throw new IOException("Unsupported archive format");
+            }
+            LOG.debug("extracting {} archive to {}", format, target);
+            switch (format) {
+                case ZIP:
+                    FileUtils.unzip(in, targetDirectory);
+                    break;
+                case TAR:
+                    untar(in, target);
+                    break;
+                case GZIP:
+                    if (isInstalled("pigz")) {
+                        untar(Arrays.asList("pigz", "-dc"), in, target, errorLog);
+                    } else {
+                        untar(new GZIPInputStream(in, BUFFER_SIZE), target);
+                    }
+                    break;
+                case XZ:
+                    if (isInstalled("xz")) {
+                        // -T0 decompresses independent blocks on all cores
+                        untar(Arrays.asList("xz", "-dc", "-T0"), in, target, errorLog);
+                    } else {
+                        untar(new XZInputStream(in), target);
+                    }
+                    break;
+                default:
+                    untarZstd(in, target, errorLog);
+            }
+        }
+    }
+
+    /**
+     * Extract a tar archive compressed with zstd.
+     *
+     * @param in       the compressed archive
+     * @param target   the target directory
+     * @param errorLog the file the errors of the zstd tool are written to
+     * @throws IOException If an I/O error occurs or zstd can't be decompressed on this platform
+     */
+    private static void untarZstd(final InputStream in, final Path target, final File errorLog) throws IOException {
+        final InputStream decompressed;
+        try {
+            // loads the native library, nothing is read yet
+            decompressed = new ZstdInputStream(in);
+        } catch (final UnsatisfiedLinkError | NoClassDefFoundError e) {
+            if (!isInstalled("zstd")) {
+                throw new IOException("zstd can't be decompressed on this platform, the zstd tool has to be installed",
+                        e);
+            }
+            LOG.debug("zstd-jni is not available, using the zstd tool", e);
+            untar(Arrays.asList("zstd", "-dc"), in, target, errorLog);
+            return;
+        }
+        untar(new BufferedInputStream(decompressed, BUFFER_SIZE), target);
+    }
+
+    /**
+     * Check if a command line tool is on the PATH.
+     *
+     * @param tool the name of the tool
+     * @return true if it is installed
+     */
+    private static boolean isInstalled(final String tool) {
+        final String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (final String dir : path.split(File.pathSeparator)) {
+            if (new File(dir, tool).canExecute() || new File(dir, tool + ".exe").canExecute()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extract a compressed tar archive, decompressed by a command line tool.
+     *
+     * @param command  the command that decompresses stdin to stdout
+     * @param input    the compressed archive
+     * @param target   the target directory
+     * @param errorLog the file the errors of the tool are written to
+     * @throws IOException If an I/O error occurs or the tool fails
+     */
+    private static void untar(final List<String> command, final InputStream input, final Path target,
+                              final File errorLog) throws IOException {
+        final Process process;
+        try {
+            process = new ProcessBuilder(command).redirectError(errorLog).start();
+        } catch (final IOException e) {
+            throw new IOException(command.get(0) + " is required to extract this archive", e);
+        }
+        final ExecutorService feeder = Executors.newSingleThreadExecutor(
+                ThreadFactories.newThreadFactory("archive-feeder-%d"));
+        try {
+            final Future<?> fed = feeder.submit(() -> {
+                try (OutputStream stdin = process.getOutputStream()) {
+                    ByteStreams.copy(input, stdin);
+                }
+                return null;
+            });
+            try (InputStream stdout = process.getInputStream()) {
+                untar(stdout, target);
+                ByteStreams.exhaust(stdout);
+            }
+            if (process.waitFor() != 0) {
+                throw new IOException(command.get(0) + " failed: " + FileUtils.readFileToString(errorLog).trim());
+            }
+            fed.get();
+        } catch (final ExecutionException e) {
+            throw new IOException("Reading the archive failed", e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting the archive", e);
+        } finally {
+            process.destroy();
+            feeder.shutdownNow();
+        }
+    }
+
+    /**
+     * Extract an uncompressed tar archive. ustar, GNU long names and pax headers are supported. Links are created
+     * after all files are extracted, so no entry is written through a link.
+     *
+     * @param input  the archive
+     * @param target the absolute, normalized target directory
+     * @throws IOException If an I/O error occurs, the archive is corrupt or an entry would be extracted outside of the
+     *                     target directory
+     */
+    private static void untar(final InputStream input, final Path target) throws IOException {
+        final byte[] header = new byte[TAR_BLOCK];
+        final Map<Path, String> symlinks = new LinkedHashMap<>();
+        final Map<Path, Path> hardlinks = new LinkedHashMap<>();
+        final Map<Path, Integer> directoryModes = new LinkedHashMap<>();
+        final Map<Path, Long> directoryTimes = new HashMap<>();
+        String longName = null;
+        String longLink = null;
+        Map<String, String> pax = Collections.emptyMap();
+        while (true) {
+            final int read = ByteStreams.read(input, header, 0, TAR_BLOCK);
+            if (read == 0 || read == TAR_BLOCK && isZero(header)) {
+                break;
+            } else if (read < TAR_BLOCK) {
+                throw new EOFException("Archive ends inside of a header");
+            }
+            verifyChecksum(header);
+            final char type = (char) header[156];
+            final long size = pax.containsKey("size") ? Long.parseLong(pax.get("size")) : parseNumber(header, 124, 12);
+            switch (type) {
+                case 'L':
+                    longName = readString(input, size);
+                    continue;
+                case 'K':
+                    longLink = readString(input, size);
+                    continue;
+                case 'x':
+                    pax = parsePax(readString(input, size));
+                    continue;
+                case 'g':
+                    skip(input, size);
+                    continue;
+                default:
+                    break;
+            }
+
+            final String name = pax.containsKey("path") ? pax.get("path")
+                    : longName != null ? longName : getName(header);
+            final String link = pax.containsKey("linkpath") ? pax.get("linkpath")
+                    : longLink != null ? longLink : getString(header, 157, 100);
+            final long mtime = pax.containsKey("mtime") ? (long) (Double.parseDouble(pax.get("mtime")) * 1000)
+                    : parseNumber(header, 136, 12) * 1000;
+            final int mode = (int) parseNumber(header, 100, 8) & UNIX_PERMISSION_BITS;
+            longName = null;
+            longLink = null;
+            pax = Collections.emptyMap();
+
+            if (type == '5' && FileUtils.isTargetEntry(target, name)) {
+                // the target directory itself, e.g. "./"
+                continue;
+            }
+            final Path path = FileUtils.resolveEntry(target, name);
+            switch (type) {
+                case '0':
+                case '7':
+                case '\0':
+                    Files.createDirectories(path.getParent());
+                    if (Files.copy(ByteStreams.limit(input, size), path, StandardCopyOption.REPLACE_EXISTING) != size) {
+                        throw new EOFException("Archive ends inside of " + name);
+                    }
+                    skip(input, padding(size));
+                    FileUtils.setUnixMode(path, mode);
+                    Files.setLastModifiedTime(path, FileTime.fromMillis(mtime));
+                    break;
+                case '5':
+                    Files.createDirectories(path);
+                    directoryModes.put(path, mode);
+                    directoryTimes.put(path, mtime);
+                    break;
+                case '1':
+                    hardlinks.put(path, FileUtils.resolveEntry(target, link));
+                    break;
+                case '2':
+                    symlinks.put(path, link);
+                    break;
+                default:
+                    LOG.debug("skipping entry {} of type {}", name, type);
+                    skip(input, size + padding(size));
+            }
+        }
+
+        for (final Map.Entry<Path, Path> hardlink : hardlinks.entrySet()) {
+            Files.createDirectories(hardlink.getKey().getParent());
+            Files.deleteIfExists(hardlink.getKey());
+            Files.createLink(hardlink.getKey(), hardlink.getValue());
+        }
+        final Path realTarget = target.toRealPath();
+        for (final Map.Entry<Path, String> symlink : symlinks.entrySet()) {
+            createContainedDirectories(symlink.getKey().getParent(), realTarget);
+            Files.deleteIfExists(symlink.getKey());
+            Files.createSymbolicLink(symlink.getKey(), Paths.get(symlink.getValue()));
+        }
+        // directories are restored last, they may not be writable
+        for (final Map.Entry<Path, Integer> directory : directoryModes.entrySet()) {
+            FileUtils.setUnixMode(directory.getKey(), directory.getValue());
+            Files.setLastModifiedTime(directory.getKey(), FileTime.fromMillis(directoryTimes.get(directory.getKey())));
+        }
+    }
+
+    /**
+     * Create the parent directories of a link. A link created before must not redirect them outside of the target,
+     * so the nearest directory that exists is checked before anything is created.
+     *
+     * @param directory  the directory
+     * @param realTarget the real path of the target directory
+     * @throws IOException If an I/O error occurs or the directory would be outside of the target directory
+     */
+    private static void createContainedDirectories(final Path directory, final Path realTarget) throws IOException {
+        Path existing = directory;
+        while (!Files.exists(existing, LinkOption.NOFOLLOW_LINKS)) {
+            existing = existing.getParent();
+        }
+        if (!existing.toRealPath().startsWith(realTarget)) {
+            throw new IOException("Archive entry " + directory + " is outside of the target directory");
+        }
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Get the name of an entry from its header.
+     *
+     * @param header the header block
+     * @return the name, including the ustar prefix
+     */
+    private static String getName(final byte[] header) {
+        final String name = getString(header, 0, 100);
+        if (Format.startsWith(header, header.length, USTAR_MAGIC_OFFSET, USTAR_MAGIC)) {
+            final String prefix = getString(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                return prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Read a NUL terminated string of a header field.
+     *
+     * @param header the header block
+     * @param offset offset of the field
+     * @param length length of the field
+     * @return the string
+     */
+    private static String getString(final byte[] header, final int offset, final int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parse a numeric header field, either octal or base-256 for large values.
+     *
+     * @param header the header block
+     * @param offset offset of the field
+     * @param length length of the field
+     * @return the number
+     * @throws IOException the field is no number
+     */
+    private static long parseNumber(final byte[] header, final int offset, final int length) throws IOException {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7F;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xFF);
+            }
+            return value;
+        }
+        final String octal = getString(header, offset, length).trim();
+        if (octal.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(octal, 8);
+        } catch (final NumberFormatException e) {
+            throw new IOException("Corrupt tar header field " + octal, e);
+        }
+    }
+
+    /**
+     * Check the checksum of a header.
+     *
+     * @param header the header block
+     * @throws IOException the header is corrupt
+     */
+    private static void verifyChecksum(final byte[] header) throws IOException {
+        long sum = 0;
+        for (int i = 0; i < header.length; i++) {
+            // the checksum field itself counts as spaces
+            sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        }
+        if (sum != parseNumber(header, 148, 8)) {
+            throw new IOException("Corrupt tar header");
+        }
+    }
+
+    /**
+     * Check for the blocks of zeros at the end of an archive.
+     *
+     * @param block the block
+     * @return true if all bytes are 0
+     */
+    private static boolean isZero(final byte[] block) {
+        for (final byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the content of an entry as string, e.g. a long name.
+     *
+     * @param input the archive
+     * @param size  the size of the content
+     * @return the content without trailing NULs
+     * @throws IOException If an I/O error occurs
+     */
+    private static String readString(final InputStream input, final long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt tar header");
+        }
+        final byte[] content = new byte[(int) size];
+        ByteStreams.readFully(input, content);
+        skip(input, padding(size));
+        return getString(content, 0, content.length);
+    }
+
+    /**
+     * Parse the records of a pax header.
+     *
+     * @param records the records, each "length key=value\n"
+     * @return the values by key
+     * @throws IOException the header is corrupt
+     */
+    private static Map<String, String> parsePax(final String records) throws IOException {
+        final Map<String, String> values = new HashMap<>();
+        final byte[] bytes = records.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; ) {
+            int space = i;
+            while (space < bytes.length && bytes[space] != ' ') {
+                space++;
+            }
+            final int length;
+            try {
+                length = Integer.parseInt(new String(bytes, i, space - i, StandardCharsets.US_ASCII));
+            } catch (final NumberFormatException e) {
+                throw new IOException("Corrupt pax header", e);
+            }
+            if (length <= space - i || i + length > bytes.length) {
+                throw new IOException("Corrupt pax header");
+            }
+            // the length counts the whole record, including the trailing newline
+            final String record = new String(bytes, space + 1, i + length - space - 2, StandardCharsets.UTF_8);
+            final int equals = record.indexOf('=');
+            if (equals > 0) {
+                values.put(record.substring(0, equals), record.substring(equals + 1));
+            }
+            i += length;
+        }
+        return values;
+    }
+
+    /**
+     * Get the amount of bytes after the content of an entry up to the next block.
+     *
+     * @param size the size of the content
+     * @return the padding
+     */
+    private static long padding(final long size) {
+        return (TAR_BLOCK - size % TAR_BLOCK) % TAR_BLOCK;
+    }
+
+    /**
+     * Skip bytes of the archive.
+     *
+     * @param input the archive
+     * @param bytes the amount of bytes
+     * @throws IOException If an I/O error occurs or the archive ends before
+     */
+    private static void skip(final InputStream input, final long bytes) throws IOException {
+        ByteStreams.skipFully(input, bytes);
+    }
+}
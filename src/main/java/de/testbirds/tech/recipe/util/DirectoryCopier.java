@@ -0,0 +1,242 @@
+package de.testbirds.tech.recipe.util;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.CopyOption;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies a directory tree. The tree is walked once: directories are created in the order they are visited, the files
+ * are copied by a bounded pool in parallel, so many small files (e.g. an app bundle on a mounted dmg) do not wait for
+ * each other. Files are copied with {@link Files#copy(Path, Path, CopyOption...)}, which lets the JDK copy in the
+ * kernel where the platform supports it. Like before, symbolic links are followed and attributes are copied. A move
+ * to another file system uses the same walk and deletes the source while it copies.
+ *
+ * @author testbirds
+ */
+public final class DirectoryCopier {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DirectoryCopier.class);
+
+    /**
+     * Options of all copies.
+     */
+    private static final CopyOption[] COPY_OPTIONS = new CopyOption[]{StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.COPY_ATTRIBUTES};
+
+    /**
+     * Options of the copies of a move, links are moved as they are.
+     */
+    private static final CopyOption[] MOVE_OPTIONS = new CopyOption[]{StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS};
+
+    /**
+     * Copies the files, shared by all copies. Copying mostly waits for the disks, a few threads are enough to keep them
+     * busy.
+     */
+    private static final ExecutorService COPIERS = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(8, 2 * Runtime.getRuntime().availableProcessors())),
+            ThreadFactories.newThreadFactory("directory-copier-%d"));
+
+    /**
+     * Utility class which must not be instantiated.
+     */
+    private DirectoryCopier() {
+    }
+
+    /**
+     * Copy a file or directory. Existing files are overwritten, existing directories are merged, a file where a
+     * directory is copied to is deleted.
+     *
+     * @param source      the file or directory, it must exist
+     * @param destination the copy
+     * @throws IOException If a file can't be copied. Files that were copied already stay
+     */
+    public static void copy(final Path source, final Path destination) throws IOException {
+        transfer(source, destination, false);
+    }
+
+    /**
+     * Move a file or directory by copying it, e.g. to another file system. Each file is deleted as soon as it is
+     * copied, the directories when all files are moved. Symbolic links are moved, not followed. Existing files are
+     * overwritten, existing directories are merged.
+     *
+     * @param source      the file or directory, it must exist
+     * @param destination the new location
+     * @throws IOException If a file can't be moved. Files that were moved already stay at the destination
+     */
+    public static void move(final Path source, final Path destination) throws IOException {
+        transfer(source, destination, true);
+    }
+
+    /**
+     * Copy or move a file or directory.
+     *
+     * @param source      the file or directory
+     * @param destination the copy
+     * @param move        true if the source is deleted
+     * @throws IOException If a file can't be copied or deleted
+     */
+    private static void transfer(final Path source, final Path destination, final boolean move) throws IOException {
+        final CopyOption[] options = move ? MOVE_OPTIONS : COPY_OPTIONS;
+        final LinkOption[] linkOptions = move ? new LinkOption[]{LinkOption.NOFOLLOW_LINKS} : new LinkOption[0];
+        if (!Files.isDirectory(source, linkOptions)) {
+            copyFile(source, destination, move);
+            return;
+        }
+        final Set<FileVisitOption> visitOptions = move ? EnumSet.noneOf(FileVisitOption.class)
+                : EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+        final List<Path> directories = new ArrayList<>();
+        final List<Future<?>> copies = new ArrayList<>();
+        IOException walkFailure = null;
+        try {
+            Files.walkFileTree(source, visitOptions, Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                        throws IOException {
+                    directories.add(dir);
+                    final Path target = resolve(source, dir, destination);
+                    if (Files.isDirectory(target)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    Files.deleteIfExists(target);
+                    Files.copy(dir, target, options);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    final Path target = resolve(source, file, destination);
+                    copies.add(COPIERS.submit(() -> {
+                        copyFile(file, target, move);
+                        return null;
+                    }));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException exc) throws IOException {
+                    if (exc instanceof FileSystemLoopException) {
+                        LOG.warn("Not copying {} again, it links to one of its parents", file);
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw exc;
+                }
+            });
+        } catch (final IOException e) {
+            // the files that are copied already are still written, wait for them before reporting the failure
+            walkFailure = e;
+        }
+        awaitAll(copies, source, walkFailure);
+        if (move) {
+            // the deepest directories first, they are empty by now
+            for (int i = directories.size() - 1; i >= 0; i--) {
+                Files.delete(directories.get(i));
+            }
+        }
+    }
+
+    /**
+     * Copy a single file, or move it.
+     *
+     * @param source      the file
+     * @param destination the copy
+     * @param move        true if the source is deleted after it was copied
+     * @throws IOException If the file can't be copied or deleted
+     */
+    private static void copyFile(final Path source, final Path destination, final boolean move) throws IOException {
+        if (move) {
+            Files.copy(source, destination, MOVE_OPTIONS);
+            Files.delete(source);
+        } else {
+            Files.copy(source, destination, COPY_OPTIONS);
+        }
+    }
+
+    /**
+     * Get the path of a file of the source tree in the destination tree.
+     *
+     * @param source      root of the source tree
+     * @param file        the file in the source tree
+     * @param destination root of the destination tree
+     * @return the path in the destination tree
+     */
+    private static Path resolve(final Path source, final Path file, final Path destination) {
+        Path target = destination;
+        for (final Path name : source.relativize(file)) {
+            target = target.resolve(name.toString());
+        }
+        return target;
+    }
+
+    /**
+     * Wait until all files are copied. If the thread is interrupted, the copies that did not start yet are cancelled
+     * and the running ones are still waited for, so no file is written after this returns.
+     *
+     * @param copies  the copies
+     * @param source  the source, for the message
+     * @param failure the failure of the walk, the failures of the copies are suppressed by it. null if the walk
+     *                succeeded
+     * @throws IOException If the walk or a copy failed. Further failures are suppressed by it
+     */
+    private static void awaitAll(final List<Future<?>> copies, final Path source, final IOException failure)
+            throws IOException {
+        IOException first = failure;
+        for (final Future<?> copy : copies) {
+            try {
+                copy.get();
+            } catch (final ExecutionException e) {
+                final IOException cause = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                        : new IOException("Copying " + source + " failed", e.getCause());
+                if (first == null) {
+                    first = cause;
+                } else {
+                    first.addSuppressed(cause);
+                }
+            } catch (final InterruptedException e) {
+                for (final Future<?> other : copies) {
+                    other.cancel(false);
+                }
+                for (final Future<?> other : copies) {
+                    try {
+                        Uninterruptibles.getUninterruptibly(other);
+                    } catch (final ExecutionException | CancellationException ignored) {
+                        // only waiting for the running copies to finish
+                    }
+                }
+                Thread.currentThread().interrupt();
+                final IOException interrupted = new IOException("Interrupted while copying " + source, e);
+                if (first != null) {
+                    interrupted.addSuppressed(first);
+                }
+                throw interrupted;
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package de.testbirds.tech.recipe.util;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Persistent cache for downloads. The content is stored once per SHA-384 hash, an entry per URL remembers the ETag and
+ * Last-Modified header of the response, so the server is only asked whether the content changed. A miss is downloaded
+ * by the caller and stored afterwards. Content is copied into the cache and copied out again, so later steps may
+ * change their file without touching the cache. It is hashed while it is stored; a hit only hashes it again if its
+ * size or modification time changed since. The least recently used content is evicted as soon as the cache exceeds its
+ * size, the last use is tracked by a marker file per content.
+ *
+ * @author testbirds
+ */
+public final class DownloadCache {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(DownloadCache.class);
+
+    /**
+     * Entry property of the URL.
+     */
+    private static final String URL_KEY = "url";
+
+    /**
+     * Entry property of the ETag header.
+     */
+    private static final String ETAG_KEY = "etag";
+
+    /**
+     * Entry property of the Last-Modified header.
+     */
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+
+    /**
+     * Entry property of the content hash.
+     */
+    private static final String HASH_KEY = "hash";
+
+    /**
+     * Entry property of the size of the content when it was verified.
+     */
+    private static final String SIZE_KEY = "size";
+
+    /**
+     * Entry property of the modification time of the content when it was verified.
+     */
+    private static final String VERIFIED_KEY = "verified";
+
+    /**
+     * The size in bytes of the buffer used for hashing.
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Directory with the content, one file per hash.
+     */
+    private final Path objects;
+
+    /**
+     * Directory with one entry per URL.
+     */
+    private final Path entries;
+
+    /**
+     * Directory with an empty marker per content, modified whenever the content is used.
+     */
+    private final Path used;
+
+    /**
+     * The maximum size of all content in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * Create a cache in a directory (created if it does not exist).
+     *
+     * @param directory the cache directory
+     * @param maxBytes  the maximum size of the cached content in bytes
+     * @throws IOException if the directory can't be created
+     */
+    public DownloadCache(final File directory, final long maxBytes) throws IOException {
+        this.objects = Files.createDirectories(directory.toPath().resolve("objects"));
+        this.entries = Files.createDirectories(directory.toPath().resolve("entries"));
+        this.used = Files.createDirectories(directory.toPath().resolve("used"));
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Hand out the cached content of a URL if the server reports that it did not change.
+     *
+     * @param url    the URL
+     * @param target the target file, it is replaced on a hit
+     * @return true if the target contains the cached content, false if it has to be downloaded
+     * @throws IOException If an I/O exception occurs
+     */
+    public boolean lookup(final URL url, final File target) throws IOException {
+        return lookup(FileUtils.getJettyClient(), url, target);
+    }
+
+    /**
+     * Hand out the cached content of a URL if the server reports that it did not change.
+     *
+     * @param client the Jetty client that asks the server
+     * @param url    the URL
+     * @param target the target file, it is replaced on a hit
+     * @return true if the target contains the cached content, false if it has to be downloaded
+     * @throws IOException If an I/O exception occurs
+     */
+    public boolean lookup(final HttpClient client, final URL url, final File target) throws IOException {
+        final Path entryFile = getEntryFile(url);
+        final Properties entry = loadEntry(entryFile);
+        if (entry == null) {
+            return false;
+        }
+        final Map<String, String> headers = new HashMap<>();
+        if (entry.getProperty(ETAG_KEY) != null) {
+            headers.put(HttpHeader.IF_NONE_MATCH.asString(), entry.getProperty(ETAG_KEY));
+        }
+        if (entry.getProperty(LAST_MODIFIED_KEY) != null) {
+            headers.put(HttpHeader.IF_MODIFIED_SINCE.asString(), entry.getProperty(LAST_MODIFIED_KEY));
+        }
+        if (headers.isEmpty()) {
+            // the server can't tell us whether the content changed
+            return false;
+        }
+
+        final InputStreamResponseListener listener = new InputStreamResponseListener();
+        final Response response = FileUtils.request(client, url, headers, listener);
+        // the content is downloaded separately, so the transfer is aborted here
+        listener.getInputStream().close();
+        if (response.getStatus() != HttpStatus.NOT_MODIFIED_304) {
+            return false;
+        }
+        if (!handOut(entry, target)) {
+            Files.deleteIfExists(entryFile);
+            return false;
+        }
+        LOG.debug("cache hit for {}", url);
+        return true;
+    }
+
+    /**
+     * Put a downloaded file into the cache. The content is copied and hashed in a single pass, so later changes of
+     * the file don't reach the cache. The modification time of the stored content is recorded, the content is only
+     * hashed again on a hit if it changed since.
+     *
+     * @param url          the URL the file was downloaded from
+     * @param file         the downloaded file
+     * @param etag         the ETag of the response, may be null
+     * @param lastModified the Last-Modified header of the response, may be null
+     * @throws IOException If an I/O exception occurs
+     */
+    public void store(final URL url, final File file, final String etag, final String lastModified)
+            throws IOException {
+        // copied, not linked, so changes of the file by later steps don't reach the cache
+        final Path tmp = Files.createTempFile(objects, "download", ".tmp");
+        try {
+            final String hash = copyAndHash(file.toPath(), tmp);
+            final Path object = objects.resolve(hash);
+            synchronized (this) {
+                if (!Files.exists(object) || Files.size(object) != Files.size(tmp)) {
+                    Files.move(tmp, object, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                touch(hash);
+
+                final Properties entry = new Properties();
+                entry.setProperty(URL_KEY, url.toString());
+                entry.setProperty(HASH_KEY, hash);
+                entry.setProperty(SIZE_KEY, Long.toString(Files.size(object)));
+                entry.setProperty(VERIFIED_KEY, Long.toString(Files.getLastModifiedTime(object).toMillis()));
+                if (etag != null) {
+                    entry.setProperty(ETAG_KEY, etag);
+                }
+                if (lastModified != null) {
+                    entry.setProperty(LAST_MODIFIED_KEY, lastModified);
+                }
+                saveEntry(getEntryFile(url), entry);
+                evict(hash);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Get the entry file of a URL.
+     *
+     * @param url the URL
+     * @return path of the entry file, it may not exist
+     */
+    private Path getEntryFile(final URL url) {
+        return entries.resolve(Hashing.sha256().hashString(url.toString(), StandardCharsets.UTF_8) + ".properties");
+    }
+
+    /**
+     * Load the entry of a URL.
+     *
+     * @param entryFile the entry file
+     * @return the entry or null if there is none or its content is missing
+     */
+    private Properties loadEntry(final Path entryFile) {
+        try {
+            final Properties entry = FileUtils.loadPropertyFile(entryFile.toFile());
+            final String hash = entry.getProperty(HASH_KEY);
+            if (hash != null && Files.isRegularFile(objects.resolve(hash))) {
+                return entry;
+            }
+        } catch (final IOException e) {
+            LOG.debug("no cache entry {}", entryFile);
+        }
+        return null;
+    }
+
+    /**
+     * Write an entry atomically.
+     *
+     * @param entryFile the entry file
+     * @param entry     the entry
+     * @throws IOException If an I/O exception occurs
+     */
+    private void saveEntry(final Path entryFile, final Properties entry) throws IOException {
+        final Path tmp = Files.createTempFile(entries, "entry", ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            entry.store(out, null);
+        }
+        Files.move(tmp, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Copy the cached content of an entry to the target. The content is hashed again if it changed since it was
+     * verified, corrupt content is removed from the cache.
+     *
+     * @param entry  the entry
+     * @param target the target file, it is replaced
+     * @return false if the content is not in the cache (any more)
+     * @throws IOException If an I/O exception occurs
+     */
+    private boolean handOut(final Properties entry, final File target) throws IOException {
+        final String hash = entry.getProperty(HASH_KEY);
+        final Path object = objects.resolve(hash);
+        try {
+            final boolean unchanged = String.valueOf(Files.size(object)).equals(entry.getProperty(SIZE_KEY))
+                    && String.valueOf(Files.getLastModifiedTime(object).toMillis())
+                    .equals(entry.getProperty(VERIFIED_KEY));
+            if (!unchanged && !hash.equals(hash(object))) {
+                LOG.warn("cached content {} is corrupt, removing it", object);
+                Files.deleteIfExists(object);
+                return false;
+            }
+            touch(hash);
+            Files.copy(object, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final NoSuchFileException e) {
+            // evicted in the meantime
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Mark content as used now.
+     *
+     * @param hash the hash of the content
+     * @throws IOException If an I/O exception occurs
+     */
+    private void touch(final String hash) throws IOException {
+        final Path marker = used.resolve(hash);
+        try {
+            Files.createFile(marker);
+        } catch (final FileAlreadyExistsException e) {
+            Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Delete the least recently used content until the cache fits into its size.
+     *
+     * @param keep hash of the content that was just stored and must not be deleted
+     * @throws IOException If an I/O exception occurs
+     */
+    private void evict(final String keep) throws IOException {
+        final List<Path> content = new ArrayList<>();
+        long size = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(objects)) {
+            for (final Path object : stream) {
+                if (!object.getFileName().toString().endsWith(".tmp")) {
+                    content.add(object);
+                    size += Files.size(object);
+                }
+            }
+        }
+        final Map<Path, FileTime> lastUsed = new HashMap<>();
+        for (final Path object : content) {
+            final Path marker = used.resolve(object.getFileName().toString());
+            lastUsed.put(object, Files.exists(marker) ? Files.getLastModifiedTime(marker)
+                    : Files.getLastModifiedTime(object));
+        }
+        content.sort(Comparator.comparing(lastUsed::get));
+        for (final Path object : content) {
+            if (size <= maxBytes) {
+                break;
+            }
+            if (object.getFileName().toString().equals(keep)) {
+                continue;
+            }
+            size -= Files.size(object);
+            LOG.debug("evicting {} from the download cache", object);
+            Files.delete(object);
+            Files.deleteIfExists(used.resolve(object.getFileName().toString()));
+        }
+    }
+
+    /**
+     * Copy a file and hash the copied bytes.
+     *
+     * @param source the file
+     * @param target the copy, it is replaced
+     * @return the hex encoded SHA-384 hash of the copy
+     * @throws IOException If an I/O exception occurs
+     */
+    private static String copyAndHash(final Path source, final Path target) throws IOException {
+        final MessageDigest digest = newDigest();
+        try (InputStream input = Files.newInputStream(source);
+             OutputStream output = Files.newOutputStream(target)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read = input.read(buffer); read > -1; read = input.read(buffer)) {
+                digest.update(buffer, 0, read);
+                output.write(buffer, 0, read);
+            }
+        }
+        return BaseEncoding.base16().lowerCase().encode(digest.digest());
+    }
+
+    /**
+     * Hash a file.
+     *
+     * @param file the file
+     * @return the hex encoded SHA-384 hash
+     * @throws IOException If an I/O exception occurs
+     */
+    private static String hash(final Path file) throws IOException {
+        final MessageDigest digest = newDigest();
+        try (InputStream input = Files.newInputStream(file)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read = input.read(buffer); read > -1; read = input.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return BaseEncoding.base16().lowerCase().encode(digest.digest());
+    }
+
+    /**
+     * Create the digest the content is addressed with.
+     *
+     * @return a new digest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(FileUtils.SHA_384);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(FileUtils.SHA_384 + " is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package de.testbirds.tech.recipe.util;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Writes the content of a response directly from Jetty's buffers into a file channel, starting at a position. This
+ * avoids copying every chunk through an input stream and a byte array. Content is only written if the response has
+ * the expected status.
+ *
+ * @author testbirds
+ */
+public final class FileChannelResponseListener extends Response.Listener.Adapter {
+
+    /**
+     * Accept any successful status.
+     */
+    public static final int ANY_SUCCESS = 0;
+
+    /**
+     * The channel the content is written to.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The status the response must have, or {@link #ANY_SUCCESS}.
+     */
+    private final int expectedStatus;
+
+    /**
+     * Completed with the result of the exchange.
+     */
+    private final CompletableFuture<Result> result = new CompletableFuture<>();
+
+    /**
+     * True if a complete response to a resumed request replaces the content instead of being appended.
+     */
+    private final boolean resumed;
+
+    /**
+     * The headers of the response, null before they were received.
+     */
+    private volatile HttpFields headers;
+
+    /**
+     * True if the content was truncated because the response to a resumed request did not continue it.
+     */
+    private volatile boolean restarted;
+
+    /**
+     * True after the headers of the response were received.
+     */
+    private volatile boolean answered;
+
+    /**
+     * The position the next content is written to.
+     */
+    private volatile long position;
+
+    /**
+     * Create a listener.
+     *
+     * @param channel        the channel the content is written to
+     * @param position       the position of the first byte of content
+     * @param expectedStatus the status the response must have, or {@link #ANY_SUCCESS}
+     */
+    public FileChannelResponseListener(final FileChannel channel, final long position, final int expectedStatus) {
+        this(channel, position, expectedStatus, false);
+    }
+
+    /**
+     * Create a listener.
+     *
+     * @param channel        the channel the content is written to
+     * @param position       the position of the first byte of content
+     * @param expectedStatus the status the response must have, or {@link #ANY_SUCCESS}
+     * @param resumed        true if the request asks for the rest of the content from the position on
+     */
+    private FileChannelResponseListener(final FileChannel channel, final long position, final int expectedStatus,
+                                        final boolean resumed) {
+        this.channel = channel;
+        this.position = position;
+        this.expectedStatus = expectedStatus;
+        this.resumed = resumed;
+    }
+
+    /**
+     * Create a listener for a request that asks for the rest of the content from a position on, with a Range and an
+     * If-Range header. A partial response is appended at the position. A complete response, sent if the server
+     * ignores ranges or the content changed, truncates the channel and is written from the start.
+     *
+     * @param channel  the channel the content is written to
+     * @param position the position of the first requested byte
+     * @return the listener
+     */
+    public static FileChannelResponseListener resuming(final FileChannel channel, final long position) {
+        return new FileChannelResponseListener(channel, position, ANY_SUCCESS, true);
+    }
+
+    /**
+     * Send the request and wait until the whole content is written.
+     *
+     * @param request the request
+     * @return the response. if it does not have the expected status, no content was written
+     * @throws IOException If the transfer or writing the content failed
+     */
+    public Response send(final Request request) throws IOException {
+        final CompletableFuture<Response> response = sendAsync(request);
+        try {
+            return response.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Transfer of " + request.getURI() + " failed", e.getCause());
+        } catch (final InterruptedException e) {
+            request.abort(e);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while transferring " + request.getURI(), e);
+        }
+    }
+
+    /**
+     * Send the request without waiting. The content is written by Jetty's threads, no thread is blocked while the
+     * transfer is running.
+     *
+     * @param request the request
+     * @return completed with the response when the whole content is written. if it does not have the expected status,
+     * no content was written. completed exceptionally with an IOException if there was no response, or the transfer or
+     * writing the content failed
+     */
+    public CompletableFuture<Response> sendAsync(final Request request) {
+        request.send(this);
+        return result.thenApply(exchange -> {
+            if (exchange.isFailed() && (!answered || isExpected(exchange.getResponse().getStatus()))) {
+                throw new CompletionException(new IOException("Transfer of " + request.getURI() + " failed at byte "
+                        + position, exchange.getFailure()));
+            }
+            return exchange.getResponse();
+        });
+    }
+
+    /**
+     * Getter.
+     *
+     * @return the position after the last byte written
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return the headers of the response, null if there was no response
+     */
+    public HttpFields getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return true if the response to a resumed request replaced the content instead of continuing it
+     */
+    public boolean isRestarted() {
+        return restarted;
+    }
+
+    /**
+     * Check the status of the response.
+     *
+     * @param status the status
+     * @return true if content with this status is written
+     */
+    private boolean isExpected(final int status) {
+        if (expectedStatus == ANY_SUCCESS) {
+            return HttpStatus.isSuccess(status);
+        }
+        return status == expectedStatus;
+    }
+
+    @Override
+    public void onHeaders(final Response response) {
+        headers = response.getHeaders();
+        answered = true;
+        if (!isExpected(response.getStatus())) {
+            response.abort(new IOException("Unexpected response code " + response.getStatus()));
+        } else if (resumed && response.getStatus() != HttpStatus.PARTIAL_CONTENT_206) {
+            restart(response);
+        } else if (resumed && !String.valueOf(response.getHeaders().get(HttpHeader.CONTENT_RANGE))
+                .startsWith("bytes " + position + "-")) {
+            final String range = response.getHeaders().get(HttpHeader.CONTENT_RANGE);
+            // the next attempt starts over
+            restart(response);
+            response.abort(new IOException("Unexpected range " + range + ", requested the rest of the content"));
+        }
+    }
+
+    /**
+     * Discard the content that was written, the response is written from the start of the channel.
+     *
+     * @param response the response
+     */
+    private void restart(final Response response) {
+        try {
+            channel.truncate(0);
+            position = 0;
+            restarted = true;
+        } catch (final IOException e) {
+            response.abort(e);
+        }
+    }
+
+    @Override
+    public void onContent(final Response response, final ByteBuffer content) {
+        try {
+            long written = position;
+            while (content.hasRemaining()) {
+                written += channel.write(content, written);
+            }
+            position = written;
+        } catch (final IOException e) {
+            response.abort(e);
+        }
+    }
+
+    @Override
+    public void onComplete(final Result exchange) {
+        result.complete(exchange);
+    }
+}
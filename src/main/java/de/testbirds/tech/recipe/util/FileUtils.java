@@ -2,6 +2,7 @@ package de.testbirds.tech.recipe.util;
 
 import com.google.common.base.Charsets;
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.http.HttpHeader;
@@ -17,20 +18,26 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -68,6 +75,72 @@ public final class FileUtils {
      */
     private static final int BUFFER_SIZE = 4096;
 
+    /**
+     * The size in bytes of the buffers extracted zip entries are written through. Large writes keep the number of
+     * system calls low for big archives.
+     */
+    private static final int UNZIP_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Inflates the entries of zip files, shared by all extractions so parallel installers do not multiply the threads.
+     */
+    private static final ForkJoinPool UNZIP_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+            pool -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("unzip-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+
+    /**
+     * The write buffer of each thread of the unzip pool.
+     */
+    private static final ThreadLocal<byte[]> UNZIP_BUFFERS = ThreadLocal.withInitial(() -> new byte[UNZIP_BUFFER_SIZE]);
+
+    /**
+     * Signature of the end of central directory record of a zip file.
+     */
+    private static final int ZIP_EOCD_SIGNATURE = 0x06054b50;
+
+    /**
+     * Size of the end of central directory record without comment.
+     */
+    private static final int ZIP_EOCD_SIZE = 22;
+
+    /**
+     * Maximum size of the end of central directory record including the comment.
+     */
+    private static final int ZIP_EOCD_MAX_SIZE = ZIP_EOCD_SIZE + 0xFFFF;
+
+    /**
+     * Signature of a central directory file header.
+     */
+    private static final int ZIP_CEN_SIGNATURE = 0x02014b50;
+
+    /**
+     * Size of a central directory file header without name, extra field and comment.
+     */
+    private static final int ZIP_CEN_SIZE = 46;
+
+    /**
+     * Host system "unix" in the version made by field of a zip entry.
+     */
+    private static final int ZIP_HOST_UNIX = 3;
+
+    /**
+     * Bytes kept from the end of a streamed zip archive to read its central directory.
+     */
+    private static final int ZIP_STREAM_TAIL_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The permission bits of a unix mode.
+     */
+    private static final int UNIX_PERMISSION_BITS = 0777;
+
+    /**
+     * The execute bits of a unix mode.
+     */
+    private static final int UNIX_EXECUTE_BITS = 0111;
+
     /**
      * How long it should wait for the response headers in milliseconds.
      */
@@ -78,6 +151,12 @@ public final class FileUtils {
      */
     private static final long JETTY_IDLE_TIMEOUT = 60000L;
 
+    /**
+     * The size in bytes of the buffers Jetty reads response content into. Downloads are written from these buffers
+     * directly to the file, so larger buffers mean fewer writes.
+     */
+    private static final int JETTY_RESPONSE_BUFFER_SIZE = 65536;
+
     /**
      * Minimum amount of threads of the thread pool of Jetty client.
      */
@@ -149,6 +228,7 @@ public final class FileUtils {
             final SslContextFactory sslContextFactory = new SslContextFactory();
             jettyClient = new HttpClient(sslContextFactory);
             jettyClient.setIdleTimeout(JETTY_IDLE_TIMEOUT);
+            jettyClient.setResponseBufferSize(JETTY_RESPONSE_BUFFER_SIZE);
             jettyClient.setExecutor(new QueuedThreadPool(JETTY_MAX_THREADS, JETTY_MIN_THREADS));
             try {
                 jettyClient.start();
@@ -167,19 +247,79 @@ public final class FileUtils {
      * @throws IOException If an I/O exception occurs.
      */
     public static InputStream download(final URL url) throws IOException {
-        final HttpClient client = getJettyClient();
+        return download(getJettyClient(), url);
+    }
+
+    /**
+     * Download as stream from URL with a specific Jetty client.
+     *
+     * @param client the client.
+     * @param url    the URL.
+     * @return the input stream.
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static InputStream download(final HttpClient client, final URL url) throws IOException {
+        final InputStreamResponseListener listener = new InputStreamResponseListener();
+        final Response response = request(client, url, Collections.emptyMap(), listener);
+        if (HttpStatus.isSuccess(response.getStatus())) {
+            return listener.getInputStream();
+        } else {
+            listener.getInputStream().close();
+            throw new IOException("Server response code: " + response.getStatus() + ". Reason: "
+                    + response.getReason());
+        }
+    }
+
+    /**
+     * Download a URL into a file. If the server supports range requests and the file is big enough, it is downloaded
+     * in segments over several connections at the same time, each segment written to its offset of a preallocated
+     * file. Otherwise it falls back to a single stream. Use {@link ResumableDownload} directly to continue a failed
+     * download.
+     *
+     * @param url         the URL.
+     * @param file        the target file, it is replaced.
+     * @param connections the maximum amount of connections used in parallel.
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static void download(final URL url, final File file, final int connections) throws IOException {
+        final ResumableDownload download = new ResumableDownload(url, file, connections);
         try {
-            final InputStreamResponseListener listener = new InputStreamResponseListener();
-            client.newRequest(url.toURI()).header(HttpHeader.CONNECTION, "close").send(listener);
-            final Response response = listener.get(HEADER_TIMEOUT, TimeUnit.MILLISECONDS);
-            if (HttpStatus.isSuccess(response.getStatus())) {
-                return listener.getInputStream();
-            } else {
-                throw new IOException(
-                        "Server response code: " + response.getStatus() + ". Reason: " + response.getReason());
-            }
-        } catch (final URISyntaxException e) {
-            throw new IOException("URI syntax exception", e);
+            download.attempt();
+        } finally {
+            download.discard();
+        }
+    }
+
+    /**
+     * Send a GET request with additional headers and wait for the response headers. The status is not checked, the
+     * content can be read from the listener afterwards and has to be closed by the caller.
+     *
+     * @param url      the URL.
+     * @param headers  additional request headers.
+     * @param listener the listener the content is streamed to.
+     * @return the response (headers only).
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static Response request(final URL url, final Map<String, String> headers,
+                                   final InputStreamResponseListener listener) throws IOException {
+        return request(getJettyClient(), url, headers, listener);
+    }
+
+    /**
+     * Send a GET request with a specific Jetty client, see {@link #request(URL, Map, InputStreamResponseListener)}.
+     *
+     * @param client   the client.
+     * @param url      the URL.
+     * @param headers  additional request headers.
+     * @param listener the listener the content is streamed to.
+     * @return the response (headers only).
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static Response request(final HttpClient client, final URL url, final Map<String, String> headers,
+                                   final InputStreamResponseListener listener) throws IOException {
+        try {
+            newRequest(client, url, headers).send(listener);
+            return listener.get(HEADER_TIMEOUT, TimeUnit.MILLISECONDS);
         } catch (final TimeoutException e) {
             throw new IOException("Did not receive headers after " + HEADER_TIMEOUT + "ms", e);
         } catch (final ExecutionException e) {
@@ -190,6 +330,40 @@ public final class FileUtils {
         }
     }
 
+    /**
+     * Create a GET request with additional headers on the shared Jetty client.
+     *
+     * @param url     the URL.
+     * @param headers additional request headers.
+     * @return the request, not sent yet.
+     * @throws IOException If the URL is invalid or the client can't be started.
+     */
+    public static Request newRequest(final URL url, final Map<String, String> headers) throws IOException {
+        return newRequest(getJettyClient(), url, headers);
+    }
+
+    /**
+     * Create a GET request with additional headers on a specific Jetty client.
+     *
+     * @param client  the client.
+     * @param url     the URL.
+     * @param headers additional request headers.
+     * @return the request, not sent yet.
+     * @throws IOException If the URL is invalid.
+     */
+    public static Request newRequest(final HttpClient client, final URL url, final Map<String, String> headers)
+            throws IOException {
+        try {
+            final Request request = client.newRequest(url.toURI()).header(HttpHeader.CONNECTION, "close");
+            for (final Map.Entry<String, String> header : headers.entrySet()) {
+                request.header(header.getKey(), header.getValue());
+            }
+            return request;
+        } catch (final URISyntaxException e) {
+            throw new IOException("URI syntax exception", e);
+        }
+    }
+
     /**
      * Read a whole InputStream into a single string.
      *
@@ -259,7 +433,7 @@ public final class FileUtils {
 
     /**
      * copy a file or directory to a destination path, enforcing this as far as possible (i.e. overwrite existing target
-     * files, merge directories, ...).
+     * files, merge directories, ...). the files of a directory are copied in parallel.
      *
      * @param source      the source to copy (this must exist but may be a file, symlink or directory)
      * @param destination a file object describing the target. This may exist, but is created if not and deleted if it is a file
@@ -267,23 +441,43 @@ public final class FileUtils {
      * @throws IOException if an IOException occurs
      */
     public static void copyRecursive(final File source, final File destination) throws IOException {
-        final CopyOption[] copyOptions = new CopyOption[]{StandardCopyOption.REPLACE_EXISTING,
-                StandardCopyOption.COPY_ATTRIBUTES};
+        DirectoryCopier.copy(source.toPath(), destination.toPath());
+    }
 
-        if (source.isDirectory()) {
-            if (destination.exists()) {
-                if (!destination.isDirectory()) {
-                    Files.delete(destination.toPath());
-                }
-            } else {
-                Files.copy(source.toPath(), destination.toPath(), copyOptions);
+    /**
+     * move a file or directory. on the same file system it is renamed atomically, otherwise it is copied in parallel
+     * and the source is deleted file by file while it is copied. an existing target file is overwritten.
+     *
+     * @param source      the file or directory to move, symbolic links are moved as they are
+     * @param destination the new location, its parent directory must exist
+     * @throws IOException if the source can't be moved
+     */
+    public static void move(final File source, final File destination) throws IOException {
+        if (isSameFileSystem(source.getAbsoluteFile().getParentFile(), destination.getAbsoluteFile().getParentFile())) {
+            try {
+                Files.move(source.toPath(), destination.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return;
+            } catch (final AtomicMoveNotSupportedException | DirectoryNotEmptyException e) {
+                LOG.debug("Can't rename {} to {}, copying it", new Object[]{source, destination, e});
             }
+        }
+        DirectoryCopier.move(source.toPath(), destination.toPath());
+    }
 
-            for (final File i : listDirectory(source, "")) {
-                copyRecursive(i, new File(destination.getCanonicalPath() + "/" + i.getName()));
-            }
-        } else {
-            Files.copy(source.toPath(), destination.toPath(), copyOptions);
+    /**
+     * Check if two directories are on the same file system, by their mount points.
+     *
+     * @param first  a directory
+     * @param second another directory
+     * @return true if they are, or if the mount points can't be determined
+     */
+    private static boolean isSameFileSystem(final File first, final File second) {
+        try {
+            return getMountPointOfFile(first).equals(getMountPointOfFile(second));
+        } catch (final IOException e) {
+            // the rename tells
+            LOG.debug("Can't determine the mount points of {} and {}", new Object[]{first, second, e});
+            return true;
         }
     }
 
@@ -346,48 +540,290 @@ public final class FileUtils {
     }
 
     /**
-     * Extracts a zip file to the specified directory (will be created if it does not exists).
+     * Extracts a zip file to the specified directory (will be created if it does not exists). The central directory
+     * is read first, all directories are created once and the files are inflated in parallel. Unix permissions stored
+     * in the archive are restored.
      *
      * @param zipFile         the ZIP archive file to unzip
      * @param targetDirectory the target directory where the archive is unzipped
-     * @throws IOException If an I/O error occurs
+     * @throws IOException If an I/O error occurs or an entry would be extracted outside of the target directory
      */
     public static void unzip(final File zipFile, final String targetDirectory) throws IOException {
         final File targetDir = new File(targetDirectory);
         if (!targetDir.exists() && !targetDir.mkdirs()) {
             throw new IOException("Target directory could not be created");
         }
+        final Path target = targetDir.toPath().toAbsolutePath().normalize();
+        final Map<String, Integer> modes = readUnixModes(zipFile);
 
-        try (ZipInputStream zipIn = new ZipInputStream(Files.newInputStream(zipFile.toPath()))) {
-            // iterates over entries in the zip file
-            for (ZipEntry entry = zipIn.getNextEntry(); entry != null; entry = zipIn.getNextEntry()) {
-                final String filePath = targetDir + File.separator + entry.getName();
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            final List<ZipEntry> files = new ArrayList<>();
+            final SortedSet<Path> directories = new TreeSet<>();
+            for (final Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
+                final ZipEntry entry = entries.nextElement();
+                if (isTargetEntry(target, entry.getName())) {
+                    continue;
+                }
+                final Path path = resolveEntry(target, entry.getName());
                 if (entry.isDirectory()) {
-                    // if the entry is a directory, make the directory
-                    final File dir = new File(filePath);
-                    dir.mkdirs();
+                    directories.add(path);
                 } else {
-                    new File(filePath).getParentFile().mkdirs();
-                    // if the entry is a file, extracts it
-                    extractFile(zipIn, filePath);
+                    directories.add(path.getParent());
+                    files.add(entry);
                 }
-                zipIn.closeEntry();
             }
+            for (final Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+
+            try {
+                UNZIP_POOL.submit(() -> files.parallelStream().forEach(entry -> {
+                    try {
+                        final Path path = resolveEntry(target, entry.getName());
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            write(in, path, UNZIP_BUFFERS.get());
+                        }
+                        restoreAttributes(path, entry, modes.get(entry.getName()));
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })).get();
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException("Extracting " + zipFile + " failed", e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while extracting " + zipFile, e);
+            }
+            for (final Path directory : directories) {
+                final Integer mode = modes.get(target.relativize(directory).toString().replace(File.separatorChar, '/')
+                        + "/");
+                if (mode != null) {
+                    setUnixMode(directory, mode);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write an extracted entry to a file through a large buffer.
+     *
+     * @param in     the content of the entry
+     * @param path   the file, it is replaced if it exists
+     * @param buffer the buffer
+     * @throws IOException If an I/O error occurs
+     */
+    private static void write(final InputStream in, final Path path, final byte[] buffer) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            for (int read = in.read(buffer); read > -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Check if an archive entry is the target directory itself, e.g. "./". Such entries are skipped.
+     *
+     * @param target the normalized absolute target directory
+     * @param name   the name of the entry
+     * @return true if the entry is the target directory
+     */
+    static boolean isTargetEntry(final Path target, final String name) {
+        return target.resolve(name).normalize().equals(target);
+    }
+
+    /**
+     * Resolve the path of an archive entry and make sure it stays inside the target directory (zip slip). The target
+     * directory itself is rejected as well, see {@link #isTargetEntry(Path, String)}.
+     *
+     * @param target the normalized absolute target directory
+     * @param name   the name of the entry
+     * @return the path of the extracted entry
+     * @throws IOException if the entry would be extracted outside of the target directory
+     */
+    static Path resolveEntry(final Path target, final String name) throws IOException {
+        final Path path = target.resolve(name).normalize();
+        if (!path.startsWith(target) || path.equals(target)) {
+            throw new IOException("Archive entry " + name + " is outside of the target directory");
+        }
+        return path;
+    }
+
+    /**
+     * Restore modification time and permissions of an extracted file.
+     *
+     * @param path  the extracted file
+     * @param entry the archive entry
+     * @param mode  the unix mode stored in the archive or null
+     * @throws IOException If an I/O error occurs
+     */
+    private static void restoreAttributes(final Path path, final ZipEntry entry, final Integer mode)
+            throws IOException {
+        if (entry.getTime() != -1) {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(entry.getTime()));
+        }
+        if (mode != null) {
+            setUnixMode(path, mode);
+        }
+    }
+
+    /**
+     * Apply the permission bits of a unix mode to a file. Falls back to the executable flag on non POSIX file systems.
+     *
+     * @param path the file
+     * @param mode the unix mode
+     * @throws IOException If an I/O error occurs
+     */
+    static void setUnixMode(final Path path, final int mode) throws IOException {
+        final PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+        if (view == null) {
+            if ((mode & UNIX_EXECUTE_BITS) != 0) {
+                path.toFile().setExecutable(true);
+            }
+            return;
         }
+        final Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        final PosixFilePermission[] bits = PosixFilePermission.values();
+        for (int i = 0; i < bits.length; i++) {
+            // OWNER_READ is 0400 ... OTHERS_EXECUTE is 0001
+            if ((mode & (1 << (bits.length - 1 - i))) != 0) {
+                permissions.add(bits[i]);
+            }
+        }
+        view.setPermissions(permissions);
     }
 
     /**
-     * Extracts a zip entry (file entry).
+     * Read the unix modes of all entries from the central directory of a zip file. java.util.zip does not expose them.
      *
-     * @param zipIn    the ZipInputStream to read from
-     * @param filePath the Path to extract
+     * @param zipFile the ZIP archive file
+     * @return the unix modes by entry name
      * @throws IOException If an I/O error occurs
      */
-    private static void extractFile(final ZipInputStream zipIn, final String filePath) throws IOException {
-        try (BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(Paths.get(filePath)))) {
-            final byte[] bytesIn = new byte[BUFFER_SIZE];
-            for (int read = zipIn.read(bytesIn); read > 0; read = zipIn.read(bytesIn)) {
-                bos.write(bytesIn, 0, read);
+    private static Map<String, Integer> readUnixModes(final File zipFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ)) {
+            // the end of central directory record is at most 22 + 65535 bytes from the end
+            final int tail = (int) Math.min(channel.size(), ZIP_EOCD_MAX_SIZE);
+            final ByteBuffer end = ByteBuffer.allocate(tail);
+            channel.read(end, channel.size() - tail);
+            final long cdOffset = findCentralDirectory(end);
+            if (cdOffset < 0) {
+                return new HashMap<>();
+            }
+            final ByteBuffer cd = ByteBuffer.allocate((int) (channel.size() - cdOffset));
+            channel.read(cd, cdOffset);
+            return parseUnixModes(cd);
+        }
+    }
+
+    /**
+     * Find the offset of the central directory from the end of a zip file.
+     *
+     * @param tail the last bytes of the zip file, containing the end of central directory record
+     * @return the offset of the central directory in the file, -1 if it can't be determined (e.g. ZIP64)
+     */
+    private static long findCentralDirectory(final ByteBuffer tail) {
+        tail.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = tail.limit() - ZIP_EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == ZIP_EOCD_SIGNATURE) {
+                final long size = tail.getInt(i + 12) & 0xFFFFFFFFL;
+                final long offset = tail.getInt(i + 16) & 0xFFFFFFFFL;
+                if (offset == 0xFFFFFFFFL || size > Integer.MAX_VALUE) {
+                    return -1;
+                }
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse the unix modes of the entries of a central directory. This is best effort: entries created on other systems
+     * have no modes.
+     *
+     * @param cd buffer starting at the central directory
+     * @return the unix modes by entry name
+     */
+    private static Map<String, Integer> parseUnixModes(final ByteBuffer cd) {
+        cd.order(ByteOrder.LITTLE_ENDIAN);
+        final Map<String, Integer> modes = new HashMap<>();
+        for (int i = 0; i + ZIP_CEN_SIZE <= cd.limit() && cd.getInt(i) == ZIP_CEN_SIGNATURE; ) {
+            final int madeBy = (cd.getShort(i + 4) & 0xFFFF) >> 8;
+            final int nameLength = cd.getShort(i + 28) & 0xFFFF;
+            final int extraLength = cd.getShort(i + 30) & 0xFFFF;
+            final int commentLength = cd.getShort(i + 32) & 0xFFFF;
+            final int mode = (cd.getInt(i + 38) >>> 16) & UNIX_PERMISSION_BITS;
+            if (i + ZIP_CEN_SIZE + nameLength > cd.limit()) {
+                break;
+            }
+            if (madeBy == ZIP_HOST_UNIX && mode != 0) {
+                final byte[] name = new byte[nameLength];
+                cd.position(i + ZIP_CEN_SIZE);
+                cd.get(name);
+                modes.put(new String(name, StandardCharsets.UTF_8), mode);
+            }
+            i += ZIP_CEN_SIZE + nameLength + extraLength + commentLength;
+        }
+        return modes;
+    }
+
+    /**
+     * Extracts a zip archive while it is read from a stream, e.g. while it is downloaded. The entries are extracted one
+     * after the other. The last bytes of the stream are kept to restore the unix permissions from the central
+     * directory afterwards.
+     *
+     * @param input           the ZIP archive (will be closed)
+     * @param targetDirectory the target directory where the archive is unzipped
+     * @throws IOException If an I/O error occurs or an entry would be extracted outside of the target directory
+     */
+    public static void unzip(final InputStream input, final String targetDirectory) throws IOException {
+        final File targetDir = new File(targetDirectory);
+        if (!targetDir.exists() && !targetDir.mkdirs()) {
+            throw new IOException("Target directory could not be created");
+        }
+        final Path target = targetDir.toPath().toAbsolutePath().normalize();
+        final TailInputStream tail = new TailInputStream(input, ZIP_STREAM_TAIL_SIZE);
+        final Map<String, Path> extracted = new HashMap<>();
+        final byte[] buffer = new byte[UNZIP_BUFFER_SIZE];
+        try (ZipInputStream zipIn = new ZipInputStream(tail)) {
+            for (ZipEntry entry = zipIn.getNextEntry(); entry != null; entry = zipIn.getNextEntry()) {
+                if (isTargetEntry(target, entry.getName())) {
+                    zipIn.closeEntry();
+                    continue;
+                }
+                final Path path = resolveEntry(target, entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(path);
+                } else {
+                    Files.createDirectories(path.getParent());
+                    write(zipIn, path, buffer);
+                    if (entry.getTime() != -1) {
+                        Files.setLastModifiedTime(path, FileTime.fromMillis(entry.getTime()));
+                    }
+                }
+                extracted.put(entry.getName(), path);
+                zipIn.closeEntry();
+            }
+            // the central directory follows the entries
+            while (tail.read(buffer) > -1) {
+                LOG.trace("reading central directory");
+            }
+        }
+
+        final ByteBuffer end = tail.getTail();
+        final long cdOffset = findCentralDirectory(end.duplicate());
+        final long tailStart = tail.getCount() - end.limit();
+        if (cdOffset < tailStart) {
+            LOG.info("central directory of the streamed archive is too large, permissions are not restored");
+            return;
+        }
+        end.position((int) (cdOffset - tailStart));
+        for (final Map.Entry<String, Integer> mode : parseUnixModes(end.slice()).entrySet()) {
+            final Path path = extracted.get(mode.getKey());
+            if (path != null) {
+                setUnixMode(path, mode.getValue());
             }
         }
     }
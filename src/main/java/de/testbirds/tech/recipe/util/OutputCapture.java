@@ -0,0 +1,242 @@
+package de.testbirds.tech.recipe.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Captured output of a process. Up to a limit the output is kept in memory, the rest is spilled to a file. The last
+ * characters are always kept in memory as well, so a summary of head and tail is available without reading the file.
+ * The full output is only read from the file when it is requested.
+ *
+ * @author testbirds
+ */
+public final class OutputCapture implements Closeable {
+
+    /**
+     * Default amount of characters kept in memory.
+     */
+    public static final int DEFAULT_MEMORY_LIMIT = 1024 * 1024;
+
+    /**
+     * The size of the head and tail windows in characters.
+     */
+    private static final int WINDOW_SIZE = 16384;
+
+    /**
+     * Maximum amount of characters kept in memory.
+     */
+    private final int memoryLimit;
+
+    /**
+     * The directory the spill file is created in, null if nothing is spilled.
+     */
+    private final Path spillDirectory;
+
+    /**
+     * The first characters of the output, at most memoryLimit.
+     */
+    private final StringBuilder memory = new StringBuilder();
+
+    /**
+     * The last characters of the output, at least WINDOW_SIZE if the output is that long.
+     */
+    private final StringBuilder tail = new StringBuilder();
+
+    /**
+     * The length of the output in characters.
+     */
+    private long length;
+
+    /**
+     * The file with the output after the first memoryLimit characters, null if nothing was spilled.
+     */
+    private File spillFile;
+
+    /**
+     * Writes to the spill file, null if it is not open.
+     */
+    private Writer spill;
+
+    /**
+     * Receives all output as it is appended, may be null.
+     */
+    private Consumer<CharSequence> listener;
+
+    /**
+     * Create an empty capture.
+     *
+     * @param memoryLimit    maximum amount of characters kept in memory
+     * @param spillDirectory the directory the rest of the output is written to, it is created if needed. null to
+     *                       keep everything in memory
+     */
+    public OutputCapture(final int memoryLimit, final Path spillDirectory) {
+        this.memoryLimit = memoryLimit;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Create a capture of a known output, kept in memory.
+     *
+     * @param output the output, may be null
+     * @return the capture or null if output is null
+     */
+    public static OutputCapture of(final String output) {
+        if (output == null) {
+            return null;
+        }
+        final OutputCapture capture = new OutputCapture(Integer.MAX_VALUE, null);
+        capture.append(output);
+        return capture;
+    }
+
+    /**
+     * Set a listener that receives all output as it is appended, e.g. to report it live. It is called by the thread
+     * that appends, so it must not block.
+     *
+     * @param listener the listener, null to remove it
+     */
+    public void setListener(final Consumer<CharSequence> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Append output.
+     *
+     * @param text the output
+     * @throws UncheckedIOException If the spill file can't be written
+     */
+    public void append(final CharSequence text) {
+        final int inMemory = Math.min(text.length(), Math.max(0, memoryLimit - memory.length()));
+        memory.append(text, 0, inMemory);
+        if (inMemory < text.length()) {
+            try {
+                if (spill == null) {
+                    openSpillFile();
+                }
+                spill.append(text, inMemory, text.length());
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Output can't be spilled to disk", e);
+            }
+        }
+        length += text.length();
+        if (listener != null) {
+            listener.accept(text);
+        }
+        tail.append(text);
+        if (tail.length() > 2 * WINDOW_SIZE) {
+            tail.delete(0, tail.length() - WINDOW_SIZE);
+        }
+    }
+
+    /**
+     * Open the spill file.
+     *
+     * @throws IOException If the file can't be created
+     */
+    private void openSpillFile() throws IOException {
+        if (spillDirectory == null) {
+            throw new IOException("Output exceeds " + memoryLimit + " characters");
+        }
+        if (spillFile == null) {
+            Files.createDirectories(spillDirectory);
+            spillFile = Files.createTempFile(spillDirectory, "output", ".log").toFile();
+        }
+        spill = Files.newBufferedWriter(spillFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Finish writing the spill file.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+    }
+
+    /**
+     * Getter.
+     *
+     * @return the length of the output in characters
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return the file with the output that did not fit into memory, null if everything is in memory
+     */
+    public File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return the first characters of the output
+     */
+    public String getHead() {
+        return memory.substring(0, Math.min(memory.length(), WINDOW_SIZE));
+    }
+
+    /**
+     * Getter.
+     *
+     * @return the last characters of the output
+     */
+    public String getTail() {
+        return tail.substring(Math.max(0, tail.length() - WINDOW_SIZE));
+    }
+
+    /**
+     * Get head and tail of the output, for logging and reports.
+     *
+     * @return the whole output if it is short, head and tail otherwise
+     */
+    public String getSummary() {
+        if (spillFile == null) {
+            return memory.toString();
+        }
+        if (length <= 2 * WINDOW_SIZE) {
+            // the tail is only trimmed beyond that, so it still holds the whole output
+            return tail.toString();
+        }
+        final String head = getHead();
+        final String last = getTail();
+        return head + "\n[... " + (length - head.length() - last.length()) + " characters omitted ...]\n" + last;
+    }
+
+    /**
+     * Get the whole output. If it was spilled, it is read from disk.
+     *
+     * @return the output
+     * @throws UncheckedIOException If the spill file can't be read
+     */
+    @Override
+    public String toString() {
+        if (spillFile == null) {
+            return memory.toString();
+        }
+        try {
+            if (spill != null) {
+                spill.flush();
+            }
+            return memory + new String(Files.readAllBytes(spillFile.toPath()), StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Spilled output can't be read", e);
+        }
+    }
+}
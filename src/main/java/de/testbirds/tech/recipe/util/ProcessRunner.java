@@ -4,11 +4,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Static collection of methods to run a process or script.
@@ -32,6 +39,22 @@ public final class ProcessRunner {
      */
     private static final long KILLING_GRACE_TIME = 2000L;
 
+    /**
+     * Timeout value to wait for a process as long as it runs.
+     */
+    public static final long NO_TIMEOUT = 0L;
+
+    /**
+     * Threads that drain the output streams of the processes.
+     */
+    private static final ExecutorService PUMPS = Executors.newCachedThreadPool(
+            ThreadFactories.newThreadFactory("process-pump-%d"));
+
+    /**
+     * The size in characters of the buffer an output stream is read into. A line that is longer is captured in parts.
+     */
+    private static final int CAPTURE_BUFFER_SIZE = 8192;
+
     /**
      * Utility class which must not be instantiated.
      */
@@ -106,20 +129,180 @@ public final class ProcessRunner {
      */
     public static int runProcess(final String[] cmdLine, final String[] input, final String[] output,
                                  final String[] envp) throws IOException, InterruptedException {
-        final Process process = startProcess(cmdLine, input, envp);
+        return runProcess(cmdLine, input, output, envp, NO_TIMEOUT);
+    }
 
-        // wait for the termination of the process
-        final int exitCode = process.waitFor();
+    /**
+     * The most basic way to run a process synchronously with IO control. stdout and stderr are drained while the
+     * process runs, so it never blocks on a full pipe. A process that exceeds the timeout is killed with the signals
+     * of {@link #killProcess(int)}.
+     *
+     * @param cmdLine the command to run (cmdLine[0] command, cmdLine[i] argument)
+     * @param input   pass input to the process, line by line
+     * @param output  capture stdout to output[0] and optionally stderr to output[1]
+     * @param envp    an array of environmental variables
+     * @param timeout the maximum run time in milliseconds or {@link #NO_TIMEOUT}
+     * @return exit code of the process
+     * @throws IOException          If an I/O error occurs or the process timed out
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    public static int runProcess(final String[] cmdLine, final String[] input, final String[] output,
+                                 final String[] envp, final long timeout) throws IOException, InterruptedException {
+        final OutputCapture stdout = output != null && output.length > 0
+                ? new OutputCapture(Integer.MAX_VALUE, null) : null;
+        final OutputCapture stderr = output != null && output.length >= 2
+                ? new OutputCapture(Integer.MAX_VALUE, null) : null;
+        final int exitCode = runProcess(cmdLine, input, stdout, stderr, envp, timeout);
+        if (stdout != null) {
+            output[0] = stdout.toString();
+        }
+        if (stderr != null) {
+            output[1] = stderr.toString();
+        }
+        return exitCode;
+    }
 
-        // capture the output of the process
-        if (output != null && output.length > 0) {
-            output[0] = captureInputStream(process.getInputStream());
-            if (output.length >= 2) {
-                output[1] = captureInputStream(process.getErrorStream());
+    /**
+     * The most basic way to run a process synchronously with IO control. stdout and stderr are drained while the
+     * process runs, so it never blocks on a full pipe. A process that exceeds the timeout is killed with the signals
+     * of {@link #killProcess(int)}.
+     *
+     * @param cmdLine the command to run (cmdLine[0] command, cmdLine[i] argument)
+     * @param input   pass input to the process, line by line
+     * @param stdout  capture of stdout, null to discard it
+     * @param stderr  capture of stderr, null to discard it
+     * @param envp    an array of environmental variables
+     * @param timeout the maximum run time in milliseconds or {@link #NO_TIMEOUT}
+     * @return exit code of the process
+     * @throws IOException          If an I/O error occurs or the process timed out
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    public static int runProcess(final String[] cmdLine, final String[] input, final OutputCapture stdout,
+                                 final OutputCapture stderr, final String[] envp, final long timeout)
+            throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        final Process process = Runtime.getRuntime().exec(cmdLine, envp);
+        final Future<?> stdoutPump = PUMPS.submit(() -> captureInputStream(process.getInputStream(), stdout));
+        final Future<?> stderrPump = PUMPS.submit(() -> captureInputStream(process.getErrorStream(), stderr));
+        boolean finished = false;
+        try {
+            if (input != null) {
+                writeInputLines(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8), input);
+            }
+
+            // wait for the termination of the process
+            final int exitCode;
+            if (timeout == NO_TIMEOUT) {
+                exitCode = process.waitFor();
+            } else if (process.waitFor(timeout, TimeUnit.MILLISECONDS)) {
+                exitCode = process.exitValue();
+            } else {
+                terminate(process);
+                throw new IOException(cmdLine[0] + " did not finish within " + timeout + "ms and was killed");
+            }
+
+            // the streams are closed as soon as all processes that inherited them exited
+            awaitPump(stdoutPump, timeout == NO_TIMEOUT ? NO_TIMEOUT : deadline);
+            awaitPump(stderrPump, timeout == NO_TIMEOUT ? NO_TIMEOUT : deadline);
+            finished = true;
+            return exitCode;
+        } finally {
+            if (!finished) {
+                if (process.isAlive()) {
+                    process.destroyForcibly();
+                }
+                // unblocks the pumps if a child process still holds the pipes
+                closeQuietly(process.getInputStream());
+                closeQuietly(process.getErrorStream());
             }
         }
+    }
 
-        return exitCode;
+    /**
+     * Wait until a stream is captured completely.
+     *
+     * @param pump     the pump of the stream
+     * @param deadline the time in milliseconds until the output must be complete or {@link #NO_TIMEOUT}
+     * @throws IOException          If reading the stream failed or did not finish in time
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    private static void awaitPump(final Future<?> pump, final long deadline) throws IOException, InterruptedException {
+        try {
+            if (deadline == NO_TIMEOUT) {
+                pump.get();
+            } else {
+                pump.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Capturing the output failed", e.getCause());
+        } catch (final TimeoutException e) {
+            throw new IOException("Output of a child process was not closed in time", e);
+        }
+    }
+
+    /**
+     * Stop a process that did not finish in time. On Unixoid systems the signals of {@link #killProcess(int)} are
+     * used, otherwise the process is destroyed.
+     *
+     * @param process the process
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    private static void terminate(final Process process) throws InterruptedException {
+        final int pid = getPid(process);
+        if (pid > 0 && File.separatorChar == '/') {
+            try {
+                killProcess(pid);
+            } catch (final IOException e) {
+                LOG.warn("Killing process {} failed", pid, e);
+            }
+        } else {
+            process.destroy();
+            if (!process.waitFor(KILLING_GRACE_TIME, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+        if (process.isAlive()) {
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Get the PID of a process. Java 8 does not expose it, so it is read by reflection.
+     *
+     * @param process the process
+     * @return the PID or -1 if it is unknown
+     */
+    static int getPid(final Process process) {
+        try {
+            // Java 9 and newer
+            return ((Long) Process.class.getMethod("pid").invoke(process)).intValue();
+        } catch (final NoSuchMethodException e) {
+            try {
+                final Field pid = process.getClass().getDeclaredField("pid");
+                pid.setAccessible(true);
+                return pid.getInt(process);
+            } catch (final ReflectiveOperationException | RuntimeException e2) {
+                return -1;
+            }
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Close a stream and ignore errors.
+     *
+     * @param stream the stream
+     */
+    private static void closeQuietly(final Closeable stream) {
+        try {
+            stream.close();
+        } catch (final IOException e) {
+            LOG.debug("closing stream failed", e);
+        }
     }
 
     /**
@@ -178,14 +361,50 @@ public final class ProcessRunner {
      */
     public static int runBatchScript(final String[] scriptLines, final String[] output)
             throws IOException, InterruptedException {
-        final File tmpFile = writeBatchScript(scriptLines);
-
-        // run the batch file without input (BATCH)
-        final int exitCode = runProcess(new String[]{tmpFile.getAbsolutePath()}, null, output);
+        return runBatchScript(scriptLines, output, NO_TIMEOUT);
+    }
 
-        Files.delete(tmpFile.toPath());
+    /**
+     * Execute a script in the BATCH shell (Windows).
+     *
+     * @param scriptLines the script line by line (line separators are added)
+     * @param output      like in runProcess, this allows to capture the script's output
+     * @param timeout     the maximum run time in milliseconds or {@link #NO_TIMEOUT}
+     * @return exit code of the script
+     * @throws IOException          If an I/O error occurs or the script timed out
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    public static int runBatchScript(final String[] scriptLines, final String[] output, final long timeout)
+            throws IOException, InterruptedException {
+        final File tmpFile = writeBatchScript(scriptLines);
+        try {
+            // run the batch file without input (BATCH)
+            return runProcess(new String[]{tmpFile.getAbsolutePath()}, null, output, null, timeout);
+        } finally {
+            Files.delete(tmpFile.toPath());
+        }
+    }
 
-        return exitCode;
+    /**
+     * Execute a script in the BATCH shell (Windows).
+     *
+     * @param scriptLines the script line by line (line separators are added)
+     * @param stdout      capture of stdout, null to discard it
+     * @param stderr      capture of stderr, null to discard it
+     * @param timeout     the maximum run time in milliseconds or {@link #NO_TIMEOUT}
+     * @return exit code of the script
+     * @throws IOException          If an I/O error occurs or the script timed out
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    public static int runBatchScript(final String[] scriptLines, final OutputCapture stdout,
+                                     final OutputCapture stderr, final long timeout)
+            throws IOException, InterruptedException {
+        final File tmpFile = writeBatchScript(scriptLines);
+        try {
+            return runProcess(new String[]{tmpFile.getAbsolutePath()}, null, stdout, stderr, null, timeout);
+        } finally {
+            Files.delete(tmpFile.toPath());
+        }
     }
 
     /**
@@ -199,7 +418,39 @@ public final class ProcessRunner {
      */
     public static int runBashScript(final String[] scriptLines, final String[] output)
             throws IOException, InterruptedException {
-        return runProcess(new String[]{"bash", "-s", "-e"}, scriptLines, output);
+        return runBashScript(scriptLines, output, NO_TIMEOUT);
+    }
+
+    /**
+     * Execute a script in the BASH shell (Linux and Mac).
+     *
+     * @param scriptLines the script line by line (line seperators are added)
+     * @param output      like in runProcess, this allows to capture the script's output
+     * @param timeout     the maximum run time in milliseconds or {@link #NO_TIMEOUT}
+     * @return exit code of the script
+     * @throws IOException          If an I/O error occurs or the script timed out
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    public static int runBashScript(final String[] scriptLines, final String[] output, final long timeout)
+            throws IOException, InterruptedException {
+        return runProcess(new String[]{"bash", "-s", "-e"}, scriptLines, output, null, timeout);
+    }
+
+    /**
+     * Execute a script in the BASH shell (Linux and Mac).
+     *
+     * @param scriptLines the script line by line (line seperators are added)
+     * @param stdout      capture of stdout, null to discard it
+     * @param stderr      capture of stderr, null to discard it
+     * @param timeout     the maximum run time in milliseconds or {@link #NO_TIMEOUT}
+     * @return exit code of the script
+     * @throws IOException          If an I/O error occurs or the script timed out
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    public static int runBashScript(final String[] scriptLines, final OutputCapture stdout,
+                                    final OutputCapture stderr, final long timeout)
+            throws IOException, InterruptedException {
+        return runProcess(new String[]{"bash", "-s", "-e"}, scriptLines, stdout, stderr, null, timeout);
     }
 
     /**
@@ -415,21 +666,50 @@ public final class ProcessRunner {
     }
 
     /**
-     * Capture input from an input stream line by line and aggregate it.
+     * Capture input from an input stream and aggregate it. The stream is read in chunks; whenever a chunk ends a line,
+     * the complete lines are appended to the capture, so a listener gets them right away. Like before, \r, \n and
+     * \r\n end a line, so a progress line that ends with \r is appended as soon as it is printed.
      *
-     * @param input the input stream which is read
-     * @return String of all lines always seperated by \n
+     * @param input   the input stream which is read
+     * @param capture receives all lines always seperated by \n, null to discard them
+     * @return null, so it can be submitted as Callable
      * @throws IOException If an I/O error occurs
      */
-    private static String captureInputStream(final InputStream input) throws IOException {
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
-        final StringBuilder stringBuilder = new StringBuilder();
-
-        String line;
-        while ((line = reader.readLine()) != null) {
-            stringBuilder.append(line + "\n");
+    private static Void captureInputStream(final InputStream input, final OutputCapture capture) throws IOException {
+        final Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+        final char[] buffer = new char[CAPTURE_BUFFER_SIZE];
+        // the output after the last line that was appended, line ends are already \n
+        final StringBuilder pending = new StringBuilder();
+        boolean afterCarriageReturn = false;
+        boolean lineOpen = false;
+        try {
+            for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+                if (capture == null) {
+                    continue;
+                }
+                for (int i = 0; i < read; i++) {
+                    final char c = buffer[i];
+                    if (c != '\n' || !afterCarriageReturn) {
+                        pending.append(c == '\r' ? '\n' : c);
+                    }
+                    afterCarriageReturn = c == '\r';
+                }
+                final int lines = pending.lastIndexOf("\n") + 1;
+                if (lines > 0 || pending.length() >= CAPTURE_BUFFER_SIZE) {
+                    final int end = lines > 0 ? lines : pending.length();
+                    capture.append(pending.substring(0, end));
+                    pending.delete(0, end);
+                    lineOpen = lines == 0;
+                }
+            }
+            if (capture != null && (lineOpen || pending.length() > 0)) {
+                capture.append(pending.append('\n'));
+            }
+        } finally {
+            if (capture != null) {
+                capture.close();
+            }
         }
-
-        return stringBuilder.toString();
+        return null;
     }
 }
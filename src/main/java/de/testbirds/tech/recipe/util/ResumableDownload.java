@@ -0,0 +1,596 @@
+package de.testbirds.tech.recipe.util;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Download of a URL into a file that can be continued after a failed attempt. If the server supports range requests,
+ * the file is split into segments that are downloaded over several connections at the same time, each written to its
+ * offset of a preallocated file. A later attempt only requests the bytes of each segment that are still missing,
+ * guarded by If-Range, so a changed file on the server restarts the download instead of mixing both versions. Without
+ * range support the file is downloaded as a single stream, a later attempt still asks for the rest of it with Range
+ * and If-Range and only starts over if the server answers with the whole content. All requests are sent with Jetty's
+ * non-blocking API, no thread waits for a segment.
+ *
+ * @author testbirds
+ */
+public final class ResumableDownload {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ResumableDownload.class);
+
+    /**
+     * The minimum size in bytes of a segment. Smaller files are downloaded in a single segment.
+     */
+    private static final long MIN_SEGMENT_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * Protocol of URLs that are copied locally.
+     */
+    private static final String LOCAL_PROTOCOL = "file";
+
+    /**
+     * How long it should wait for the response of the HEAD request in milliseconds.
+     */
+    private static final int HEAD_TIMEOUT = 30000;
+
+    /**
+     * The URL.
+     */
+    private final URL url;
+
+    /**
+     * The target file.
+     */
+    private final File file;
+
+    /**
+     * The maximum amount of connections used in parallel.
+     */
+    private final int connections;
+
+    /**
+     * The Jetty client, null for the shared one.
+     */
+    private final HttpClient client;
+
+    /**
+     * The ETag of the content, may be null.
+     */
+    private String etag;
+
+    /**
+     * The Last-Modified date of the content, may be null.
+     */
+    private String lastModified;
+
+    /**
+     * The preallocated file the segments are written to, null if the download is not ranged.
+     */
+    private File partial;
+
+    /**
+     * First byte of each segment.
+     */
+    private long[] starts;
+
+    /**
+     * Next byte to download of each segment.
+     */
+    private AtomicLongArray next;
+
+    /**
+     * Last byte (inclusive) of each segment.
+     */
+    private long[] ends;
+
+    /**
+     * True after the single stream path was taken, the HEAD request is not repeated then.
+     */
+    private boolean streaming;
+
+    /**
+     * Bytes of the single stream that were written to the file by previous attempts.
+     */
+    private long streamed;
+
+    /**
+     * True after the file is downloaded completely.
+     */
+    private volatile boolean complete;
+
+    /**
+     * Requests of the running attempt.
+     */
+    private final Set<Request> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The reason the running attempt was aborted, null if it was not.
+     */
+    private volatile Throwable aborted;
+
+    /**
+     * Prepare a download, nothing is requested yet.
+     *
+     * @param url         the URL
+     * @param file        the target file, it is replaced
+     * @param connections the maximum amount of connections used in parallel
+     */
+    public ResumableDownload(final URL url, final File file, final int connections) {
+        this(url, file, connections, null);
+    }
+
+    /**
+     * Prepare a download with a specific Jetty client, nothing is requested yet.
+     *
+     * @param url         the URL
+     * @param file        the target file, it is replaced
+     * @param connections the maximum amount of connections used in parallel
+     * @param client      the Jetty client, null for the shared one
+     */
+    public ResumableDownload(final URL url, final File file, final int connections, final HttpClient client) {
+        this.url = url;
+        this.file = file;
+        this.connections = connections;
+        this.client = client;
+    }
+
+    /**
+     * Get the Jetty client.
+     *
+     * @return the client of this download or the shared one
+     * @throws IOException If the shared client can't be started
+     */
+    private HttpClient getClient() throws IOException {
+        return client == null ? FileUtils.getJettyClient() : client;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return the ETag of the downloaded content, may be null
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return the Last-Modified date of the downloaded content, may be null
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Try to download the file, continuing where the last attempt stopped. Does nothing if it is already complete.
+     *
+     * @throws IOException If an I/O exception occurs, another attempt can be made afterwards
+     */
+    public void attempt() throws IOException {
+        final CompletableFuture<Void> attempt = attemptAsync();
+        try {
+            attempt.get();
+        } catch (final ExecutionException e) {
+            throw toIOException(e.getCause());
+        } catch (final InterruptedException e) {
+            abort(e);
+            // the aborted requests fail at once, afterwards nothing writes to the file any more
+            attempt.handle((ignored, failure) -> null).join();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + url, e);
+        }
+    }
+
+    /**
+     * Try to download the file without waiting, continuing where the last attempt stopped. The requests are sent with
+     * Jetty's non-blocking API, so no thread waits for the transfer. Only file:// URLs are copied by the calling
+     * thread. Another attempt must not be started before this one is completed.
+     *
+     * @return completed when the file is downloaded, completed exceptionally with an IOException if the attempt failed.
+     * another attempt can be made afterwards
+     */
+    public CompletableFuture<Void> attemptAsync() {
+        aborted = null;
+        if (complete) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (LOCAL_PROTOCOL.equals(url.getProtocol())) {
+            try {
+                copyLocalFile();
+            } catch (final IOException e) {
+                return failed(e);
+            }
+            complete = true;
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> prepared;
+        if (streaming) {
+            prepared = CompletableFuture.completedFuture(null);
+        } else if (partial == null) {
+            prepared = prepare();
+        } else {
+            if (etag == null && lastModified == null) {
+                // without a validator a continued download could mix two versions of the content
+                for (int i = 0; i < starts.length; i++) {
+                    next.set(i, starts[i]);
+                }
+            }
+            prepared = CompletableFuture.completedFuture(null);
+        }
+        return prepared.thenCompose(ignored -> {
+            if (partial == null) {
+                return writeWholeFile();
+            }
+            return downloadSegments().thenCompose(ranged -> {
+                if (ranged) {
+                    try {
+                        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    } catch (final IOException e) {
+                        throw new CompletionException(e);
+                    }
+                    partial = null;
+                    return CompletableFuture.completedFuture(null);
+                }
+                LOG.info("content of {} changed or ranges are ignored, downloading as single stream", url);
+                discard();
+                streamed = 0;
+                return writeWholeFile();
+            });
+        }).thenRun(() -> complete = true);
+    }
+
+    /**
+     * Abort the running attempt. Requests that are not sent yet fail immediately, so the attempt completes
+     * exceptionally soon. A later attempt continues where this one stopped.
+     *
+     * @param cause the reason
+     */
+    public void abort(final Throwable cause) {
+        aborted = cause;
+        abortRunning(cause);
+    }
+
+    /**
+     * Delete the partially downloaded content. Call this if no further attempt is made.
+     */
+    public void discard() {
+        if (partial != null && !partial.delete()) {
+            LOG.warn("can't delete partial download {}", partial);
+        }
+        partial = null;
+    }
+
+    /**
+     * Download the content as single stream. If a previous stream stopped early and the content has a validator, only
+     * the rest is requested and appended.
+     *
+     * @return completed when the content is written
+     */
+    private CompletableFuture<Void> writeWholeFile() {
+        streaming = true;
+        final String validator = etag != null ? etag : lastModified;
+        final long offset = validator == null ? 0 : streamed;
+        final FileChannel channel;
+        try {
+            channel = offset > 0 ? FileChannel.open(file.toPath(), StandardOpenOption.WRITE)
+                    : FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        final Map<String, String> headers = new HashMap<>();
+        final FileChannelResponseListener listener;
+        if (offset > 0) {
+            LOG.debug("continuing download of {} at byte {}", url, offset);
+            headers.put(HttpHeader.RANGE.asString(), "bytes=" + offset + "-");
+            headers.put(HttpHeader.IF_RANGE.asString(), validator);
+            listener = FileChannelResponseListener.resuming(channel, offset);
+        } else {
+            listener = new FileChannelResponseListener(channel, 0, FileChannelResponseListener.ANY_SUCCESS);
+        }
+        final CompletableFuture<Response> response = send(listener, headers).whenComplete((whole, failure) -> {
+            final HttpFields fields = listener.getHeaders();
+            if (fields != null) {
+                if (offset == 0 || listener.isRestarted()) {
+                    // the content in the file started over, so it belongs to the validators of this response
+                    etag = fields.get(HttpHeader.ETAG);
+                    lastModified = fields.get(HttpHeader.LAST_MODIFIED);
+                }
+                streamed = listener.getPosition();
+            }
+        });
+        return closeAfter(response, channel).thenAccept(whole -> {
+            if (!HttpStatus.isSuccess(whole.getStatus())) {
+                throw new CompletionException(new IOException("Server response code: " + whole.getStatus()
+                        + ". Reason: " + whole.getReason()));
+            }
+        });
+    }
+
+    /**
+     * Copy a file:// URL with the file system instead of HTTP.
+     *
+     * @throws IOException If an I/O exception occurs
+     */
+    private void copyLocalFile() throws IOException {
+        final File source;
+        try {
+            source = new File(url.toURI());
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Invalid file URL " + url, e);
+        }
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            final long size = in.size();
+            for (long position = 0; position < size; ) {
+                position += out.transferFrom(in, position, size - position);
+            }
+        }
+    }
+
+    /**
+     * Ask the server for length and range support and split the file into segments if possible.
+     *
+     * @return completed when the segments are known. there are none if the HEAD request failed
+     */
+    private CompletableFuture<Void> prepare() {
+        final Request head;
+        try {
+            head = getClient().newRequest(url.toURI()).method(HttpMethod.HEAD)
+                    .timeout(HEAD_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (final URISyntaxException e) {
+            LOG.debug("HEAD request to {} failed", url, e);
+            return CompletableFuture.completedFuture(null);
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        final CompletableFuture<Void> prepared = new CompletableFuture<>();
+        track(head);
+        head.send(result -> {
+            running.remove(head);
+            if (aborted != null) {
+                prepared.completeExceptionally(new IOException("Download of " + url + " was aborted", aborted));
+            } else if (result.isFailed()) {
+                LOG.debug("HEAD request to {} failed", url, result.getFailure());
+                prepared.complete(null);
+            } else {
+                try {
+                    split(result.getResponse());
+                    prepared.complete(null);
+                } catch (final IOException | RuntimeException e) {
+                    prepared.completeExceptionally(e);
+                }
+            }
+        });
+        return prepared;
+    }
+
+    /**
+     * Split the file into segments if the server supports ranges.
+     *
+     * @param head the response to the HEAD request
+     * @throws IOException If the file can't be allocated
+     */
+    private void split(final Response head) throws IOException {
+        final long length = head.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString());
+        if (!HttpStatus.isSuccess(head.getStatus()) || !"bytes".equals(head.getHeaders().get(HttpHeader.ACCEPT_RANGES))
+                || length <= 0) {
+            return;
+        }
+        etag = head.getHeaders().get(HttpHeader.ETAG);
+        lastModified = head.getHeaders().get(HttpHeader.LAST_MODIFIED);
+
+        final int segments = (int) Math.max(1, Math.min(connections, length / MIN_SEGMENT_SIZE));
+        final long segmentSize = (length + segments - 1) / segments;
+        starts = new long[segments];
+        ends = new long[segments];
+        next = new AtomicLongArray(segments);
+        for (int i = 0; i < segments; i++) {
+            starts[i] = i * segmentSize;
+            ends[i] = Math.min(starts[i] + segmentSize, length) - 1;
+            next.set(i, starts[i]);
+        }
+        partial = FileUtils.allocateSpace(file.getAbsoluteFile().getParent(), length, 0);
+        LOG.debug("downloading {} bytes of {} in {} segments", new Object[]{length, url, segments});
+    }
+
+    /**
+     * Download the missing bytes of all segments in parallel. If one segment fails, the others are aborted, their
+     * progress is kept for the next attempt.
+     *
+     * @return completed with false if the server did not answer with the requested ranges
+     */
+    private CompletableFuture<Boolean> downloadSegments() {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(partial.toPath(), StandardOpenOption.WRITE);
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        final List<CompletableFuture<Boolean>> results = new ArrayList<>(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            final CompletableFuture<Boolean> result = downloadSegment(channel, i);
+            result.whenComplete((ranged, failure) -> {
+                if (failure != null) {
+                    abortRunning(failure);
+                }
+            });
+            results.add(result);
+        }
+        final CompletableFuture<Boolean> all = CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    boolean ranged = true;
+                    for (final CompletableFuture<Boolean> result : results) {
+                        ranged &= result.join();
+                    }
+                    return ranged;
+                });
+        return closeAfter(all, channel);
+    }
+
+    /**
+     * Download the missing bytes of a segment into its position of the file.
+     *
+     * @param channel the channel of the preallocated file
+     * @param segment index of the segment
+     * @return completed with false if the server did not answer with the requested range
+     */
+    private CompletableFuture<Boolean> downloadSegment(final FileChannel channel, final int segment) {
+        final long from = next.get(segment);
+        final long to = ends[segment];
+        if (from > to) {
+            return CompletableFuture.completedFuture(true);
+        }
+        final Map<String, String> headers = new HashMap<>();
+        headers.put(HttpHeader.RANGE.asString(), "bytes=" + from + "-" + to);
+        if (etag != null) {
+            headers.put(HttpHeader.IF_RANGE.asString(), etag);
+        } else if (lastModified != null) {
+            headers.put(HttpHeader.IF_RANGE.asString(), lastModified);
+        }
+        final FileChannelResponseListener listener = new FileChannelResponseListener(channel, from,
+                HttpStatus.PARTIAL_CONTENT_206);
+        return send(listener, headers).whenComplete((response, failure) -> next.set(segment, listener.getPosition()))
+                .thenApply(response -> {
+                    if (response.getStatus() != HttpStatus.PARTIAL_CONTENT_206) {
+                        return false;
+                    }
+                    if (listener.getPosition() != to + 1) {
+                        throw new CompletionException(new IOException("Segment " + from + "-" + to + " of " + url
+                                + " ended at byte " + listener.getPosition()));
+                    }
+                    return true;
+                });
+    }
+
+    /**
+     * Send a GET request for the URL whose content is written by a listener.
+     *
+     * @param listener the listener
+     * @param headers  additional headers
+     * @return completed with the response when the content is written
+     */
+    private CompletableFuture<Response> send(final FileChannelResponseListener listener,
+                                             final Map<String, String> headers) {
+        final Request request;
+        try {
+            request = FileUtils.newRequest(getClient(), url, headers);
+        } catch (final IOException e) {
+            return failed(e);
+        }
+        track(request);
+        return listener.sendAsync(request).whenComplete((response, failure) -> running.remove(request));
+    }
+
+    /**
+     * Remember a request of the running attempt, so it can be aborted. It is aborted at once if the attempt is.
+     *
+     * @param request the request
+     */
+    private void track(final Request request) {
+        running.add(request);
+        final Throwable cause = aborted;
+        if (cause != null) {
+            request.abort(cause);
+        }
+    }
+
+    /**
+     * Abort all requests that are running.
+     *
+     * @param cause the reason
+     */
+    private void abortRunning(final Throwable cause) {
+        for (final Request request : running) {
+            request.abort(cause);
+        }
+    }
+
+    /**
+     * Close a file channel when a future is completed. A failure to close it fails the returned future.
+     *
+     * @param future  the future
+     * @param channel the channel
+     * @param <T>     type of the result
+     * @return completed like the future after the channel is closed
+     */
+    private static <T> CompletableFuture<T> closeAfter(final CompletableFuture<T> future, final FileChannel channel) {
+        return future.handle((value, failure) -> {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                if (failure == null) {
+                    throw new CompletionException(e);
+                }
+                failure.addSuppressed(e);
+            }
+            if (failure != null) {
+                throw failure instanceof CompletionException ? (CompletionException) failure
+                        : new CompletionException(failure);
+            }
+            return value;
+        });
+    }
+
+    /**
+     * Create a future that is completed exceptionally.
+     *
+     * @param failure the exception
+     * @param <T>     type of the result
+     * @return the future
+     */
+    private static <T> CompletableFuture<T> failed(final Throwable failure) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+
+    /**
+     * Get the IOException of a failed attempt.
+     *
+     * @param failure the cause of the failure
+     * @return the exception itself or one wrapping it
+     */
+    private static IOException toIOException(final Throwable failure) {
+        Throwable cause = failure;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException("Download failed", cause);
+    }
+}
@@ -0,0 +1,298 @@
+package de.testbirds.tech.recipe.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A long-lived shell that runs one script after the other, so only the first script pays for starting the shell.
+ * After each script the shell prints a marker with its exit code to stdout and a marker to stderr, which separates the
+ * output of the scripts. On Linux and Mac each script runs with -e in a subshell, so it can't change the state of
+ * the session. On Windows each script is written to a .bat file and CALLed, so it shares the environment and working
+ * directory of the session. If a script exits the shell, the next script starts a new one.
+ *
+ * @author testbirds
+ */
+public final class ShellSession implements Closeable {
+
+    /**
+     * SLF4J logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ShellSession.class);
+
+    /**
+     * True for a Windows BATCH shell, false for BASH.
+     */
+    private final boolean windows;
+
+    /**
+     * Separates the output of the scripts, unique per session.
+     */
+    private final String marker = "--recipe-step-" + UUID.randomUUID() + "--";
+
+    /**
+     * Receives a token whenever the stderr of a script is complete.
+     */
+    private final BlockingQueue<Boolean> errorMarkers = new LinkedBlockingQueue<>();
+
+    /**
+     * Serializes scripts. A lock instead of synchronized, so a waiting virtual thread does not pin its carrier.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The shell, null if it is not started.
+     */
+    private Process process;
+
+    /**
+     * The stdin of the shell.
+     */
+    private Writer stdin;
+
+    /**
+     * The stdout of the shell.
+     */
+    private BufferedReader stdout;
+
+    /**
+     * Reads stderr of the shell.
+     */
+    private Thread errorReader;
+
+    /**
+     * Capture of stderr of the running script, null to discard stderr.
+     */
+    private volatile OutputCapture errorCapture;
+
+    /**
+     * Create a session, the shell is started with the first script.
+     *
+     * @param windows true for a BATCH shell (Windows), false for BASH (Linux and Mac)
+     */
+    public ShellSession(final boolean windows) {
+        this.windows = windows;
+    }
+
+    /**
+     * Run a script in the session. Behaves like {@link ProcessRunner#runBashScript(String[], String[])} or
+     * {@link ProcessRunner#runBatchScript(String[], String[])}.
+     *
+     * @param scriptLines the script line by line
+     * @param output      capture stdout to output[0] and optionally stderr to output[1]
+     * @return exit code of the script
+     * @throws IOException          If an I/O error occurs
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    public int run(final String[] scriptLines, final String[] output) throws IOException, InterruptedException {
+        final OutputCapture stdout = new OutputCapture(Integer.MAX_VALUE, null);
+        final OutputCapture stderr = new OutputCapture(Integer.MAX_VALUE, null);
+        final int exitCode = run(scriptLines, stdout, stderr);
+        if (output != null && output.length > 0) {
+            output[0] = stdout.toString();
+            if (output.length >= 2) {
+                output[1] = stderr.toString();
+            }
+        }
+        return exitCode;
+    }
+
+    /**
+     * Run a script in the session.
+     *
+     * @param scriptLines the script line by line
+     * @param out         capture of stdout, null to discard it
+     * @param err         capture of stderr, null to discard it
+     * @return exit code of the script
+     * @throws IOException          If an I/O error occurs
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    public int run(final String[] scriptLines, final OutputCapture out, final OutputCapture err)
+            throws IOException, InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            return runLocked(scriptLines, out, err);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Run a script in the session while holding the lock.
+     *
+     * @param scriptLines the script line by line
+     * @param out         capture of stdout, null to discard it
+     * @param err         capture of stderr, null to discard it
+     * @return exit code of the script
+     * @throws IOException          If an I/O error occurs
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    private int runLocked(final String[] scriptLines, final OutputCapture out, final OutputCapture err)
+            throws IOException, InterruptedException {
+        if (process == null) {
+            start();
+        }
+        errorCapture = err;
+        File batchFile = null;
+        try {
+            if (windows) {
+                batchFile = ProcessRunner.writeBatchScript(scriptLines);
+                stdin.write("call \"" + batchFile.getAbsolutePath() + "\" <nul\r\n");
+                stdin.write("echo " + marker + " %ERRORLEVEL%\r\n");
+                stdin.write("echo " + marker + " 1>&2\r\n");
+            } else {
+                final String script = String.join("\n", scriptLines).replace("'", "'\\''");
+                stdin.write("( set -e; eval '" + script + "' ) </dev/null; printf '%s %d\\n' '" + marker
+                        + "' $?; printf '%s\\n' '" + marker + "' >&2\n");
+            }
+            stdin.flush();
+            return readResult(out);
+        } catch (final IOException e) {
+            // the shell is in an unknown state
+            close();
+            throw e;
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            if (err != null) {
+                err.close();
+            }
+            if (batchFile != null) {
+                Files.deleteIfExists(batchFile.toPath());
+            }
+        }
+    }
+
+    /**
+     * Read the output of a script up to the markers.
+     *
+     * @param capture capture of stdout, null to discard it
+     * @return exit code of the script
+     * @throws IOException          If an I/O error occurs
+     * @throws InterruptedException If the current thread is interrupted by another thread while it is waiting
+     */
+    private int readResult(final OutputCapture capture) throws IOException, InterruptedException {
+        Integer exitCode = null;
+        for (String line = stdout.readLine(); line != null; line = stdout.readLine()) {
+            final int index = line.indexOf(marker);
+            if (index < 0) {
+                append(capture, line);
+                continue;
+            }
+            if (index > 0) {
+                // the output did not end with a line separator
+                append(capture, line.substring(0, index));
+            }
+            try {
+                exitCode = Integer.parseInt(line.substring(index + marker.length()).trim());
+            } catch (final NumberFormatException e) {
+                throw new IOException("Invalid exit code in " + line, e);
+            }
+            break;
+        }
+
+        if (exitCode == null) {
+            // the script exited the shell
+            exitCode = process.waitFor();
+            errorReader.join();
+            LOG.debug("shell session exited with {}", exitCode);
+            close();
+        } else {
+            errorMarkers.take();
+        }
+        return exitCode;
+    }
+
+    /**
+     * Append a line to a capture.
+     *
+     * @param capture the capture, null to discard the line
+     * @param line    the line without separator
+     */
+    private static void append(final OutputCapture capture, final String line) {
+        if (capture != null) {
+            capture.append(line);
+            capture.append("\n");
+        }
+    }
+
+    /**
+     * Start the shell.
+     *
+     * @throws IOException If the shell can't be started
+     */
+    private void start() throws IOException {
+        // /K instead of reading commands directly avoids the banner of cmd
+        final String[] cmdLine = windows ? new String[]{"cmd", "/D", "/Q", "/K", "echo off"}
+                : new String[]{"bash", "-s"};
+        process = Runtime.getRuntime().exec(cmdLine);
+        stdin = new OutputStreamWriter(process.getOutputStream(),
+                windows ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        final BufferedReader stderr = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8));
+        errorMarkers.clear();
+        errorReader = ThreadFactories.newThreadFactory("shell-session-stderr-%d").newThread(() -> readErrors(stderr));
+        errorReader.start();
+        LOG.debug("started shell session {}", (Object) cmdLine);
+    }
+
+    /**
+     * Split stderr of the shell at the markers until it exits.
+     *
+     * @param stderr stderr of the shell
+     */
+    private void readErrors(final BufferedReader stderr) {
+        try {
+            for (String line = stderr.readLine(); line != null; line = stderr.readLine()) {
+                final int index = line.indexOf(marker);
+                if (index < 0) {
+                    append(errorCapture, line);
+                } else {
+                    if (index > 0) {
+                        append(errorCapture, line.substring(0, index));
+                    }
+                    errorMarkers.add(Boolean.TRUE);
+                }
+            }
+        } catch (final IOException e) {
+            LOG.debug("reading stderr of the shell session failed", e);
+        }
+    }
+
+    /**
+     * Exit the shell. The session can be used again afterwards, it starts a new shell.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (process == null) {
+                return;
+            }
+            try {
+                stdin.close();
+            } catch (final IOException e) {
+                LOG.debug("closing stdin of the shell session failed", e);
+            }
+            process.destroy();
+            process = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
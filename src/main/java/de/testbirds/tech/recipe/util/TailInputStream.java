@@ -0,0 +1,96 @@
+package de.testbirds.tech.recipe.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream that remembers the last bytes that were read from it, e.g. to read the central directory at the end of
+ * a zip archive that is extracted while it is streamed.
+ *
+ * @author testbirds
+ */
+public final class TailInputStream extends FilterInputStream {
+
+    /**
+     * Ring buffer with the last bytes read.
+     */
+    private final byte[] ring;
+
+    /**
+     * Amount of bytes read in total.
+     */
+    private long count;
+
+    /**
+     * Wrap a stream.
+     *
+     * @param input    the stream
+     * @param tailSize the amount of bytes to remember
+     */
+    public TailInputStream(final InputStream input, final int tailSize) {
+        super(input);
+        this.ring = new byte[tailSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b > -1) {
+            ring[(int) (count % ring.length)] = (byte) b;
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = super.read(b, off, len);
+        for (int i = 0; i < read; ) {
+            final int position = (int) (count % ring.length);
+            final int chunk = Math.min(read - i, ring.length - position);
+            System.arraycopy(b, off + i, ring, position, chunk);
+            count += chunk;
+            i += chunk;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        // skipped bytes have to pass the ring buffer as well
+        final byte[] buffer = new byte[(int) Math.min(n, ring.length)];
+        final int read = read(buffer, 0, buffer.length);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return amount of bytes read in total
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the remembered bytes in the order they were read.
+     *
+     * @return buffer with the last bytes, at most the tail size
+     */
+    public ByteBuffer getTail() {
+        final int size = (int) Math.min(count, ring.length);
+        final byte[] tail = new byte[size];
+        final int start = (int) ((count - size) % ring.length);
+        final int first = Math.min(size, ring.length - start);
+        System.arraycopy(ring, start, tail, 0, first);
+        System.arraycopy(ring, 0, tail, first, size - first);
+        return ByteBuffer.wrap(tail);
+    }
+}
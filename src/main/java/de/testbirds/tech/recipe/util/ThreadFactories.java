@@ -0,0 +1,100 @@
+package de.testbirds.tech.recipe.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads installers, downloads and process pumps run on. If virtual threads are enabled with the system
+ * property {@value #VIRTUAL_THREADS_PROPERTY} and the JVM supports them (Java 21 or newer), every thread is a virtual
+ * thread, so blocking on HTTP transfers or processes does not hold a platform thread. Otherwise daemon platform threads
+ * are used. The library is compiled for Java 8, so virtual threads are created by reflection.
+ *
+ * @author testbirds
+ */
+public final class ThreadFactories {
+
+    /**
+     * System property that enables virtual threads.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "recipe.virtualThreads";
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadFactories.class);
+
+    /**
+     * Thread.ofVirtual(), null if the JVM has no virtual threads.
+     */
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+
+    /**
+     * Utility class which must not be instantiated.
+     */
+    private ThreadFactories() {
+    }
+
+    /**
+     * Check if virtual threads are used.
+     *
+     * @return true if they are enabled and supported by the JVM
+     */
+    public static boolean isVirtual() {
+        return OF_VIRTUAL != null && Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY);
+    }
+
+    /**
+     * Create a thread factory.
+     *
+     * @param nameFormat format of the thread names with a single %d for the number of the thread
+     * @return factory of virtual threads if they are used, otherwise of daemon threads
+     */
+    public static ThreadFactory newThreadFactory(final String nameFormat) {
+        if (isVirtual()) {
+            try {
+                return newVirtualThreadFactory(nameFormat.substring(0, nameFormat.indexOf("%d")));
+            } catch (final ReflectiveOperationException e) {
+                LOG.warn("can't create virtual threads, using platform threads", e);
+            }
+        }
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+
+    /**
+     * Create a factory of virtual threads, equal to Thread.ofVirtual().name(prefix, 0).factory().
+     *
+     * @param prefix prefix of the thread names
+     * @return the factory
+     * @throws ReflectiveOperationException If the API of the JVM is not as expected
+     */
+    private static ThreadFactory newVirtualThreadFactory(final String prefix) throws ReflectiveOperationException {
+        final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (final InvocationTargetException e) {
+            throw new ReflectiveOperationException(e.getCause());
+        }
+    }
+
+    /**
+     * Find a public method without parameters.
+     *
+     * @param type the class
+     * @param name the name of the method
+     * @return the method or null if it does not exist
+     */
+    private static Method findMethod(final Class<?> type, final String name) {
+        try {
+            return type.getMethod(name);
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package de.testbirds.tech.recipe;
+
+import de.testbirds.tech.recipe.base.ExecutionContext;
+import de.testbirds.tech.recipe.base.RecipeMethodDispatcher;
+import de.testbirds.tech.recipe.entity.Arch;
+import de.testbirds.tech.recipe.entity.OSFamily;
+import de.testbirds.tech.recipe.report.InvalidRecipeException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the {@link ConstantResolver}.
+ */
+public class ConstantResolverTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger probes = new AtomicInteger();
+
+    private final Startup startup = new Startup() {
+        @Override
+        public UUID getUUID() {
+            return UUID.randomUUID();
+        }
+
+        @Override
+        public OSFamily determineOSFamily() {
+            probes.incrementAndGet();
+            return OSFamily.WIN;
+        }
+
+        @Override
+        public Arch determineOSArch() {
+            probes.incrementAndGet();
+            return Arch.X86_64;
+        }
+
+        @Override
+        public String determineOSVersion() {
+            probes.incrementAndGet();
+            return "10.0";
+        }
+
+        @Override
+        public void reboot() {
+        }
+    };
+
+    @Test
+    public void constantsAreResolvedOncePerStartup() throws InvalidRecipeException {
+        final ConstantResolver resolver = ConstantResolver.of(startup);
+        assertSame(resolver, ConstantResolver.of(startup));
+
+        final String uuid = resolver.resolve(ConstantResolver.UUID);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("C:\\Users\\testbirds\\Desktop\\", resolver.resolve(ConstantResolver.DESKTOP));
+            assertEquals("C:\\Program Files (x86)\\", resolver.resolve("PROGRAM_FILES_X86"));
+            assertEquals(uuid, resolver.resolve(ConstantResolver.UUID));
+        }
+
+        // os family, version for DESKTOP and arch for PROGRAM_FILES_X86
+        assertEquals(3, probes.get());
+    }
+
+    @Test
+    public void tempDirIsTheTempDirectoryOfTheContext() throws Exception {
+        final File tempDirectory = folder.newFolder();
+        final ConstantResolver resolver = new ExecutionContext(startup, RecipeMethodDispatcher.create(), null,
+                tempDirectory).getConstants();
+
+        assertEquals(tempDirectory.getAbsolutePath() + File.separator, resolver.resolve(ConstantResolver.TEMP_DIR));
+        assertEquals(ConstantResolver.of(startup).resolve(ConstantResolver.UUID),
+                resolver.resolve(ConstantResolver.UUID));
+    }
+
+    @Test
+    public void providersAddConstants() throws InvalidRecipeException {
+        assertTrue(ConstantResolver.isConstant("ANSWER"));
+        assertEquals("42", ConstantResolver.of(startup).resolve("ANSWER"));
+        assertEquals("a 42", ParameterTemplate.compile("a {{ANSWER}}").render(new ParameterTemplate.Variables() {
+            @Override
+            public String getStackElement(final int index) {
+                return null;
+            }
+
+            @Override
+            public String getOutput(final boolean stdErr) {
+                return null;
+            }
+
+            @Override
+            public String getConstant(final String name) throws InvalidRecipeException {
+                return ConstantResolver.of(startup).resolve(name);
+            }
+        }));
+    }
+
+    /**
+     * registered in META-INF/services.
+     */
+    public static final class AnswerProvider implements ConstantProvider {
+        @Override
+        public Set<String> getNames() {
+            return Collections.singleton("ANSWER");
+        }
+
+        @Override
+        public String resolve(final String name, final Startup startup) {
+            return "42";
+        }
+    }
+}
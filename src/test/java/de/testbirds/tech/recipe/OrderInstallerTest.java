@@ -0,0 +1,223 @@
+package de.testbirds.tech.recipe;
+
+import de.testbirds.tech.recipe.base.CheckpointStore;
+import de.testbirds.tech.recipe.base.CleanUpJournal;
+import de.testbirds.tech.recipe.base.ExecutionContext;
+import de.testbirds.tech.recipe.base.RecipeMethodDispatcher;
+import de.testbirds.tech.recipe.base.StackElement;
+import de.testbirds.tech.recipe.entity.Arch;
+import de.testbirds.tech.recipe.entity.OSFamily;
+import de.testbirds.tech.recipe.entity.RecipeMethod;
+import de.testbirds.tech.recipe.entity.RecipeStep;
+import de.testbirds.tech.recipe.entity.SoftwareVersion;
+import de.testbirds.tech.recipe.report.InvalidRecipeException;
+import de.testbirds.tech.recipe.report.Reporter;
+import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the {@link OrderInstaller}.
+ */
+public class OrderInstallerTest {
+
+    private final Startup startup = new Startup() {
+        @Override
+        public UUID getUUID() {
+            return UUID.randomUUID();
+        }
+
+        @Override
+        public OSFamily determineOSFamily() {
+            return OSFamily.UBUNTU;
+        }
+
+        @Override
+        public Arch determineOSArch() {
+            return Arch.X86_64;
+        }
+
+        @Override
+        public String determineOSVersion() {
+            return "18.04";
+        }
+
+        @Override
+        public void reboot() {
+        }
+    };
+
+    /**
+     * records all SET parameters in the order they were executed.
+     */
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    private final Reporter reporter = new Reporter() {
+        @Override
+        public void report(final RecipeStep step, final StackElement result) {
+            if (step.getMethod() == RecipeMethod.SET) {
+                executed.add(result.getElem());
+            }
+        }
+    };
+
+    @Test
+    public void waitRunsAfterDependency() throws SoftwareInstallException {
+        final SoftwareVersion cert = new SoftwareVersion("cert", "1", Arch.X86,
+                new RecipeStep.Builder().add(RecipeMethod.SET, "before").add(RecipeMethod.WAIT, "firefox")
+                        .add(RecipeMethod.SET, "after").build(), "");
+        final SoftwareVersion firefox = new SoftwareVersion("firefox", "70", Arch.X86,
+                new RecipeStep.Builder().add(RecipeMethod.SET, "firefox").build(), "");
+
+        new OrderInstaller(startup, Arrays.asList(cert, firefox), 1, reporter).execute();
+
+        assertTrue(executed.indexOf("firefox") < executed.indexOf("after"));
+    }
+
+    @Test
+    public void waitForUnorderedSoftwareSkipsChildren() throws SoftwareInstallException {
+        final SoftwareVersion cert = new SoftwareVersion("cert", "1", Arch.X86,
+                new RecipeStep.Builder().add(RecipeMethod.WAIT, "firefox").add(RecipeMethod.SET, "skipped").pop()
+                        .pop().add(RecipeMethod.SET, "sibling").build(), "");
+
+        new OrderInstaller(startup, Collections.singletonList(cert), 2, reporter).execute();
+
+        assertThat(executed, not(hasItem("skipped")));
+        assertThat(executed, hasItem("sibling"));
+    }
+
+    @Test(expected = InvalidRecipeException.class)
+    public void cyclicWaitsAreRejected() throws SoftwareInstallException {
+        final SoftwareVersion a = new SoftwareVersion("a", "1", Arch.X86,
+                new RecipeStep.Builder().add(RecipeMethod.WAIT, "b").build(), "");
+        final SoftwareVersion b = new SoftwareVersion("b", "1", Arch.X86,
+                new RecipeStep.Builder().add(RecipeMethod.WAIT, "a").build(), "");
+
+        new OrderInstaller(startup, Arrays.asList(a, b));
+    }
+
+    @Test
+    public void installersUseTheTempDirectoryOfTheirContext() throws Exception {
+        final File tempDirectory = Files.createTempDirectory("context").toFile();
+        final ExecutionContext context = new ExecutionContext(startup, RecipeMethodDispatcher.create(), null,
+                tempDirectory);
+        final List<String> written = Collections.synchronizedList(new ArrayList<>());
+        final SoftwareVersion software = new SoftwareVersion("file", "1", Arch.X86,
+                new RecipeStep.Builder().add(RecipeMethod.TO_FILE, "content").build(), "");
+
+        new OrderInstaller(context, Collections.singletonList(software), 1, (step, result) -> {
+            if (step.getMethod() == RecipeMethod.TO_FILE) {
+                written.add(result.getElem());
+            }
+        }).execute();
+
+        assertTrue(written.get(0).startsWith(tempDirectory.getCanonicalPath()));
+        assertFalse(new File(written.get(0)).exists());
+        assertTrue(tempDirectory.delete());
+    }
+
+    @Test
+    public void failedInstallationsCleanUpTheirStack() throws Exception {
+        final File tempDirectory = Files.createTempDirectory("context").toFile();
+        final CleanUpJournal journal = CleanUpJournal.of(new File(tempDirectory, CleanUpJournal.DEFAULT_NAME));
+        final RecipeMethodDispatcher dispatcher = RecipeMethodDispatcher.create().withHandler(RecipeMethod.COMMAND,
+                (parameter, callback) -> {
+                    final CompletableFuture<StackElement> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(new SoftwareInstallException("broken"));
+                    return failed;
+                });
+        final ExecutionContext context = new ExecutionContext(startup, dispatcher, null, tempDirectory)
+                .withCleanUpJournal(journal);
+        final List<String> written = Collections.synchronizedList(new ArrayList<>());
+        final SoftwareVersion software = new SoftwareVersion("broken", "1", Arch.X86,
+                new RecipeStep.Builder().add(RecipeMethod.TO_FILE, "content").add(RecipeMethod.COMMAND, "run").build(),
+                "");
+
+        try {
+            new OrderInstaller(context, Collections.singletonList(software), 1, (step, result) -> {
+                if (step.getMethod() == RecipeMethod.TO_FILE) {
+                    written.add(result.getElem());
+                    assertTrue(journal.getFile().length() > 0);
+                }
+            }).execute();
+            fail("the broken recipe is installed");
+        } catch (final SoftwareInstallException e) {
+            assertFalse(new File(written.get(0)).exists());
+            assertEquals(0, journal.getFile().length());
+        }
+    }
+
+    @Test
+    public void repeatedInstallationsRestoreCheckpointedSteps() throws Exception {
+        final File tempDirectory = Files.createTempDirectory("context").toFile();
+        final File archive = new File(tempDirectory, "archive.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive.toPath()))) {
+            out.putNextEntry(new ZipEntry("file"));
+            out.closeEntry();
+        }
+        final AtomicInteger attempts = new AtomicInteger();
+        final RecipeMethodDispatcher dispatcher = RecipeMethodDispatcher.create().withHandler(RecipeMethod.COMMAND,
+                (parameter, callback) -> {
+                    final CompletableFuture<StackElement> result = new CompletableFuture<>();
+                    if (attempts.getAndIncrement() == 0) {
+                        result.completeExceptionally(new SoftwareInstallException("broken"));
+                    } else {
+                        result.complete(new StackElement("done"));
+                    }
+                    return result;
+                });
+        final ExecutionContext context = new ExecutionContext(startup, dispatcher, null, tempDirectory)
+                .withCleanUpJournal(CleanUpJournal.of(new File(tempDirectory, CleanUpJournal.DEFAULT_NAME)))
+                .withCheckpointStore(new CheckpointStore(new File(tempDirectory, "checkpoints")));
+        final List<String> extracted = Collections.synchronizedList(new ArrayList<>());
+        final SoftwareVersion software = new SoftwareVersion("flaky", "1", Arch.X86, new RecipeStep.Builder()
+                .add(RecipeMethod.UNZIP, "{{0}}").add(RecipeMethod.COMMAND, "run").build(), archive.getPath());
+        final Reporter unzipped = (step, result) -> {
+            if (step.getMethod() == RecipeMethod.UNZIP) {
+                extracted.add(result.getElem());
+            }
+        };
+
+        try {
+            new OrderInstaller(context, Collections.singletonList(software), 1, unzipped).execute();
+            fail("the broken recipe is installed");
+        } catch (final SoftwareInstallException e) {
+            assertTrue(new File(extracted.get(0), "file").exists());
+        }
+        new OrderInstaller(context, Collections.singletonList(software), 1, unzipped).execute();
+
+        assertEquals(extracted.get(0), extracted.get(1));
+        assertFalse(new File(extracted.get(0)).exists());
+        assertArrayEquals(new String[0], new File(tempDirectory, "checkpoints").list());
+    }
+
+    @Test(expected = SoftwareInstallException.class)
+    public void failedDependencyFailsWaitingSoftware() throws SoftwareInstallException {
+        final SoftwareVersion broken = new SoftwareVersion("broken", "1", Arch.X86,
+                new RecipeStep.Builder().add(RecipeMethod.SET, "{{5}}").build(), "");
+        final SoftwareVersion waiting = new SoftwareVersion("waiting", "1", Arch.X86,
+                new RecipeStep.Builder().add(RecipeMethod.WAIT, "broken").build(), "");
+
+        new OrderInstaller(startup, Arrays.asList(waiting, broken), 2, reporter).execute();
+    }
+}
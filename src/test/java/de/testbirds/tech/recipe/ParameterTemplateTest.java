@@ -0,0 +1,50 @@
+package de.testbirds.tech.recipe;
+
+import de.testbirds.tech.recipe.report.InvalidRecipeException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for the {@link ParameterTemplate}.
+ */
+public class ParameterTemplateTest {
+
+    private final ParameterTemplate.Variables variables = new ParameterTemplate.Variables() {
+        @Override
+        public String getStackElement(final int index) {
+            return index == 0 ? "top" : index == 1 ? "second" : null;
+        }
+
+        @Override
+        public String getOutput(final boolean stdErr) {
+            return stdErr ? "err" : "out";
+        }
+
+        @Override
+        public String getConstant(final String name) {
+            return "<" + name + ">";
+        }
+    };
+
+    @Test
+    public void variablesAreReplaced() throws InvalidRecipeException {
+        assertEquals("cp top second/out err <DELIMITER>",
+                ParameterTemplate.compile("cp {{0}} {{1}}/{{STD_OUT}} {{STD_ERR}} {{DELIMITER}}").render(variables));
+    }
+
+    @Test
+    public void unknownVariablesStayAsTheyAre() throws InvalidRecipeException {
+        assertEquals("{{UNKNOWN}} {{}} {top} {{-1}} {{0",
+                ParameterTemplate.compile("{{UNKNOWN}} {{}} {{{0}}} {{-1}} {{0").render(variables));
+    }
+
+    @Test
+    public void unknownValuesRenderToNull() throws InvalidRecipeException {
+        final ParameterTemplate template = ParameterTemplate.compile("{{2}}");
+
+        assertNull(template.render(variables));
+        assertEquals(3, template.getRequiredStackSize());
+    }
+}
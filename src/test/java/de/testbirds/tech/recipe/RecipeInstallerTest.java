@@ -0,0 +1,81 @@
+package de.testbirds.tech.recipe;
+
+import de.testbirds.tech.recipe.base.ExecutionContext;
+import de.testbirds.tech.recipe.base.RecipeMethodDispatcher;
+import de.testbirds.tech.recipe.base.StackElement;
+import de.testbirds.tech.recipe.entity.Arch;
+import de.testbirds.tech.recipe.entity.OSFamily;
+import de.testbirds.tech.recipe.entity.RecipeMethod;
+import de.testbirds.tech.recipe.entity.RecipeStep;
+import de.testbirds.tech.recipe.entity.SoftwareVersion;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for the {@link RecipeInstaller}.
+ */
+public class RecipeInstallerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Startup startup = new Startup() {
+        @Override
+        public UUID getUUID() {
+            return UUID.randomUUID();
+        }
+
+        @Override
+        public OSFamily determineOSFamily() {
+            return OSFamily.UBUNTU;
+        }
+
+        @Override
+        public Arch determineOSArch() {
+            return Arch.X86_64;
+        }
+
+        @Override
+        public String determineOSVersion() {
+            return "18.04";
+        }
+
+        @Override
+        public void reboot() {
+        }
+    };
+
+    @Test
+    public void lookAheadSkipsDownloadsWithUnresolvedParameters() throws Exception {
+        final String known = folder.newFile("known.zip").toURI().toString();
+        final String computed = folder.newFile("computed.zip").toURI().toString();
+        final List<Boolean> prefetched = Collections.synchronizedList(new ArrayList<>());
+        // the result of the COMMAND step is only known at runtime, the DOWNLOAD of {{0}} depends on it
+        final RecipeMethodDispatcher dispatcher = RecipeMethodDispatcher.create().withHandler(RecipeMethod.COMMAND,
+                (parameter, callback) -> {
+                    prefetched.add(callback.getDownloadPrefetcher().contains(known));
+                    prefetched.add(callback.getDownloadPrefetcher().contains(null));
+                    return CompletableFuture.completedFuture(new StackElement(computed));
+                });
+        final ExecutionContext context = new ExecutionContext(startup, dispatcher, null, folder.newFolder());
+        final SoftwareVersion software = new SoftwareVersion("prefetched", "1", Arch.X86, new RecipeStep.Builder()
+                .add(RecipeMethod.COMMAND, "compute").add(RecipeMethod.DOWNLOAD, "{{0}}").pop().pop()
+                .add(RecipeMethod.DOWNLOAD, known).build(), "");
+
+        new RecipeInstaller(context, software, (step, result) -> {
+        }).execute();
+
+        assertThat(prefetched, equalTo(Arrays.asList(true, false)));
+    }
+}
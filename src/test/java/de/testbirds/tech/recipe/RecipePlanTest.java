@@ -0,0 +1,45 @@
+package de.testbirds.tech.recipe;
+
+import de.testbirds.tech.recipe.entity.RecipeMethod;
+import de.testbirds.tech.recipe.entity.RecipeStep;
+import de.testbirds.tech.recipe.report.InvalidRecipeException;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests for the {@link RecipePlan}.
+ */
+public class RecipePlanTest {
+
+    @Test
+    public void childrenEndAtTheirClosingPop() throws InvalidRecipeException {
+        final List<RecipeStep> steps = new RecipeStep.Builder().add(RecipeMethod.DOWNLOAD, "{{0}}")
+                .add(RecipeMethod.UNZIP, "{{0}}").cmd("ls {{0}}").pop().pop().pop().pop()
+                .add(RecipeMethod.SET, "{{1}}").build();
+
+        final RecipePlan plan = RecipePlan.compile(steps);
+
+        assertEquals(5, plan.getChildrenEnd(0));
+        assertEquals(4, plan.getChildrenEnd(1));
+        assertEquals(3, plan.getChildrenEnd(2));
+        assertEquals(-1, plan.getDepth(7));
+        // SET needs two elements after the recipe popped one more than it pushed
+        assertEquals(3, plan.getRequiredStackSize());
+    }
+
+    @Test
+    public void plansAreSharedPerRecipe() throws InvalidRecipeException {
+        final List<RecipeStep> steps = new RecipeStep.Builder().add(RecipeMethod.SET, "a").build();
+
+        assertSame(RecipePlan.of(steps), RecipePlan.of(steps));
+    }
+
+    @Test(expected = InvalidRecipeException.class)
+    public void stepsWithoutParameterAreRejected() throws InvalidRecipeException {
+        RecipePlan.compile(new RecipeStep.Builder().add(RecipeMethod.SET, null).build());
+    }
+}
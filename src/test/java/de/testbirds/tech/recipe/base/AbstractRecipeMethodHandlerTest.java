@@ -0,0 +1,58 @@
+package de.testbirds.tech.recipe.base;
+
+import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the adapters between synchronous and asynchronous handlers.
+ */
+public class AbstractRecipeMethodHandlerTest {
+
+    @Test
+    public void synchronousHandlersCompleteAtOnce() throws Exception {
+        final SoftwareInstallException failure = new SoftwareInstallException("broken");
+        final AbstractRecipeMethodHandler handler = new AbstractRecipeMethodHandler() {
+            @Override
+            public StackElement handle(final String parameter, final Installer callback)
+                    throws SoftwareInstallException {
+                if (parameter.isEmpty()) {
+                    throw failure;
+                }
+                return new StackElement(parameter);
+            }
+        };
+
+        final CompletableFuture<StackElement> done = handler.handleAsync("a", null).toCompletableFuture();
+        assertTrue(done.isDone());
+        assertEquals("a", done.get().getElem());
+        final CompletableFuture<StackElement> failed = handler.handleAsync("", null).toCompletableFuture();
+        assertTrue(failed.isCompletedExceptionally());
+        try {
+            AbstractRecipeMethodHandler.await(failed);
+            fail("the failure of the handler is not thrown");
+        } catch (final SoftwareInstallException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void asynchronousHandlersAreAwaited() throws Exception {
+        final CompletableFuture<StackElement> pending = new CompletableFuture<>();
+        final AbstractRecipeMethodHandler handler = AbstractRecipeMethodHandler.of(
+                (parameter, callback) -> pending.thenApply(element -> new StackElement(parameter + element.getElem())));
+
+        final CompletionStage<StackElement> stage = handler.handleAsync("a", null);
+        new Thread(() -> pending.complete(new StackElement("b"))).start();
+
+        assertEquals("ab", AbstractRecipeMethodHandler.await(stage).getElem());
+        assertEquals("ab", handler.handle("a", null).getElem());
+    }
+}
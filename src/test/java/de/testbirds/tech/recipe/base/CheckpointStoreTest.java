@@ -0,0 +1,112 @@
+package de.testbirds.tech.recipe.base;
+
+import de.testbirds.tech.recipe.entity.Arch;
+import de.testbirds.tech.recipe.entity.RecipeMethod;
+import de.testbirds.tech.recipe.entity.RecipeStep;
+import de.testbirds.tech.recipe.entity.SoftwareVersion;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the {@link CheckpointStore}.
+ */
+public class CheckpointStoreTest {
+
+    private final SoftwareVersion software = new SoftwareVersion("checkpointed", "1", Arch.X86,
+            new RecipeStep.Builder().add(RecipeMethod.UNZIP, "{{0}}").build(), "");
+
+    @Test
+    public void resultsAreRestoredWhileTheirFilesExist() throws Exception {
+        final File directory = Files.createTempDirectory("checkpoints").toFile();
+        final Path extracted = Files.createTempDirectory("extracted");
+        final String fingerprint = CheckpointStore.fingerprint(RecipeMethod.UNZIP, "archive.zip");
+        new CheckpointStore(directory).record(software, 0, fingerprint, new StackElement(extracted.toString(),
+                new CleanUpOperation(CleanUpOperation.Type.DELETE, extracted.toString())));
+
+        final CheckpointStore store = new CheckpointStore(directory);
+        assertEquals(extracted.toString(), store.restore(software, 0, fingerprint).getElem());
+        assertNull(store.restore(software, 1, fingerprint));
+        assertNull(store.restore(software, 0, CheckpointStore.fingerprint(RecipeMethod.UNZIP, "other.zip")));
+        Files.delete(extracted);
+        assertNull(store.restore(software, 0, fingerprint));
+    }
+
+    @Test
+    public void clearDeletesTheFilesThatAreLeft() throws Exception {
+        final File directory = Files.createTempDirectory("checkpoints").toFile();
+        final Path extracted = Files.createTempDirectory("extracted");
+        final CheckpointStore store = new CheckpointStore(directory);
+        assertTrue(store.record(software, 0, "fingerprint", new StackElement(extracted.toString(),
+                new CleanUpOperation(CleanUpOperation.Type.DELETE, extracted.toString()))));
+        assertFalse(store.record(software, 1, "fingerprint", new StackElement("/dev/disk2",
+                new CleanUpOperation(CleanUpOperation.Type.UNMOUNT_DMG, "/dev/disk2"))));
+
+        store.clear(software);
+
+        assertFalse(Files.exists(extracted));
+        assertArrayEquals(new String[0], directory.list());
+    }
+
+    @Test
+    public void installingAnotherVersionDropsTheCheckpointsOfTheOld() throws Exception {
+        final File directory = Files.createTempDirectory("checkpoints").toFile();
+        final Path extracted = Files.createTempDirectory("extracted");
+        final CheckpointStore store = new CheckpointStore(directory);
+        store.record(software, 0, "fingerprint", new StackElement(extracted.toString(),
+                new CleanUpOperation(CleanUpOperation.Type.DELETE, extracted.toString())));
+
+        store.clear(new SoftwareVersion("checkpointed", "2", Arch.X86, software.getSteps(), ""));
+
+        assertFalse(Files.exists(extracted));
+        assertArrayEquals(new String[0], directory.list());
+    }
+
+    @Test
+    public void versionsWithoutSlugAreCheckpointed() throws Exception {
+        final File directory = Files.createTempDirectory("checkpoints").toFile();
+        final Path extracted = Files.createTempDirectory("extracted");
+        final Path other = Files.createTempDirectory("extracted");
+        final SoftwareVersion unnamed = new SoftwareVersion("1", Arch.X86, software.getSteps(), "");
+        final CheckpointStore store = new CheckpointStore(directory);
+        assertTrue(store.record(unnamed, 0, "fingerprint", new StackElement(extracted.toString(),
+                new CleanUpOperation(CleanUpOperation.Type.DELETE, extracted.toString()))));
+        store.record(software, 0, "fingerprint", new StackElement(other.toString(),
+                new CleanUpOperation(CleanUpOperation.Type.DELETE, other.toString())));
+
+        assertEquals(extracted.toString(), new CheckpointStore(directory).restore(unnamed, 0, "fingerprint")
+                .getElem());
+        store.clear(unnamed);
+        store.clear(new SoftwareVersion("2", Arch.X86, software.getSteps(), ""));
+
+        assertFalse(Files.exists(extracted));
+        assertTrue(Files.exists(other));
+        assertEquals(1, directory.list().length);
+    }
+
+    @Test
+    public void expiredCheckpointsAreDroppedWhenTheStoreIsCreated() throws Exception {
+        final File directory = Files.createTempDirectory("checkpoints").toFile();
+        final Path extracted = Files.createTempDirectory("extracted");
+        new CheckpointStore(directory).record(software, 0, "fingerprint", new StackElement(extracted.toString(),
+                new CleanUpOperation(CleanUpOperation.Type.DELETE, extracted.toString())));
+
+        new CheckpointStore(directory);
+        assertTrue(Files.exists(extracted));
+        for (final File file : directory.listFiles()) {
+            assertTrue(file.setLastModified(System.currentTimeMillis() - CheckpointStore.DEFAULT_MAX_AGE - 1000));
+        }
+        new CheckpointStore(directory);
+
+        assertFalse(Files.exists(extracted));
+        assertArrayEquals(new String[0], directory.list());
+    }
+}
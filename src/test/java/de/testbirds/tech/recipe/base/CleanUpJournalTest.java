@@ -0,0 +1,56 @@
+package de.testbirds.tech.recipe.base;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the {@link CleanUpJournal}.
+ */
+public class CleanUpJournalTest {
+
+    @Test
+    public void leftoversAreCleanedUpWhenTheJournalIsOpened() throws Exception {
+        final File directory = Files.createTempDirectory("journal").toFile();
+        final File leftover = new File(directory, "left over");
+        final File done = new File(directory, "done");
+        assertTrue(leftover.createNewFile());
+        assertTrue(done.createNewFile());
+        final File file = new File(directory, CleanUpJournal.DEFAULT_NAME);
+        Files.write(file.toPath(), Arrays.asList(
+                "+ 0 DELETE " + leftover.getPath().replace(" ", "+"),
+                "+ 1 DELETE " + done.getPath(),
+                "- 1",
+                "+ 2 DEL"), StandardCharsets.UTF_8);
+
+        CleanUpJournal.of(file);
+
+        assertFalse(leftover.exists());
+        assertTrue(done.exists());
+        assertEquals(0, file.length());
+    }
+
+    @Test
+    public void completedOperationsAreRemoved() throws Exception {
+        final File file = new File(Files.createTempDirectory("journal").toFile(), CleanUpJournal.DEFAULT_NAME);
+        final CleanUpJournal journal = CleanUpJournal.of(file);
+        final CleanUpOperation first = new CleanUpOperation(CleanUpOperation.Type.DELETE, "/tmp/first\nline");
+        final CleanUpOperation second = new CleanUpOperation(CleanUpOperation.Type.UNMOUNT_DMG, "/Volumes/second");
+
+        journal.record(first);
+        journal.record(second);
+        journal.complete(first);
+
+        assertEquals(Arrays.asList("+ 0 DELETE %2Ftmp%2Ffirst%0Aline", "+ 1 UNMOUNT_DMG %2FVolumes%2Fsecond", "- 0"),
+                Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        journal.complete(second);
+        assertEquals(0, file.length());
+    }
+}
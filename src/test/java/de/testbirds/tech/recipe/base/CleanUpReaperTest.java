@@ -0,0 +1,41 @@
+package de.testbirds.tech.recipe.base;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit tests for the {@link CleanUpReaper}.
+ */
+public class CleanUpReaperTest {
+
+    @Test
+    public void deletedPathsAreFreeBeforeTheyAreDeleted() throws Exception {
+        final Path directory = Files.createTempDirectory("reaper");
+        final Path tree = Files.createDirectories(directory.resolve("tree"));
+        for (int i = 0; i < 20; i++) {
+            final Path sub = Files.createDirectories(tree.resolve("sub" + i).resolve("deeper"));
+            Files.write(sub.resolve("file"), new byte[]{1, 2, 3});
+            Files.write(tree.resolve("file" + i), new byte[]{4});
+        }
+        final File journalFile = new File(Files.createTempDirectory("journal").toFile(), CleanUpJournal.DEFAULT_NAME);
+        final CleanUpJournal journal = CleanUpJournal.of(journalFile);
+        final CleanUpOperation delete = new CleanUpOperation(CleanUpOperation.Type.DELETE, tree.toString());
+        journal.record(delete);
+        final CleanUpReaper reaper = new CleanUpReaper(journal);
+
+        reaper.cleanUp(delete);
+        assertFalse(Files.exists(tree));
+        reaper.cleanUp(new CleanUpOperation(CleanUpOperation.Type.DELETE, tree.resolve("missing").toString()));
+        reaper.flush();
+
+        assertArrayEquals(new String[0], directory.toFile().list());
+        assertEquals(0, journalFile.length());
+    }
+}
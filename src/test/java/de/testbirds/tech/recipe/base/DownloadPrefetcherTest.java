@@ -0,0 +1,74 @@
+package de.testbirds.tech.recipe.base;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the {@link DownloadPrefetcher}.
+ */
+public class DownloadPrefetcherTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void claimTakesOverThePrefetchedDownload() {
+        final DownloadPrefetcher prefetcher = new DownloadPrefetcher(2);
+        final CompletableFuture<File> download = new CompletableFuture<>();
+
+        prefetcher.prefetch("http://example.com/a.zip", () -> download);
+
+        assertTrue(prefetcher.contains("http://example.com/a.zip"));
+        assertSame(download, prefetcher.claim("http://example.com/a.zip"));
+        assertFalse(prefetcher.contains("http://example.com/a.zip"));
+        assertNull(prefetcher.claim("http://example.com/a.zip"));
+        assertNull(prefetcher.claim("http://example.com/b.zip"));
+    }
+
+    @Test
+    public void noMoreThanTheLimitArePrefetched() {
+        final DownloadPrefetcher prefetcher = new DownloadPrefetcher(2);
+        final AtomicInteger started = new AtomicInteger();
+
+        for (final String parameter : new String[]{"a", "a", "b", "c"}) {
+            prefetcher.prefetch(parameter, () -> {
+                started.incrementAndGet();
+                return new CompletableFuture<>();
+            });
+        }
+
+        assertEquals(2, started.get());
+        assertTrue(prefetcher.isFull());
+        assertFalse(prefetcher.contains("c"));
+        prefetcher.claim("a");
+        assertFalse(prefetcher.isFull());
+    }
+
+    @Test
+    public void closeCancelsRunningDownloadsAndDeletesFinishedOnes() throws IOException {
+        final DownloadPrefetcher prefetcher = new DownloadPrefetcher(2);
+        final CompletableFuture<File> running = new CompletableFuture<>();
+        final File finished = folder.newFile();
+        prefetcher.prefetch("running", () -> running);
+        prefetcher.prefetch("finished", () -> CompletableFuture.completedFuture(finished));
+
+        prefetcher.close();
+
+        assertTrue(running.isCancelled());
+        assertFalse(finished.exists());
+        assertFalse(prefetcher.contains("running"));
+        assertFalse(prefetcher.contains("finished"));
+    }
+}
@@ -0,0 +1,47 @@
+package de.testbirds.tech.recipe.base;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for the {@link FrameStack}.
+ */
+public class FrameStackTest {
+
+    @Test
+    public void elementsAreAddressedFromTheTop() {
+        final FrameStack stack = new FrameStack();
+        final List<StackElement> view = stack.view();
+        for (int i = 0; i < 100; i++) {
+            stack.push(new StackElement(Integer.toString(i)));
+        }
+
+        assertEquals("99", stack.peek().getElem());
+        assertEquals("97", stack.peek(2).getElem());
+        assertEquals(100, view.size());
+        assertEquals("0", view.get(0).getElem());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void viewIsReadOnly() {
+        new FrameStack().view().add(new StackElement("a"));
+    }
+
+    @Test
+    public void restoreRemovesElementsPushedAfterSnapshot() {
+        final FrameStack stack = new FrameStack();
+        stack.push(new StackElement("a"));
+        final int snapshot = stack.snapshot();
+        stack.push(new StackElement("b"));
+        stack.push(new StackElement("c"));
+
+        final List<StackElement> removed = stack.restore(snapshot);
+
+        assertEquals(2, removed.size());
+        assertEquals("c", removed.get(0).getElem());
+        assertEquals("a", stack.peek().getElem());
+    }
+}
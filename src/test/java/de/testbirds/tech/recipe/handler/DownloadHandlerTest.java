@@ -0,0 +1,209 @@
+package de.testbirds.tech.recipe.handler;
+
+import de.testbirds.tech.recipe.Startup;
+import de.testbirds.tech.recipe.base.DownloadPrefetcher;
+import de.testbirds.tech.recipe.base.ExecutionContext;
+import de.testbirds.tech.recipe.base.Installer;
+import de.testbirds.tech.recipe.base.RecipeMethodDispatcher;
+import de.testbirds.tech.recipe.base.StackElement;
+import de.testbirds.tech.recipe.entity.Arch;
+import de.testbirds.tech.recipe.entity.OSFamily;
+import de.testbirds.tech.recipe.entity.RecipeStep;
+import de.testbirds.tech.recipe.entity.SoftwareVersion;
+import de.testbirds.tech.recipe.report.Reporter;
+import de.testbirds.tech.recipe.report.SoftwareInstallException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Stack;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit tests for the {@link DownloadHandler}.
+ */
+public class DownloadHandlerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * an installer that only implements the methods the interface had before it got a context, a prefetcher, a shell
+     * session and the current step.
+     */
+    private static final class LegacyInstaller implements Installer {
+
+        @Override
+        public String getAdditionalParameter() {
+            return null;
+        }
+
+        @Override
+        public String[] getAdditionalParameters(final int number) {
+            return new String[number];
+        }
+
+        @Override
+        public Queue<RecipeStep> getChildren() {
+            return new LinkedList<>();
+        }
+
+        @Override
+        public Stack<StackElement> getStack() {
+            return new Stack<>();
+        }
+
+        @Override
+        public Startup getStartup() {
+            return new Startup() {
+                @Override
+                public UUID getUUID() {
+                    return UUID.randomUUID();
+                }
+
+                @Override
+                public OSFamily determineOSFamily() {
+                    return OSFamily.UBUNTU;
+                }
+
+                @Override
+                public Arch determineOSArch() {
+                    return Arch.X86_64;
+                }
+
+                @Override
+                public String determineOSVersion() {
+                    return "18.04";
+                }
+
+                @Override
+                public void reboot() {
+                }
+            };
+        }
+
+        @Override
+        public void insert(final List<RecipeStep> steps) {
+        }
+
+        @Override
+        public Reporter getReporter() {
+            return null;
+        }
+
+        @Override
+        public SoftwareVersion getSoftware() {
+            return null;
+        }
+    }
+
+    @Test
+    public void downloadsWithoutPrefetcher() throws IOException, SoftwareInstallException {
+        final File source = folder.newFile();
+        Files.write(source.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+
+        final StackElement result = new DownloadHandler().handle(source.toURI().toString(), new LegacyInstaller());
+
+        try {
+            assertThat(new String(Files.readAllBytes(new File(result.getElem()).toPath()), StandardCharsets.UTF_8),
+                    equalTo("content"));
+        } finally {
+            result.getCleanUp().cleanUp();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void closingThePrefetcherDeletesThePartialDownload() throws Exception {
+        final File tempDirectory = folder.newFolder();
+        final ExecutionContext context = new ExecutionContext(new LegacyInstaller().getStartup(),
+                RecipeMethodDispatcher.create(), null, tempDirectory);
+        final DownloadPrefetcher prefetcher = new DownloadPrefetcher(1);
+        try (ServerSocket server = stallingServer()) {
+            final String url = "http://127.0.0.1:" + server.getLocalPort() + "/archive.zip";
+            prefetcher.prefetch(url, () -> new DownloadHandler().fetchAsync(url, context));
+            final File partial = tempDirectory.listFiles()[0];
+            while (partial.length() == 0) {
+                Thread.sleep(10);
+            }
+
+            prefetcher.close();
+
+            while (partial.exists()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    /**
+     * start a server that announces a large body, sends its first bytes and then stalls until the client goes away.
+     *
+     * @return the server socket, closing it stops the server
+     * @throws IOException the server can't be started
+     */
+    private static ServerSocket stallingServer() throws IOException {
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    final Socket connection = server.accept();
+                    final Thread handler = new Thread(() -> stall(connection), "stalling-server-connection");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (final IOException e) {
+                    return;
+                }
+            }
+        }, "stalling-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    /**
+     * answer a request of the stalling server.
+     *
+     * @param connection the connection
+     */
+    private static void stall(final Socket connection) {
+        try (Socket closed = connection) {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(closed.getInputStream(),
+                    StandardCharsets.ISO_8859_1));
+            final String requestLine = in.readLine();
+            for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+                // the headers are not needed
+            }
+            final OutputStream out = closed.getOutputStream();
+            out.write(("HTTP/1.1 200 OK\r\nContent-Length: 10000000\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            if (requestLine != null && requestLine.startsWith("GET")) {
+                out.write(new byte[1000]);
+                out.flush();
+                // until the client aborts
+                while (in.read() >= 0) {
+                    Thread.sleep(10);
+                }
+            }
+            out.flush();
+        } catch (final IOException e) {
+            // the client went away
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
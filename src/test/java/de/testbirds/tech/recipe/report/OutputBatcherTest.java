@@ -0,0 +1,127 @@
+package de.testbirds.tech.recipe.report;
+
+import de.testbirds.tech.recipe.base.StackElement;
+import de.testbirds.tech.recipe.entity.RecipeMethod;
+import de.testbirds.tech.recipe.entity.RecipeStep;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the {@link OutputBatcher}.
+ */
+public class OutputBatcherTest {
+
+    private final RecipeStep step = new RecipeStep(RecipeMethod.COMMAND, "make install");
+
+    @Test
+    public void outputIsDeliveredInBatches() {
+        final List<String> reported = Collections.synchronizedList(new ArrayList<>());
+        final StreamingReporter reporter = new TestReporter() {
+            @Override
+            public void reportOutput(final RecipeStep running, final boolean stdErr, final String output) {
+                reported.add((stdErr ? "err:" : "out:") + output);
+            }
+        };
+
+        final OutputBatcher batcher = new OutputBatcher(reporter, step, 60000L, 1024);
+        batcher.getStdOut().accept("a\n");
+        batcher.getStdOut().accept("b\n");
+        batcher.getStdErr().accept("c\n");
+        batcher.close();
+
+        assertEquals(2, reported.size());
+        assertTrue(reported.contains("out:a\nb\n"));
+        assertTrue(reported.contains("err:c\n"));
+    }
+
+    @Test
+    public void slowReporterDropsOldOutput() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> reported = Collections.synchronizedList(new ArrayList<>());
+        final StreamingReporter reporter = new TestReporter() {
+            @Override
+            public void reportOutput(final RecipeStep running, final boolean stdErr, final String output) {
+                reported.add(output);
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        final OutputBatcher batcher = new OutputBatcher(reporter, step, 1L, 10);
+        batcher.getStdOut().accept("first\n");
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        // the reporter is stuck, adding output must not block
+        for (int i = 0; i < 1000; i++) {
+            batcher.getStdOut().accept("line " + i + "\n");
+        }
+        release.countDown();
+        batcher.close();
+
+        final String last = reported.get(reported.size() - 1);
+        assertThat(last, startsWith("[... "));
+        assertThat(last, containsString("line 999\n"));
+    }
+
+    @Test
+    public void slowReporterDoesNotDelayOtherBatchers() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final StreamingReporter slow = new TestReporter() {
+            @Override
+            public void reportOutput(final RecipeStep running, final boolean stdErr, final String output) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final StreamingReporter fast = new TestReporter() {
+            @Override
+            public void reportOutput(final RecipeStep running, final boolean stdErr, final String output) {
+                delivered.countDown();
+            }
+        };
+
+        final OutputBatcher stuck = new OutputBatcher(slow, step, 1L, 1024);
+        stuck.getStdOut().accept("stuck\n");
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        final OutputBatcher other = new OutputBatcher(fast, step, 1L, 1024);
+        other.getStdOut().accept("other\n");
+
+        try {
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            stuck.close();
+            other.close();
+        }
+    }
+
+    /**
+     * ignores the results of finished steps.
+     */
+    private abstract static class TestReporter implements StreamingReporter {
+        @Override
+        public void report(final RecipeStep running, final StackElement result) {
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package de.testbirds.tech.recipe.util;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the {@link ArchiveExtractor}.
+ */
+public class ArchiveExtractorTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Write a ustar header followed by the padded content.
+     *
+     * @param out     the archive
+     * @param name    the entry name
+     * @param type    the entry type
+     * @param mode    the unix mode
+     * @param content the content
+     * @throws IOException If an I/O error occurs
+     */
+    private static void writeEntry(final OutputStream out, final String name, final char type, final int mode,
+                                   final byte[] content) throws IOException {
+        writeEntry(out, name, type, mode, content, "");
+    }
+
+    /**
+     * Write a ustar header with a link name followed by the padded content.
+     *
+     * @param out     the archive
+     * @param name    the entry name
+     * @param type    the entry type
+     * @param mode    the unix mode
+     * @param content the content
+     * @param link    the link name
+     * @throws IOException If an I/O error occurs
+     */
+    private static void writeEntry(final OutputStream out, final String name, final char type, final int mode,
+                                   final byte[] content, final String link) throws IOException {
+        final byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 157, link);
+        put(header, 100, String.format("%07o", mode));
+        put(header, 124, String.format("%011o", content.length));
+        put(header, 136, String.format("%011o", 0));
+        put(header, 148, "        ");
+        header[156] = (byte) type;
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        int sum = 0;
+        for (final byte b : header) {
+            sum += b & 0xFF;
+        }
+        put(header, 148, String.format("%06o", sum));
+        header[154] = 0;
+        out.write(header);
+        out.write(content);
+        out.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static void put(final byte[] header, final int offset, final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    /**
+     * Create a tar.gz archive with a directory and an executable file.
+     *
+     * @param name the name of the file
+     * @return the archive
+     * @throws IOException If an I/O error occurs
+     */
+    private File tarGz(final String name) throws IOException {
+        final File archive = folder.newFile();
+        writeTar(new GZIPOutputStream(Files.newOutputStream(archive.toPath())), name);
+        return archive;
+    }
+
+    /**
+     * Write a tar archive with a directory and an executable file.
+     *
+     * @param out  the compressed archive (will be closed)
+     * @param name the name of the file
+     * @throws IOException If an I/O error occurs
+     */
+    private static void writeTar(final OutputStream out, final String name) throws IOException {
+        try (OutputStream closed = out) {
+            writeEntry(closed, "bin/", '5', 0755, new byte[0]);
+            writeEntry(closed, name, '0', 0750, "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+            closed.write(new byte[1024]);
+        }
+    }
+
+    @Test
+    public void extractsTarGz() throws IOException {
+        final File target = new File(folder.getRoot(), "out");
+
+        ArchiveExtractor.extract(tarGz("bin/run.sh"), target.getPath(), folder.newFile());
+
+        assertThat(FileUtils.readFileToString(new File(target, "bin/run.sh")), equalTo("#!/bin/sh\n"));
+        assertTrue(new File(target, "bin/run.sh").canExecute());
+    }
+
+    @Test
+    public void extractsTarXz() throws IOException {
+        final File archive = folder.newFile();
+        writeTar(new XZOutputStream(Files.newOutputStream(archive.toPath()), new LZMA2Options()), "bin/run.sh");
+        final File target = new File(folder.getRoot(), "out");
+
+        ArchiveExtractor.extract(archive, target.getPath(), folder.newFile());
+
+        assertThat(FileUtils.readFileToString(new File(target, "bin/run.sh")), equalTo("#!/bin/sh\n"));
+    }
+
+    @Test
+    public void extractsTarZst() throws IOException {
+        final File archive = folder.newFile();
+        writeTar(new ZstdOutputStream(Files.newOutputStream(archive.toPath())), "bin/run.sh");
+        final File target = new File(folder.getRoot(), "out");
+
+        ArchiveExtractor.extract(archive, target.getPath(), folder.newFile());
+
+        assertThat(FileUtils.readFileToString(new File(target, "bin/run.sh")), equalTo("#!/bin/sh\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsEntriesOutsideOfTarget() throws IOException {
+        ArchiveExtractor.extract(tarGz("../evil.sh"), new File(folder.getRoot(), "out").getPath(), folder.newFile());
+    }
+
+    @Test
+    public void doesNotCreateDirectoriesThroughLinks() throws IOException {
+        final File outside = folder.newFolder("outside");
+        final File archive = folder.newFile();
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive.toPath()))) {
+            writeEntry(out, "escape", '2', 0777, new byte[0], outside.getAbsolutePath());
+            writeEntry(out, "escape/sub/link", '2', 0777, new byte[0], "run.sh");
+            out.write(new byte[1024]);
+        }
+
+        try {
+            ArchiveExtractor.extract(archive, new File(folder.getRoot(), "out").getPath(), folder.newFile());
+            fail("a link below a link to the outside was created");
+        } catch (final IOException e) {
+            assertFalse(new File(outside, "sub").exists());
+        }
+    }
+}
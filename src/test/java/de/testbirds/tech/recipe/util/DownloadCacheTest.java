@@ -0,0 +1,128 @@
+package de.testbirds.tech.recipe.util;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the {@link DownloadCache}.
+ */
+public class DownloadCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final HttpClient client = new HttpClient();
+
+    private RangeServer server;
+
+    @Before
+    public void start() throws Exception {
+        client.start();
+        server = new RangeServer("served".getBytes(StandardCharsets.UTF_8), "\"v1\"");
+    }
+
+    @After
+    public void stop() throws Exception {
+        server.close();
+        client.stop();
+    }
+
+    /**
+     * Create a downloaded file.
+     *
+     * @param content the content
+     * @return the file
+     * @throws IOException If the file can't be written
+     */
+    private File download(final String content) throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Get the URL of another file of the server.
+     *
+     * @param name the name
+     * @return the URL
+     * @throws IOException If the URL is invalid
+     */
+    private URL url(final String name) throws IOException {
+        return new URL(server.getURL(), name);
+    }
+
+    @Test
+    public void unchangedContentIsHandedOutAsCopy() throws IOException {
+        final DownloadCache cache = new DownloadCache(folder.newFolder(), 1024);
+        final File target = folder.newFile();
+        assertFalse(cache.lookup(client, url("a"), target));
+
+        final File downloaded = download("cached");
+        cache.store(url("a"), downloaded, "\"v1\"", null);
+        // later steps change their download, the cache keeps the original
+        Files.write(downloaded.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(cache.lookup(client, url("a"), target));
+        assertThat(FileUtils.readFileToString(target), equalTo("cached\n"));
+        assertThat(server.getRequests().get(0).get("if-none-match"), equalTo("\"v1\""));
+        assertFalse(cache.lookup(client, url("b"), target));
+    }
+
+    @Test
+    public void changedETagIsAMiss() throws IOException {
+        final DownloadCache cache = new DownloadCache(folder.newFolder(), 1024);
+        cache.store(url("a"), download("cached"), "\"v0\"", null);
+
+        assertFalse(cache.lookup(client, url("a"), folder.newFile()));
+    }
+
+    @Test
+    public void corruptContentIsRemoved() throws IOException {
+        final File directory = folder.newFolder();
+        final DownloadCache cache = new DownloadCache(directory, 1024);
+        cache.store(url("a"), download("cached"), "\"v1\"", null);
+        final File[] objects = new File(directory, "objects").listFiles();
+        Files.write(objects[0].toPath(), "corrupted".getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(cache.lookup(client, url("a"), folder.newFile()));
+        assertFalse(objects[0].exists());
+    }
+
+    @Test
+    public void leastRecentlyUsedContentIsEvicted() throws Exception {
+        final File directory = folder.newFolder();
+        final DownloadCache cache = new DownloadCache(directory, 30);
+        cache.store(url("a"), download("first content"), "\"v1\"", null);
+        Thread.sleep(20);
+        cache.store(url("b"), download("second content"), "\"v1\"", null);
+        Thread.sleep(20);
+        assertTrue(cache.lookup(client, url("a"), folder.newFile()));
+        Thread.sleep(20);
+
+        cache.store(url("c"), download("third content"), "\"v1\"", null);
+
+        assertFalse(cache.lookup(client, url("b"), folder.newFile()));
+        final File first = folder.newFile();
+        assertTrue(cache.lookup(client, url("a"), first));
+        assertArrayEquals("first content".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(first.toPath()));
+        final Path objects = directory.toPath().resolve("objects");
+        assertThat(objects.toFile().list().length, equalTo(2));
+    }
+}
@@ -0,0 +1,143 @@
+package de.testbirds.tech.recipe.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the {@link FileUtils}.
+ */
+public class FileUtilsTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Create a zip archive.
+     *
+     * @param names    the entry names, names ending with / are directories
+     * @return the archive
+     * @throws IOException If an I/O error occurs
+     */
+    private File zip(final String... names) throws IOException {
+        final File archive = folder.newFile();
+        try (OutputStream file = Files.newOutputStream(archive.toPath());
+             ZipOutputStream out = new ZipOutputStream(file)) {
+            for (final String name : names) {
+                out.putNextEntry(new ZipEntry(name));
+                if (!name.endsWith("/")) {
+                    out.write(name.getBytes(StandardCharsets.UTF_8));
+                }
+                out.closeEntry();
+            }
+        }
+        return archive;
+    }
+
+    @Test
+    public void unzipExtractsFilesAndDirectories() throws IOException {
+        final File archive = zip("empty/", "a.txt", "deep/nested/b.txt");
+        final File target = new File(folder.getRoot(), "out");
+
+        FileUtils.unzip(archive, target.getPath());
+
+        assertTrue(new File(target, "empty").isDirectory());
+        assertThat(FileUtils.readFileToString(new File(target, "a.txt")), equalTo("a.txt\n"));
+        assertThat(FileUtils.readFileToString(new File(target, "deep/nested/b.txt")), equalTo("deep/nested/b.txt\n"));
+    }
+
+    @Test
+    public void unzipExtractsStreamedArchive() throws IOException {
+        final File archive = zip("a.txt", "deep/nested/b.txt");
+        final File target = new File(folder.getRoot(), "out");
+
+        FileUtils.unzip(Files.newInputStream(archive.toPath()), target.getPath());
+
+        assertThat(FileUtils.readFileToString(new File(target, "a.txt")), equalTo("a.txt\n"));
+        assertThat(FileUtils.readFileToString(new File(target, "deep/nested/b.txt")), equalTo("deep/nested/b.txt\n"));
+    }
+
+    @Test
+    public void unzipSkipsTheTargetDirectoryEntry() throws IOException {
+        final File archive = zip("./", "./a.txt");
+        final File target = new File(folder.getRoot(), "out");
+
+        FileUtils.unzip(archive, target.getPath());
+        FileUtils.unzip(Files.newInputStream(archive.toPath()), new File(folder.getRoot(), "streamed").getPath());
+
+        assertThat(FileUtils.readFileToString(new File(target, "a.txt")), equalTo("./a.txt\n"));
+        assertThat(FileUtils.readFileToString(new File(folder.getRoot(), "streamed/a.txt")), equalTo("./a.txt\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void unzipRejectsEntriesOutsideOfTarget() throws IOException {
+        final File archive = zip("../evil.txt");
+
+        FileUtils.unzip(archive, new File(folder.getRoot(), "out").getPath());
+    }
+
+    @Test
+    public void copyRecursiveMergesDirectories() throws IOException {
+        final File source = folder.newFolder("source");
+        for (int i = 0; i < 20; i++) {
+            final File file = new File(source, "dir" + i % 3 + "/file" + i);
+            assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+            Files.write(file.toPath(), ("content" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        final File target = folder.newFolder("target");
+        Files.write(new File(target, "kept").toPath(), "kept".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(target, "dir0").toPath(), "replaced".getBytes(StandardCharsets.UTF_8));
+
+        FileUtils.copyRecursive(source, target);
+
+        assertTrue(new File(target, "kept").isFile());
+        for (int i = 0; i < 20; i++) {
+            assertThat(new String(Files.readAllBytes(new File(target, "dir" + i % 3 + "/file" + i).toPath()),
+                    StandardCharsets.UTF_8), equalTo("content" + i));
+        }
+    }
+
+    @Test
+    public void moveRenamesOnTheSameFileSystem() throws IOException {
+        final File source = folder.newFolder("source");
+        Files.write(new File(source, "file").toPath(), "content".getBytes(StandardCharsets.UTF_8));
+        final Long inode = FileUtils.getInode(source);
+        final File target = new File(folder.getRoot(), "target");
+
+        FileUtils.move(source, target);
+
+        assertFalse(source.exists());
+        assertThat(FileUtils.getInode(target), equalTo(inode));
+        assertThat(FileUtils.readFileToString(new File(target, "file")), equalTo("content\n"));
+    }
+
+    @Test
+    public void movingByCopyDeletesTheSourceAndKeepsLinks() throws IOException {
+        final File source = folder.newFolder("source");
+        final File nested = new File(source, "nested/file");
+        assertTrue(nested.getParentFile().mkdirs());
+        Files.write(nested.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+        Files.createSymbolicLink(new File(source, "link").toPath(), Paths.get("nested"));
+        final File target = new File(folder.getRoot(), "target");
+
+        DirectoryCopier.move(source.toPath(), target.toPath());
+
+        assertFalse(source.exists());
+        assertTrue(Files.isSymbolicLink(new File(target, "link").toPath()));
+        assertThat(FileUtils.readFileToString(new File(target, "link/file")), equalTo("content\n"));
+    }
+}
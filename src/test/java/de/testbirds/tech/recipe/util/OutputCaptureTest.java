@@ -0,0 +1,60 @@
+package de.testbirds.tech.recipe.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the {@link OutputCapture}.
+ */
+public class OutputCaptureTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shortOutputStaysInMemory() throws IOException {
+        final OutputCapture capture = new OutputCapture(100, folder.getRoot().toPath().resolve("spill"));
+        capture.append("hello\n");
+        capture.close();
+
+        assertThat(capture.getSpillFile(), nullValue());
+        assertThat(capture.toString(), equalTo("hello\n"));
+    }
+
+    @Test
+    public void overflowIsSpilledToDisk() throws IOException {
+        final OutputCapture capture = new OutputCapture(1000, folder.getRoot().toPath().resolve("spill"));
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            final String line = "line " + i + "\n";
+            capture.append(line);
+            expected.append(line);
+        }
+        capture.close();
+
+        assertTrue(capture.getSpillFile().isFile());
+        assertThat(capture.getLength(), equalTo((long) expected.length()));
+        assertThat(capture.toString(), equalTo(expected.toString()));
+        assertThat(capture.getSummary(), containsString("characters omitted"));
+        assertTrue(capture.getSummary().endsWith("line 99999\n"));
+    }
+
+    @Test
+    public void summaryIncludesTheSpilledOutput() throws IOException {
+        final OutputCapture capture = new OutputCapture(10, folder.getRoot().toPath().resolve("spill"));
+        capture.append("first line\n");
+        capture.append("second line\n");
+        capture.close();
+
+        assertThat(capture.getSummary(), equalTo("first line\nsecond line\n"));
+    }
+}
@@ -0,0 +1,63 @@
+package de.testbirds.tech.recipe.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit tests for the {@link ProcessRunner}.
+ */
+public class ProcessRunnerTest {
+
+    @Before
+    public void requireBash() {
+        assumeTrue(File.separatorChar == '/');
+    }
+
+    @Test(timeout = 30000)
+    public void outputLargerThanPipeBufferDoesNotBlock() throws IOException, InterruptedException {
+        final String[] output = new String[2];
+
+        final int exitCode = ProcessRunner.runBashScript(
+                new String[]{"for i in $(seq 1 20000); do echo error-line-$i >&2; echo line-$i; done"}, output);
+
+        assertThat(exitCode, equalTo(0));
+        assertThat(output[0].split("\n").length, equalTo(20000));
+        assertThat(output[1].split("\n").length, equalTo(20000));
+    }
+
+    @Test(timeout = 30000)
+    public void lineEndsAreNormalized() throws IOException, InterruptedException {
+        final String[] output = new String[2];
+
+        ProcessRunner.runBashScript(new String[]{"printf 'a\\r\\nb\\rc'"}, output);
+
+        assertThat(output[0], equalTo("a\nb\nc\n"));
+    }
+
+    @Test(timeout = 30000)
+    public void progressLineIsCapturedBeforeTheProcessEnds() throws IOException, InterruptedException {
+        final OutputCapture stdout = new OutputCapture(OutputCapture.DEFAULT_MEMORY_LIMIT, null);
+        final AtomicLong received = new AtomicLong();
+        stdout.setListener(text -> received.compareAndSet(0, System.nanoTime()));
+
+        ProcessRunner.runBashScript(new String[]{"printf '50%%\\r'", "sleep 2"}, stdout, null,
+                ProcessRunner.NO_TIMEOUT);
+
+        assertThat(stdout.toString(), equalTo("50%\n"));
+        assertThat(System.nanoTime() - received.get() > TimeUnit.SECONDS.toNanos(1), equalTo(true));
+    }
+
+    @Test(expected = IOException.class, timeout = 30000)
+    public void processIsKilledAfterTimeout() throws IOException, InterruptedException {
+        ProcessRunner.runBashScript(new String[]{"sleep 60"}, new String[2], 500);
+    }
+}
@@ -0,0 +1,263 @@
+package de.testbirds.tech.recipe.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal HTTP/1.1 server for tests that serves one content with HEAD, ranges, If-Range, If-None-Match and
+ * connections that are dropped in the middle of a body. Every connection serves one request.
+ */
+final class RangeServer implements Closeable {
+
+    /**
+     * The socket the server listens on.
+     */
+    private final ServerSocket socket;
+
+    /**
+     * The requests that were received, in order.
+     */
+    private final List<Map<String, String>> requests = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Amount of GET responses that are still cut off.
+     */
+    private final AtomicInteger drops = new AtomicInteger();
+
+    /**
+     * The content.
+     */
+    private volatile byte[] content;
+
+    /**
+     * The ETag of the content, null if it has none.
+     */
+    private volatile String etag;
+
+    /**
+     * True if HEAD responses announce range support.
+     */
+    private volatile boolean acceptRanges = true;
+
+    /**
+     * True if GET requests with a Range header get partial responses.
+     */
+    private volatile boolean servesRanges = true;
+
+    /**
+     * Bytes of a body that are sent before the connection is dropped.
+     */
+    private volatile int dropAfter;
+
+    /**
+     * Start a server on a free local port.
+     *
+     * @param content the content
+     * @param etag    the ETag of the content, null for none
+     * @throws IOException If the server can't be started
+     */
+    RangeServer(final byte[] content, final String etag) throws IOException {
+        this.content = content;
+        this.etag = etag;
+        this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(this::accept, "range-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Get the URL of the content.
+     *
+     * @return the URL
+     * @throws IOException If the URL is invalid
+     */
+    URL getURL() throws IOException {
+        return new URL("http://127.0.0.1:" + socket.getLocalPort() + "/content.bin");
+    }
+
+    /**
+     * Replace the content.
+     *
+     * @param newContent the content
+     * @param newEtag    its ETag, null for none
+     */
+    void setContent(final byte[] newContent, final String newEtag) {
+        this.content = newContent;
+        this.etag = newEtag;
+    }
+
+    /**
+     * Configure the range support.
+     *
+     * @param announced true if HEAD responses announce it
+     * @param served    true if GET requests get partial responses
+     */
+    void setRanges(final boolean announced, final boolean served) {
+        this.acceptRanges = announced;
+        this.servesRanges = served;
+    }
+
+    /**
+     * Cut off the next GET responses.
+     *
+     * @param responses amount of responses
+     * @param after     bytes of the body that are sent before
+     */
+    void drop(final int responses, final int after) {
+        this.dropAfter = after;
+        drops.set(responses);
+    }
+
+    /**
+     * Get the requests that were received. A request has the lower case header names and "method".
+     *
+     * @return the requests
+     */
+    List<Map<String, String>> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    /**
+     * Get the GET requests that were received.
+     *
+     * @return the requests
+     */
+    List<Map<String, String>> getGets() {
+        final List<Map<String, String>> gets = new ArrayList<>();
+        for (final Map<String, String> request : getRequests()) {
+            if ("GET".equals(request.get("method"))) {
+                gets.add(request);
+            }
+        }
+        return gets;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Accept connections until the server is closed.
+     */
+    private void accept() {
+        while (!socket.isClosed()) {
+            try {
+                final Socket connection = socket.accept();
+                final Thread handler = new Thread(() -> serve(connection), "range-server-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (final IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Serve the request of a connection.
+     *
+     * @param connection the connection
+     */
+    private void serve(final Socket connection) {
+        try (Socket closed = connection) {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(closed.getInputStream(),
+                    StandardCharsets.ISO_8859_1));
+            final String requestLine = in.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            final Map<String, String> request = new HashMap<>();
+            request.put("method", requestLine.split(" ")[0]);
+            for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+                final int colon = line.indexOf(':');
+                request.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+            requests.add(request);
+            respond(request, closed.getOutputStream());
+        } catch (final IOException e) {
+            // the client went away
+        }
+    }
+
+    /**
+     * Write the response to a request.
+     *
+     * @param request the request
+     * @param out     the stream of the connection
+     * @throws IOException If writing fails
+     */
+    private void respond(final Map<String, String> request, final OutputStream out) throws IOException {
+        final byte[] body = content;
+        final String tag = etag;
+        final StringBuilder headers = new StringBuilder();
+        if (tag != null) {
+            headers.append("ETag: ").append(tag).append("\r\n");
+        }
+        if ("HEAD".equals(request.get("method"))) {
+            if (acceptRanges) {
+                headers.append("Accept-Ranges: bytes\r\n");
+            }
+            writeHead(out, "200 OK", body.length, headers);
+            return;
+        }
+        if (tag != null && tag.equals(request.get("if-none-match"))) {
+            writeHead(out, "304 Not Modified", -1, headers);
+            return;
+        }
+        final String range = request.get("range");
+        final String ifRange = request.get("if-range");
+        int from = 0;
+        int to = body.length - 1;
+        String status = "200 OK";
+        if (range != null && servesRanges && (ifRange == null || ifRange.equals(tag))) {
+            final String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            from = Integer.parseInt(bounds[0]);
+            to = bounds[1].isEmpty() ? body.length - 1 : Math.min(Integer.parseInt(bounds[1]), body.length - 1);
+            status = "206 Partial Content";
+            headers.append("Content-Range: bytes ").append(from).append('-').append(to).append('/')
+                    .append(body.length).append("\r\n");
+        }
+        final int length = to - from + 1;
+        writeHead(out, status, length, headers);
+        final boolean cut = drops.getAndUpdate(left -> Math.max(0, left - 1)) > 0;
+        out.write(body, from, cut ? Math.min(dropAfter, length) : length);
+        out.flush();
+    }
+
+    /**
+     * Write the status line and the headers.
+     *
+     * @param out     the stream of the connection
+     * @param status  the status
+     * @param length  the content length, negative for none
+     * @param headers further headers
+     * @throws IOException If writing fails
+     */
+    private static void writeHead(final OutputStream out, final String status, final long length,
+                                  final StringBuilder headers) throws IOException {
+        final StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+        if (length >= 0) {
+            head.append("Content-Length: ").append(length).append("\r\n");
+        }
+        head.append(headers).append("Connection: close\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+}
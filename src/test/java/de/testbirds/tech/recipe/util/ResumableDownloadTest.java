@@ -0,0 +1,215 @@
+package de.testbirds.tech.recipe.util;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the {@link ResumableDownload}.
+ */
+public class ResumableDownloadTest {
+
+    /**
+     * Large enough for two segments.
+     */
+    private static final int SEGMENTED_SIZE = 17 * 1024 * 1024;
+
+    /**
+     * Downloaded as a single segment.
+     */
+    private static final int SMALL_SIZE = 256 * 1024;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final HttpClient client = new HttpClient();
+
+    @Before
+    public void startClient() throws Exception {
+        client.start();
+    }
+
+    @After
+    public void stopClient() throws Exception {
+        client.stop();
+    }
+
+    /**
+     * Create random content.
+     *
+     * @param size the size
+     * @param seed the seed
+     * @return the content
+     */
+    private static byte[] content(final int size, final long seed) {
+        final byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    /**
+     * Make an attempt that is expected to fail.
+     *
+     * @param download the download
+     */
+    private static void failingAttempt(final ResumableDownload download) {
+        try {
+            download.attempt();
+            fail("the attempt succeeded");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void localFileIsCopied() throws IOException {
+        final File source = folder.newFile("source.txt");
+        FileUtils.writeStringToFile("some content\n", source);
+        final File target = folder.newFile("target.txt");
+        FileUtils.writeStringToFile("old content that is longer\n", target);
+
+        final ResumableDownload download = new ResumableDownload(source.toURI().toURL(), target, 4);
+        download.attempt();
+        // a complete download is not repeated
+        source.delete();
+        download.attempt();
+
+        assertThat(FileUtils.readFileToString(target), equalTo("some content\n"));
+    }
+
+    @Test
+    public void largeFilesAreDownloadedInSegments() throws IOException {
+        final byte[] content = content(SEGMENTED_SIZE, 1);
+        try (RangeServer server = new RangeServer(content, "\"v1\"")) {
+            final File target = folder.newFile();
+
+            new ResumableDownload(server.getURL(), target, 4, client).attempt();
+
+            assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+            final List<Map<String, String>> gets = server.getGets();
+            assertEquals(2, gets.size());
+            for (final Map<String, String> get : gets) {
+                assertThat(get.get("if-range"), equalTo("\"v1\""));
+            }
+        }
+    }
+
+    @Test
+    public void droppedSegmentIsResumed() throws IOException {
+        final byte[] content = content(SEGMENTED_SIZE, 2);
+        try (RangeServer server = new RangeServer(content, "\"v1\"")) {
+            final File target = folder.newFile();
+            final ResumableDownload download = new ResumableDownload(server.getURL(), target, 2, client);
+            server.drop(1, 100000);
+
+            failingAttempt(download);
+            final int requests = server.getGets().size();
+            download.attempt();
+
+            assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+            // only the missing bytes are requested again
+            final List<Map<String, String>> resumed = server.getGets().subList(requests, server.getGets().size());
+            long requested = 0;
+            for (final Map<String, String> get : resumed) {
+                final String[] range = get.get("range").substring("bytes=".length()).split("-");
+                requested += Long.parseLong(range[1]) - Long.parseLong(range[0]) + 1;
+            }
+            assertEquals(true, requested <= content.length - 100000);
+        }
+    }
+
+    @Test
+    public void changedContentRestartsTheDownload() throws IOException {
+        try (RangeServer server = new RangeServer(content(SEGMENTED_SIZE, 3), "\"v1\"")) {
+            final File target = folder.newFile();
+            final ResumableDownload download = new ResumableDownload(server.getURL(), target, 2, client);
+            server.drop(1, 100000);
+            failingAttempt(download);
+
+            final byte[] changed = content(SEGMENTED_SIZE, 4);
+            server.setContent(changed, "\"v2\"");
+            download.attempt();
+
+            assertArrayEquals(changed, Files.readAllBytes(target.toPath()));
+            assertThat(download.getETag(), equalTo("\"v2\""));
+        }
+    }
+
+    @Test
+    public void segmentsWithoutValidatorStartOver() throws IOException {
+        final byte[] content = content(SEGMENTED_SIZE, 5);
+        try (RangeServer server = new RangeServer(content, null)) {
+            final File target = folder.newFile();
+            final ResumableDownload download = new ResumableDownload(server.getURL(), target, 2, client);
+            server.drop(2, 100000);
+            failingAttempt(download);
+            // the attempt fails with the first drop, the other segment may not have been requested by then
+            server.drop(0, 0);
+            final int requests = server.getGets().size();
+
+            download.attempt();
+
+            assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+            for (final Map<String, String> get : server.getGets().subList(requests, server.getGets().size())) {
+                assertThat(get.get("if-range"), nullValue());
+                assertThat(get.get("range").startsWith("bytes=0-") || get.get("range").startsWith("bytes="
+                        + (content.length + 1) / 2 + "-"), equalTo(true));
+            }
+        }
+    }
+
+    @Test
+    public void singleStreamIsResumed() throws IOException {
+        final byte[] content = content(SMALL_SIZE, 6);
+        try (RangeServer server = new RangeServer(content, "\"v1\"")) {
+            server.setRanges(false, true);
+            final File target = folder.newFile();
+            final ResumableDownload download = new ResumableDownload(server.getURL(), target, 4, client);
+            server.drop(1, 100000);
+
+            failingAttempt(download);
+            download.attempt();
+
+            assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+            final List<Map<String, String>> gets = server.getGets();
+            assertEquals(2, gets.size());
+            assertThat(gets.get(0).get("range"), nullValue());
+            assertThat(gets.get(1).get("range"), equalTo("bytes=100000-"));
+            assertThat(gets.get(1).get("if-range"), equalTo("\"v1\""));
+        }
+    }
+
+    @Test
+    public void singleStreamStartsOverIfRangesAreIgnored() throws IOException {
+        final byte[] content = content(SMALL_SIZE, 7);
+        try (RangeServer server = new RangeServer(content, "\"v1\"")) {
+            server.setRanges(false, false);
+            final File target = folder.newFile();
+            final ResumableDownload download = new ResumableDownload(server.getURL(), target, 4, client);
+            server.drop(1, 100000);
+
+            failingAttempt(download);
+            download.attempt();
+
+            assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+            assertThat(server.getGets().get(1).get("range"), equalTo("bytes=100000-"));
+        }
+    }
+}
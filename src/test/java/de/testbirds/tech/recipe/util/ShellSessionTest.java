@@ -0,0 +1,54 @@
+package de.testbirds.tech.recipe.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit tests for the {@link ShellSession}.
+ */
+public class ShellSessionTest {
+
+    private final ShellSession session = new ShellSession(false);
+
+    @Before
+    public void requireBash() {
+        assumeTrue(File.separatorChar == '/');
+    }
+
+    @After
+    public void close() {
+        session.close();
+    }
+
+    @Test
+    public void separatesOutputAndExitCodeOfScripts() throws IOException, InterruptedException {
+        final String[] first = new String[2];
+        final String[] second = new String[2];
+
+        assertThat(session.run(new String[]{"echo out; echo err >&2; X=1"}, first), equalTo(0));
+        assertThat(session.run(new String[]{"printf \"x=$X\"", "false", "echo unreachable"}, second), equalTo(1));
+
+        assertThat(first[0], equalTo("out\n"));
+        assertThat(first[1], equalTo("err\n"));
+        assertThat(second[0], equalTo("x=\n"));
+        assertThat(second[1], equalTo(""));
+    }
+
+    @Test
+    public void exitOnlyEndsTheScript() throws IOException, InterruptedException {
+        final String[] output = new String[2];
+
+        assertThat(session.run(new String[]{"exit 3"}, output), equalTo(3));
+        assertThat(session.run(new String[]{"echo 'it'\"'\"'s still running'"}, output), equalTo(0));
+
+        assertThat(output[0], equalTo("it's still running\n"));
+    }
+}
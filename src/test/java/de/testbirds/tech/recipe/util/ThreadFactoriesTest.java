@@ -0,0 +1,71 @@
+package de.testbirds.tech.recipe.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit tests for the {@link ThreadFactories}. The virtual threads are only tested in the virtual-threads profile,
+ * which is active on Java 21 or newer.
+ */
+public class ThreadFactoriesTest {
+
+    @Test
+    public void platformThreadsAreNamedDaemons() {
+        final String enabled = System.getProperty(ThreadFactories.VIRTUAL_THREADS_PROPERTY);
+        System.clearProperty(ThreadFactories.VIRTUAL_THREADS_PROPERTY);
+        try {
+            assertFalse(ThreadFactories.isVirtual());
+            final Thread first = ThreadFactories.newThreadFactory("platform-%d").newThread(() -> {
+            });
+            final Thread second = ThreadFactories.newThreadFactory("platform-%d").newThread(() -> {
+            });
+
+            assertTrue(first.isDaemon());
+            assertThat(first.getName(), equalTo("platform-0"));
+            assertThat(second.getName(), equalTo("platform-0"));
+        } finally {
+            if (enabled != null) {
+                System.setProperty(ThreadFactories.VIRTUAL_THREADS_PROPERTY, enabled);
+            }
+        }
+    }
+
+    @Test
+    public void platformThreadsAreUsedWithoutVirtualThreadSupport() {
+        assumeTrue(Arrays.stream(Thread.class.getMethods()).noneMatch(method -> method.getName().equals("ofVirtual")));
+        final String enabled = System.setProperty(ThreadFactories.VIRTUAL_THREADS_PROPERTY, "true");
+        try {
+            assertFalse(ThreadFactories.isVirtual());
+            final Thread thread = ThreadFactories.newThreadFactory("fallback-%d").newThread(() -> {
+            });
+
+            assertTrue(thread.isDaemon());
+            assertThat(thread.getName(), equalTo("fallback-0"));
+        } finally {
+            if (enabled == null) {
+                System.clearProperty(ThreadFactories.VIRTUAL_THREADS_PROPERTY);
+            } else {
+                System.setProperty(ThreadFactories.VIRTUAL_THREADS_PROPERTY, enabled);
+            }
+        }
+    }
+
+    @Test
+    public void virtualThreadsAreUsedInTheProfile() throws Exception {
+        assumeTrue(Boolean.getBoolean(ThreadFactories.VIRTUAL_THREADS_PROPERTY));
+
+        assertTrue(ThreadFactories.isVirtual());
+        final Thread thread = ThreadFactories.newThreadFactory("virtual-%d").newThread(() -> {
+        });
+
+        assertThat(Thread.class.getMethod("isVirtual").invoke(thread), equalTo(true));
+        assertThat(thread.getName(), equalTo("virtual-0"));
+    }
+}